@@ -1,4 +1,20 @@
 package me.tucu;
 
+import me.tucu.results.MapResult;
+import me.tucu.utils.Locks;
+import org.neo4j.procedure.Description;
+import org.neo4j.procedure.Procedure;
+
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static me.tucu.schema.Properties.RETRIES;
+
 public class Procedures {
+
+    @Procedure(name = "me.tucu.retries")
+    @Description("CALL me.tucu.retries()")
+    public Stream<MapResult> getRetries() {
+        return Stream.of(new MapResult(Map.of(RETRIES, Locks.getRetries())));
+    }
 }
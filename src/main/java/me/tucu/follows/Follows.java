@@ -1,25 +1,43 @@
 package me.tucu.follows;
 
 import me.tucu.results.MapResult;
+import me.tucu.schema.ActiveDays;
+import me.tucu.schema.DatedConnections;
 import me.tucu.schema.Labels;
 import me.tucu.schema.RelationshipTypes;
+import me.tucu.utils.Candidates;
+import me.tucu.utils.Candidates.Candidate;
+import me.tucu.utils.Fields;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
-import static java.util.Collections.reverseOrder;
 import static me.tucu.follows.FollowExceptions.*;
+import static me.tucu.schema.DatedRelationshipTypes.FOLLOWED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
 import static me.tucu.schema.Properties.*;
+import static me.tucu.timeline.Inbox.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
+import static me.tucu.utils.Batches.getItemResult;
+import static me.tucu.utils.Batches.getNode;
+import static me.tucu.utils.Batches.getOrder;
+import static me.tucu.users.Users.getPublicProperties;
 import static me.tucu.users.Users.getUserAttributes;
+import static me.tucu.utils.Locks.retry;
 import static me.tucu.utils.Time.getLatestTime;
 
 public class Follows {
@@ -34,12 +52,14 @@ public class Follows {
     public Log log;
 
     @Procedure(name = "me.tucu.follows.followers", mode = Mode.READ)
-    @Description("CALL me.tucu.follows.followers(username, limit, since)")
+    @Description("CALL me.tucu.follows.followers(username, limit, since, fields)")
     public Stream<MapResult> getFollowers(@Name(value = "username", defaultValue = "") String username,
                                           @Name(value = "limit", defaultValue = "25") Long limit,
-                                          @Name(value = "since", defaultValue = "-1") Long since) {
+                                          @Name(value = "since", defaultValue = "-1") Long since,
+                                          @Name(value = "fields", defaultValue = "[]") List<String> fields) {
         ArrayList<Map<String, Object>> results = new ArrayList<>();
         limit =  abs(limit);
+        Fields asked = Fields.of(fields, Fields.USER_FIELDS);
 
         ZonedDateTime dateTime = getLatestTime(since);
 
@@ -48,29 +68,39 @@ public class Follows {
             if (user == null) {
                 return Stream.of(USER_NOT_FOUND);
             }
-            for (Relationship r1: user.getRelationships(Direction.INCOMING, RelationshipTypes.FOLLOWS)) {
-                ZonedDateTime time = (ZonedDateTime)r1.getProperty(TIME);
-                if(time.isBefore(dateTime)) {
-                    Node follower = r1.getStartNode();
-                    Map<String, Object> result = getUserAttributes(follower);
-                    result.put(TIME, time);
-                    results.add(result);
+            // Pick the page by when they followed alone, and only read the users that made it
+            Candidates candidates = new Candidates(limit);
+            if (DatedConnections.isRead()) {
+                addDated(candidates, user, Direction.INCOMING, dateTime, limit);
+            } else {
+                for (Relationship r1: user.getRelationships(Direction.INCOMING, RelationshipTypes.FOLLOWS)) {
+                    ZonedDateTime time = (ZonedDateTime)r1.getProperty(TIME);
+                    if(time.isBefore(dateTime)) {
+                        candidates.add(time, r1, r1.getStartNode());
+                    }
                 }
             }
+            for (Candidate candidate : candidates.getCandidates()) {
+                Map<String, Object> result = getUserAttributes(candidate.node, asked);
+                result.put(TIME, candidate.cursor.getTime());
+                results.add(result);
+            }
 
             tx.commit();
         }
-        results.sort(Comparator.comparing(m -> (ZonedDateTime) m.get(TIME), reverseOrder()));
-        return results.stream().limit(limit).map(MapResult::new);
+        // We sort by when they followed, even if that was not asked for
+        return results.stream().map(asked::project).map(MapResult::new);
     }
 
     @Procedure(name = "me.tucu.follows.following", mode = Mode.READ)
-    @Description("CALL me.tucu.follows.following(username, limit, since)")
+    @Description("CALL me.tucu.follows.following(username, limit, since, fields)")
     public Stream<MapResult> getFollowing(@Name(value = "username", defaultValue = "") String username,
                                           @Name(value = "limit", defaultValue = "25") Long limit,
-                                          @Name(value = "since", defaultValue = "-1") Long since) {
+                                          @Name(value = "since", defaultValue = "-1") Long since,
+                                          @Name(value = "fields", defaultValue = "[]") List<String> fields) {
         ArrayList<Map<String, Object>> results = new ArrayList<>();
         limit =  abs(limit);
+        Fields asked = Fields.of(fields, Fields.USER_FIELDS);
 
         ZonedDateTime dateTime = getLatestTime(since);
 
@@ -79,20 +109,48 @@ public class Follows {
             if (user == null) {
                 return Stream.of(USER_NOT_FOUND);
             }
-            for (Relationship r1: user.getRelationships(Direction.OUTGOING, RelationshipTypes.FOLLOWS)) {
-                ZonedDateTime time = (ZonedDateTime)r1.getProperty(TIME);
-                if(time.isBefore(dateTime)) {
-                    Node following = r1.getEndNode();
-                    Map<String, Object> result = getUserAttributes(following);
-                    result.put(TIME, time);
-                    results.add(result);
+            // Pick the page by when they followed alone, and only read the users that made it
+            Candidates candidates = new Candidates(limit);
+            if (DatedConnections.isRead()) {
+                addDated(candidates, user, Direction.OUTGOING, dateTime, limit);
+            } else {
+                for (Relationship r1: user.getRelationships(Direction.OUTGOING, RelationshipTypes.FOLLOWS)) {
+                    ZonedDateTime time = (ZonedDateTime)r1.getProperty(TIME);
+                    if(time.isBefore(dateTime)) {
+                        candidates.add(time, r1, r1.getEndNode());
+                    }
                 }
             }
+            for (Candidate candidate : candidates.getCandidates()) {
+                Map<String, Object> result = getUserAttributes(candidate.node, asked);
+                result.put(TIME, candidate.cursor.getTime());
+                results.add(result);
+            }
 
             tx.commit();
         }
-        results.sort(Comparator.comparing(m -> (ZonedDateTime) m.get(TIME), reverseOrder()));
-        return results.stream().limit(limit).map(MapResult::new);
+        // We sort by when they followed, even if that was not asked for
+        return results.stream().map(asked::project).map(MapResult::new);
+    }
+
+    // Walks back through the days the user followed or was followed on, only as far as it takes to fill the page
+    private static void addDated(Candidates candidates, Node user, Direction direction, ZonedDateTime dateTime, long limit) {
+        long earliest = getEpochDay((ZonedDateTime) user.getProperty(TIME));
+        long day = getEpochDay(dateTime);
+        ActiveDays days = ActiveDays.of(user, FOLLOWED_ON);
+        int count = 0;
+
+        while (count < limit && day >= earliest) {
+            for (Relationship r1 : user.getRelationships(direction, getType(FOLLOWED_ON, day))) {
+                ZonedDateTime time = (ZonedDateTime) r1.getProperty(TIME);
+                if (time.isBefore(dateTime)) {
+                    candidates.add(time, r1, r1.getOtherNode(user));
+                    count++;
+                }
+            }
+            // Check the day before that had any follows
+            day = days.before(day);
+        }
     }
 
     @Procedure(name = "me.tucu.follows.create", mode = Mode.WRITE)
@@ -136,16 +194,102 @@ public class Follows {
 
             Relationship follows = user.createRelationshipTo(user2, RelationshipTypes.FOLLOWS);
             follows.setProperty(TIME, ZonedDateTime.now());
-            results = user2.getAllProperties();
-            results.remove(EMAIL);
-            results.remove(PASSWORD);
-            results.remove(SILVER);
-            results.remove(GOLD);
+            DatedConnections.add(follows, FOLLOWED_ON);
+
+            // The inbox never got the older posts of a user that pushes to it
+            if (isPushed(user2)) {
+                reset(tx, user);
+            }
+            results = getPublicProperties(user2);
             tx.commit();
         }
         return Stream.of(new MapResult(results));
     }
 
+    @Procedure(name = "me.tucu.follows.createBatch", mode = Mode.WRITE)
+    @Description("CALL me.tucu.follows.createBatch(username, usernames, batch_size)")
+    public Stream<MapResult> createFollowsBatch(@Name(value = "username", defaultValue = "") String username,
+                                                @Name(value = "usernames", defaultValue = "[]") List<String> usernames,
+                                                @Name(value = "batch_size", defaultValue = "1000") Long batchSize) {
+        batchSize = Math.max(1L, abs(batchSize));
+        MapResult[] results = new MapResult[usernames.size()];
+        LongArrayList ids = new LongArrayList();
+        IntArrayList indexes = new IntArrayList();
+        MutableLongSet followed = new LongHashSet();
+        long userId;
+
+        // Find everybody first, and who the user already follows in one go
+        try (Transaction tx = db.beginTx()) {
+            Node user = tx.findNode(Labels.User, USERNAME, username);
+            if (user == null) {
+                return Stream.of(USER_NOT_FOUND);
+            }
+            userId = user.getId();
+            for (Relationship r1 : user.getRelationships(Direction.OUTGOING, RelationshipTypes.FOLLOWS)) {
+                followed.add(r1.getEndNodeId());
+            }
+
+            for (int i = 0; i < usernames.size(); i++) {
+                // Can't follow yourself
+                if (username.equals(usernames.get(i))) {
+                    results[i] = getItemResult(SELF_FOLLOW, USERNAME, usernames.get(i));
+                    continue;
+                }
+                Node user2 = tx.findNode(Labels.User, USERNAME, usernames.get(i));
+                if (user2 == null) {
+                    results[i] = getItemResult(USER_NOT_FOUND, USERNAME, usernames.get(i));
+                } else {
+                    ids.add(user2.getId());
+                    indexes.add(i);
+                }
+            }
+        }
+
+        // Follow them in node id order, so the locks are always taken in the same order
+        int[] order = getOrder(ids);
+        for (int start = 0; start < order.length; start += batchSize) {
+            int first = start;
+            int end = (int) Math.min(order.length, start + batchSize);
+            MutableLongSet added = retry(() -> {
+                // Only followed once the chunk commits, so a chunk that is run again starts over
+                MutableLongSet following = new LongHashSet();
+                try (Transaction tx = db.beginTx()) {
+                    Node user = tx.getNodeById(userId);
+                    boolean reset = false;
+                    for (int j = first; j < end; j++) {
+                        int i = indexes.get(order[j]);
+                        Node user2 = getNode(tx, ids.get(order[j]));
+                        if (user2 == null) {
+                            results[i] = getItemResult(USER_NOT_FOUND, USERNAME, usernames.get(i));
+                            continue;
+                        }
+                        if (followed.contains(user2.getId()) || !following.add(user2.getId())) {
+                            results[i] = getItemResult(ALREADY_FOLLOW, USERNAME, usernames.get(i));
+                            continue;
+                        }
+
+                        Relationship follows = user.createRelationshipTo(user2, RelationshipTypes.FOLLOWS);
+                        follows.setProperty(TIME, ZonedDateTime.now());
+                        DatedConnections.add(follows, FOLLOWED_ON);
+
+                        // The inbox never got the older posts of a user that pushes to it
+                        reset |= isPushed(user2);
+
+                        Map<String, Object> result = getPublicProperties(user2);
+                        results[i] = new MapResult(result);
+                    }
+                    if (reset) {
+                        reset(tx, user);
+                    }
+                    tx.commit();
+                }
+                return following;
+            });
+            followed.addAll(added);
+        }
+        return Arrays.stream(results);
+    }
+
     @Procedure(name = "me.tucu.follows.remove", mode = Mode.WRITE)
     @Description("CALL me.tucu.follows.remove(username, username2)")
     public Stream<MapResult> removeFollows(@Name(value = "username", defaultValue = "") String username,
@@ -189,13 +333,10 @@ public class Follows {
                 return Stream.of(NOT_FOLLOWING);
             }
 
+            DatedConnections.remove(follows, FOLLOWED_ON);
             follows.delete();
 
-            results = user2.getAllProperties();
-            results.remove(EMAIL);
-            results.remove(PASSWORD);
-            results.remove(SILVER);
-            results.remove(GOLD);
+            results = getPublicProperties(user2);
             tx.commit();
         }
         return Stream.of(new MapResult(results));
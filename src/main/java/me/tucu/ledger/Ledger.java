@@ -0,0 +1,173 @@
+package me.tucu.ledger;
+
+import me.tucu.results.MapResult;
+import me.tucu.schema.Labels;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.*;
+import org.neo4j.logging.Log;
+import org.neo4j.procedure.*;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static java.lang.Math.abs;
+import static me.tucu.schema.Properties.*;
+import static me.tucu.utils.Locks.lock;
+import static me.tucu.utils.Locks.retry;
+
+// What users are owed for the likes, replies and reposts of their posts.
+// Paying the author right away means locking them, so when a post goes viral every like of it
+// waits on the one before. Instead every credit is a node of its own that nobody else touches,
+// and credits are folded into the balance of the user later: by the settle procedure, or when
+// they spend, since we lock them then anyway. Taking money from a user still happens right away,
+// so nobody can spend what they don't have.
+// Credits are spread over stripes by who paid them, so they can be settled a stripe at a time.
+public class Ledger {
+
+    // This field declares that we need a GraphDatabaseService
+    // as context when any procedure in this class is invoked
+    @Context
+    public GraphDatabaseService db;
+
+    // This gives us a log instance that outputs messages to the
+    // standard log, normally found under `data/log/neo4j.log`
+    @Context
+    public Log log;
+
+    public static final long STRIPES = 16;
+
+    @Procedure(name = "me.tucu.ledger.settle", mode = Mode.WRITE)
+    @Description("CALL me.tucu.ledger.settle(batch_size)")
+    public Stream<MapResult> settleCredits(@Name(value = "batch_size", defaultValue = "10000") Long batchSize) {
+        batchSize = Math.max(1L, abs(batchSize));
+        long credits = 0;
+        long users = 0;
+
+        for (long stripe = 0; stripe < STRIPES; stripe++) {
+            long current = stripe;
+            long limit = batchSize;
+            boolean more = true;
+            while (more) {
+                long[] settled = retry(() -> settle(current, limit));
+                credits += settled[0];
+                users += settled[1];
+                more = settled[2] > 0;
+            }
+        }
+
+        return Stream.of(new MapResult(Map.of(CREDITS, credits, USERS, users)));
+    }
+
+    // Settles whoever is owed something in up to batch size credits of the stripe.
+    // Returns how many credits and users were settled, and whether the stripe has more credits left.
+    private long[] settle(long stripe, long batchSize) {
+        try (Transaction tx = db.beginTx()) {
+            LongHashSet recipients = new LongHashSet();
+            long count = 0;
+            boolean more;
+            try (ResourceIterator<Node> iterator = tx.findNodes(Labels.Credit, STRIPE, stripe)) {
+                while (iterator.hasNext() && count < batchSize) {
+                    Node credit = iterator.next();
+                    count++;
+                    try {
+                        recipients.add((long) credit.getProperty(RECIPIENT_ID));
+                    } catch (NotFoundException exception) {
+                        // The recipient spent it while we were looking
+                    }
+                }
+                more = iterator.hasNext();
+            }
+
+            // Settle everything they are owed, locking them in id order
+            long credits = 0;
+            long users = 0;
+            for (long recipient : recipients.toSortedArray()) {
+                Node user = getRecipient(tx, recipient);
+                if (user == null) {
+                    credits += forfeit(tx, recipient);
+                } else {
+                    credits += settle(tx, user);
+                    users++;
+                }
+            }
+            tx.commit();
+            return new long[]{credits, users, more ? 1 : 0};
+        }
+    }
+
+    // The user a credit or commission is for, or null if they have since been deleted
+    public static Node getRecipient(Transaction tx, long id) {
+        try {
+            Node user = tx.getNodeById(id);
+            return user.hasLabel(Labels.User) ? user : null;
+        } catch (NotFoundException exception) {
+            return null;
+        }
+    }
+
+    // Deletes the credits of a user that no longer exists, since nobody is left to pay them to,
+    // returns how many there were
+    private static long forfeit(Transaction tx, long recipient) {
+        long count = 0;
+        try (ResourceIterator<Node> iterator = tx.findNodes(Labels.Credit, RECIPIENT_ID, recipient)) {
+            while (iterator.hasNext()) {
+                iterator.next().delete();
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // Records that the user owes the recipient an amount of silver or gold, without touching the recipient
+    public static void credit(Transaction tx, Node user, Node recipient, String currency, long amount) {
+        Node credit = tx.createNode(Labels.Credit);
+        credit.setProperty(RECIPIENT_ID, recipient.getId());
+        credit.setProperty(STRIPE, Math.floorMod(user.getId(), STRIPES));
+        credit.setProperty(currency, amount);
+    }
+
+    // Folds the pending credits of the user into their balance, returns how many there were.
+    // The user is locked until the end of the transaction.
+    public static long settle(Transaction tx, Node user) {
+        lock(tx, user);
+
+        ArrayList<Node> credits = new ArrayList<>();
+        try (ResourceIterator<Node> iterator = tx.findNodes(Labels.Credit, RECIPIENT_ID, user.getId())) {
+            iterator.forEachRemaining(credits::add);
+        }
+        if (credits.isEmpty()) {
+            return 0;
+        }
+
+        long silver = 0;
+        long gold = 0;
+        for (Node credit : credits) {
+            silver += (long) credit.getProperty(SILVER, 0L);
+            gold += (long) credit.getProperty(GOLD, 0L);
+            credit.delete();
+        }
+        user.setProperty(SILVER, silver + (long) user.getProperty(SILVER, 0L));
+        user.setProperty(GOLD, gold + (long) user.getProperty(GOLD, 0L));
+        return credits.size();
+    }
+
+    // Adds the pending credits of the user to the balance in the results, without settling them
+    public static void putPending(Transaction tx, Node user, Map<String, Object> results) {
+        long silver = 0;
+        long gold = 0;
+        boolean pending = false;
+        try (ResourceIterator<Node> iterator = tx.findNodes(Labels.Credit, RECIPIENT_ID, user.getId())) {
+            while (iterator.hasNext()) {
+                Node credit = iterator.next();
+                silver += (long) credit.getProperty(SILVER, 0L);
+                gold += (long) credit.getProperty(GOLD, 0L);
+                pending = true;
+            }
+        }
+        if (pending) {
+            results.put(SILVER, silver + (long) results.getOrDefault(SILVER, 0L));
+            results.put(GOLD, gold + (long) results.getOrDefault(GOLD, 0L));
+        }
+    }
+}
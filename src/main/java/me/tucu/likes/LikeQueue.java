@@ -0,0 +1,199 @@
+package me.tucu.likes;
+
+import me.tucu.results.MapResult;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.procedure.TerminationGuard;
+
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static me.tucu.likes.LikesExceptions.LIKE_TIMEOUT;
+import static me.tucu.utils.Locks.retry;
+
+// Likes waiting to be committed together. During live events thousands of likes a second come in,
+// and committing each one in its own transaction is what holds us back. A worker takes whatever
+// is queued, up to the batch size, likes the posts in one transaction and hands every like its own result.
+// Each like is checked and paid for exactly as it would be on its own.
+// The worker commits in its own transaction, so a queued like is kept even if the transaction
+// of the caller that asked for it is rolled back afterwards.
+public class LikeQueue {
+
+    // Set with -Dme.tucu.likes.batch.size=500 in neo4j.conf, 0 turns coalescing off
+    public static final String BATCH_SETTING = "me.tucu.likes.batch.size";
+    // Set with -Dme.tucu.likes.queue.size=10000 in neo4j.conf, likes past it are not queued
+    public static final String QUEUE_SETTING = "me.tucu.likes.queue.size";
+    // Set with -Dme.tucu.likes.queue.timeout=5000 in neo4j.conf, milliseconds to wait for a queued like
+    public static final String TIMEOUT_SETTING = "me.tucu.likes.queue.timeout";
+
+    // How often a waiting caller checks if its transaction was terminated
+    private static final long CHECK_MILLIS = 100;
+
+    private static final ConcurrentHashMap<String, LikeQueue> queues = new ConcurrentHashMap<>();
+
+    private final GraphDatabaseService db;
+    private final int batchSize;
+    private final long timeout;
+    private final ArrayBlockingQueue<PendingLike> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private LikeQueue(GraphDatabaseService db, int batchSize, int queueSize, long timeout) {
+        this.db = db;
+        this.batchSize = batchSize;
+        this.timeout = timeout;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.worker = new Thread(this::work, "tucu-likes-" + ((GraphDatabaseAPI) db).databaseName());
+        this.worker.setDaemon(true);
+    }
+
+    public static LikeQueue getQueue(GraphDatabaseService db) {
+        return queues.get(getKey(db));
+    }
+
+    static LikeQueue start(GraphDatabaseService db) {
+        int batchSize = Integer.getInteger(BATCH_SETTING, 0);
+        if (batchSize < 1) {
+            return null;
+        }
+        LikeQueue likeQueue = new LikeQueue(db, batchSize, Math.max(1, Integer.getInteger(QUEUE_SETTING, 10000)),
+                Math.max(1L, Long.getLong(TIMEOUT_SETTING, 5000L)));
+        queues.put(getKey(db), likeQueue);
+        likeQueue.worker.start();
+        return likeQueue;
+    }
+
+    static void stop(GraphDatabaseService db) {
+        LikeQueue likeQueue = queues.remove(getKey(db));
+        if (likeQueue == null) {
+            return;
+        }
+        // Nothing can be queued once this returns, so the drain below gets everything that was
+        synchronized (likeQueue) {
+            likeQueue.running = false;
+        }
+        try {
+            likeQueue.worker.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything queued after the worker stopped is still liked
+        ArrayList<PendingLike> batch = new ArrayList<>();
+        likeQueue.queue.drainTo(batch);
+        likeQueue.commit(batch);
+    }
+
+    private static String getKey(GraphDatabaseService db) {
+        return ((GraphDatabaseAPI) db).databaseLayout().databaseDirectory().getAbsolutePath();
+    }
+
+    // The queued like, or null if the queue is full or stopped
+    public synchronized PendingLike submit(String username, long post_id) {
+        PendingLike like = new PendingLike(username, post_id);
+        if (!running || !queue.offer(like)) {
+            return null;
+        }
+        return like;
+    }
+
+    // The result of the like once it is committed. If the caller is terminated, or the like is still queued
+    // when the timeout runs out, it is taken off the queue. Null means it was and the caller likes the post itself.
+    // A like the worker already took can not be taken back, and is still committed after the timeout.
+    public MapResult await(PendingLike like, TerminationGuard guard) {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        try {
+            for (long left = timeout; left > 0; left = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime())) {
+                guard.check();
+                try {
+                    return like.result.get(Math.min(left, CHECK_MILLIS), TimeUnit.MILLISECONDS);
+                } catch (TimeoutException exception) {
+                    // Not yet
+                }
+            }
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException exception) {
+            Throwable cause = exception.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new RuntimeException(cause);
+        } catch (RuntimeException exception) {
+            queue.remove(like);
+            throw exception;
+        }
+        return queue.remove(like) ? null : LIKE_TIMEOUT;
+    }
+
+    private void work() {
+        ArrayList<PendingLike> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                PendingLike like = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (like == null) {
+                    continue;
+                }
+                batch.add(like);
+                queue.drainTo(batch, batchSize - 1);
+                commit(batch);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void commit(ArrayList<PendingLike> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        ArrayList<MapResult> results = new ArrayList<>(batch.size());
+        try (Transaction tx = db.beginTx()) {
+            for (PendingLike like : batch) {
+                results.add(Likes.like(tx, like.username, like.post_id));
+            }
+            tx.commit();
+        } catch (Exception exception) {
+            // One of them broke the whole batch, so like the posts one at a time
+            for (PendingLike like : batch) {
+                commit(like);
+            }
+            return;
+        }
+
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).result.complete(results.get(i));
+        }
+    }
+
+    private void commit(PendingLike like) {
+        try {
+            like.result.complete(retry(() -> {
+                try (Transaction tx = db.beginTx()) {
+                    MapResult result = Likes.like(tx, like.username, like.post_id);
+                    tx.commit();
+                    return result;
+                }
+            }));
+        } catch (Exception exception) {
+            like.result.completeExceptionally(exception);
+        }
+    }
+
+    public static class PendingLike {
+        final String username;
+        final long post_id;
+        final CompletableFuture<MapResult> result = new CompletableFuture<>();
+
+        PendingLike(String username, long post_id) {
+            this.username = username;
+            this.post_id = post_id;
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package me.tucu.likes;
 
+import me.tucu.posts.PostDecorator;
 import me.tucu.results.MapResult;
+import me.tucu.schema.ActiveDays;
+import me.tucu.schema.DatedConnections;
 import me.tucu.schema.Labels;
 import me.tucu.schema.RelationshipTypes;
+import me.tucu.utils.Candidates;
+import me.tucu.utils.Candidates.Candidate;
+import me.tucu.utils.Cursor;
+import me.tucu.utils.Fields;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
@@ -10,20 +19,31 @@ import org.neo4j.procedure.*;
 import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
-import static java.util.Collections.reverseOrder;
 import static me.tucu.Exceptions.INSUFFICIENT_FUNDS;
+import static me.tucu.Exceptions.INVALID_CURSOR;
+import static me.tucu.ledger.Ledger.credit;
+import static me.tucu.ledger.Ledger.settle;
 import static me.tucu.likes.LikesExceptions.*;
 import static me.tucu.posts.PostExceptions.POST_NOT_FOUND;
 import static me.tucu.posts.Posts.*;
+import static me.tucu.schema.DatedRelationshipTypes.LIKED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
 import static me.tucu.schema.Properties.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
 import static me.tucu.users.Users.payUser;
-import static me.tucu.utils.Time.getLatestTime;
+import static me.tucu.utils.Batches.getItemResult;
+import static me.tucu.utils.Batches.getNode;
+import static me.tucu.utils.Batches.getOrder;
+import static me.tucu.utils.Cursor.getCursor;
+import static me.tucu.utils.Locks.lock;
+import static me.tucu.utils.Locks.retry;
 
 public class Likes {
     // This field declares that we need a GraphDatabaseService
@@ -36,18 +56,28 @@ public class Likes {
     @Context
     public Log log;
 
+    // Lets a caller waiting on a coalesced like notice its transaction was terminated
+    @Context
+    public TerminationGuard guard;
+
     private static final int TIMEOUT = 1;
 
     @Procedure(name = "me.tucu.likes.get", mode = Mode.READ)
-    @Description("CALL me.tucu.likes.get(username, limit, since, username2)")
+    @Description("CALL me.tucu.likes.get(username, limit, since, username2, cursor, fields)")
     public Stream<MapResult> getLikes(@Name(value = "username", defaultValue = "") String username,
                                       @Name(value = "limit", defaultValue = "25") Long limit,
                                       @Name(value = "since", defaultValue = "-1") Long since,
-                                      @Name(value = "username2", defaultValue = "") String username2) {
+                                      @Name(value = "username2", defaultValue = "") String username2,
+                                      @Name(value = "cursor", defaultValue = "") String cursor,
+                                      @Name(value = "fields", defaultValue = "[]") List<String> fields) {
         ArrayList<Map<String, Object>> results = new ArrayList<>();
         limit =  abs(limit);
+        Fields asked = Fields.of(fields, Fields.POST_FIELDS);
 
-        ZonedDateTime dateTime = getLatestTime(since);
+        Cursor position = getCursor(since, cursor);
+        if (position == null) {
+            return Stream.of(INVALID_CURSOR);
+        }
 
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, username);
@@ -64,102 +94,207 @@ public class Likes {
                 }
             }
 
-            for (Relationship r1: user.getRelationships(Direction.OUTGOING, RelationshipTypes.LIKES)) {
-                ZonedDateTime time = (ZonedDateTime)r1.getProperty(TIME);
-                if(time.isBefore(dateTime)) {
+            Candidates candidates = new Candidates(limit);
+            if (DatedConnections.isRead()) {
+                // Walk back through the days the user liked anything, only as far as it takes to fill the page
+                long earliest = getEpochDay((ZonedDateTime) user.getProperty(TIME));
+                long day = getEpochDay(position.getTime());
+                ActiveDays days = ActiveDays.of(user, LIKED_ON);
+                int count = 0;
+
+                while (count < limit && day >= earliest) {
+                    for (Relationship r1 : user.getRelationships(Direction.OUTGOING, getType(LIKED_ON, day))) {
+                        ZonedDateTime time = (ZonedDateTime) r1.getProperty(TIME);
+                        Node post = r1.getEndNode();
+                        if (position.includes(time, post.getId())) {
+                            candidates.add(time, post, null);
+                            count++;
+                        }
+                    }
+                    day = days.before(day);
+                }
+            } else {
+                for (Relationship r1: user.getRelationships(Direction.OUTGOING, RelationshipTypes.LIKES)) {
+                    ZonedDateTime time = (ZonedDateTime)r1.getProperty(TIME);
                     Node post = r1.getEndNode();
-                    Map<String, Object> properties = post.getAllProperties();
-                    properties.put(LIKED_TIME, time);
-                    Node author = getAuthor(post);
-                    properties.put(USERNAME, author.getProperty(USERNAME));
-                    properties.put(NAME, author.getProperty(NAME));
-                    properties.put(HASH, author.getProperty(HASH));
-                    properties.put(LIKES, (long)post.getDegree(RelationshipTypes.LIKES));
-                    properties.put(REPOSTS, getRepostedCount(post));
-                    if (user2 != null) {
-                        properties.put(LIKED, userLikesPost(user2, post));
-                        properties.put(REPOSTED, userRepostedPost(tx, user2, post));
+                    if(position.includes(time, post.getId())) {
+                        candidates.add(time, post, null);
                     }
-                    results.add(properties);
                 }
             }
 
+            // Only now read everything else about the liked posts that made the page
+            PostDecorator decorator = new PostDecorator(tx, user2, asked);
+            ArrayList<Node> posts = new ArrayList<>();
+            for (Candidate candidate : candidates.getCandidates()) {
+                Map<String, Object> properties = decorator.getProperties(candidate.node, getAuthor(tx, candidate.node));
+                properties.put(CURSOR, candidate.cursor.toString());
+                properties.put(LIKED_TIME, candidate.cursor.getTime());
+                results.add(properties);
+                posts.add(candidate.node);
+            }
+            decorator.putInteractions(results, posts);
+
             tx.commit();
         }
-        results.sort(Comparator.comparing(m -> (ZonedDateTime) m.get(LIKED_TIME), reverseOrder()));
-        return results.stream().limit(limit).map(MapResult::new);
+        return results.stream().map(asked::project).map(MapResult::new);
     }
 
     @Procedure(name = "me.tucu.likes.create", mode = Mode.WRITE)
     @Description("CALL me.tucu.likes.create(username, post_id)")
     public Stream<MapResult> createLikes(@Name(value = "username", defaultValue = "") String username,
                                         @Name(value = "post_id", defaultValue = "-1") Long post_id) {
-        Map<String, Object> results;
+        // When likes are coalesced, wait for ours to be committed with the others
+        LikeQueue queue = LikeQueue.getQueue(db);
+        if (queue != null) {
+            LikeQueue.PendingLike like = queue.submit(username, post_id);
+            MapResult result = like == null ? null : queue.await(like, guard);
+            if (result != null) {
+                return Stream.of(result);
+            }
+            // The queue is full, or the worker did not get to our like in time, so we like the post ourselves
+        }
+
+        return Stream.of(retry(() -> {
+            try (Transaction tx = db.beginTx()) {
+                MapResult result = like(tx, username, post_id);
+                tx.commit();
+                return result;
+            }
+        }));
+    }
+
+    @Procedure(name = "me.tucu.likes.createBatch", mode = Mode.WRITE)
+    @Description("CALL me.tucu.likes.createBatch(username, post_ids, batch_size)")
+    public Stream<MapResult> createLikesBatch(@Name(value = "username", defaultValue = "") String username,
+                                              @Name(value = "post_ids", defaultValue = "[]") List<Long> post_ids,
+                                              @Name(value = "batch_size", defaultValue = "1000") Long batchSize) {
+        batchSize = Math.max(1L, abs(batchSize));
+        MapResult[] results = new MapResult[post_ids.size()];
+        LongArrayList ids = new LongArrayList();
+        IntArrayList indexes = new IntArrayList();
+        long userId;
+
+        // Find everything first
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, username);
             if (user == null) {
                 return Stream.of(USER_NOT_FOUND);
             }
-            Node post;
-            try {
-                post = tx.getNodeById(post_id);
-            } catch (Exception exception) {
-                return Stream.of(POST_NOT_FOUND);
-            }
-
-            if (!post.hasLabel(Labels.Post)) {
-                return Stream.of(POST_NOT_FOUND);
-            }
-
-            // Get the first Reposted Post if the post being liked is a Promoting Post.
-            post = getOriginalPost(post);
-            if (userLikesPost(user, post)) {
-                return Stream.of(ALREADY_LIKES);
+            userId = user.getId();
+
+            for (int i = 0; i < post_ids.size(); i++) {
+                Node post = getPost(tx, post_ids.get(i));
+                if (post == null) {
+                    results[i] = getItemResult(POST_NOT_FOUND, POST_ID, post_ids.get(i));
+                } else {
+                    ids.add(post.getId());
+                    indexes.add(i);
+                }
             }
+        }
 
-            // We are preparing the like relationship and the results before we
-            // find out if the user has the funds needed to perform the action
-            // we do this to minimize the time the nodes are locked.
-            results = post.getAllProperties();
-            Relationship like = user.createRelationshipTo(post, RelationshipTypes.LIKES);
-            like.setProperty(TIME, ZonedDateTime.now());
-            results.put(LIKED_TIME, ZonedDateTime.now());
+        // Like them in node id order, so the locks are always taken in the same order
+        int[] order = getOrder(ids);
+        for (int start = 0; start < order.length; start += batchSize) {
+            int first = start;
+            int end = (int) Math.min(order.length, start + batchSize);
+            retry(() -> {
+                try (Transaction tx = db.beginTx()) {
+                    Node user = tx.getNodeById(userId);
+                    for (int j = first; j < end; j++) {
+                        int i = indexes.get(order[j]);
+                        Node post = getNode(tx, ids.get(order[j]));
+                        MapResult result = post == null ? POST_NOT_FOUND : like(tx, user, post);
+                        results[i] = getItemResult(result, POST_ID, post_ids.get(i));
+                    }
+                    tx.commit();
+                }
+                return end;
+            });
+        }
+        return Arrays.stream(results);
+    }
 
-            Node author = getAuthor(post);
-            results.put(USERNAME, author.getProperty(USERNAME));
-            results.put(NAME, author.getProperty(NAME));
-            results.put(HASH, author.getProperty(HASH));
-            results.put(LIKES, (long)post.getDegree(RelationshipTypes.LIKES));
-            results.put(REPOSTS, getRepostedCount(post));
-            results.put(LIKED, true);
-            results.put(REPOSTED, userRepostedPost(tx, user, post));
+    // Likes the post in the transaction, which may be liking other posts as well.
+    // Nothing about the like is written if it fails.
+    static MapResult like(Transaction tx, String username, Long post_id) {
+        Node user = tx.findNode(Labels.User, USERNAME, username);
+        if (user == null) {
+            return USER_NOT_FOUND;
+        }
+        Node post = getPost(tx, post_id);
+        if (post == null) {
+            return POST_NOT_FOUND;
+        }
+        return like(tx, user, post);
+    }
 
-            // Lock the users so nobody else can touch them,
-            // the lock will be release at the end of the transaction
-            tx.acquireWriteLock(user);
-            tx.acquireWriteLock(author);
+    private static Node getPost(Transaction tx, Long post_id) {
+        Node post;
+        try {
+            post = tx.getNodeById(post_id);
+        } catch (Exception exception) {
+            return null;
+        }
+        return post.hasLabel(Labels.Post) ? post : null;
+    }
 
-            Long silver = (Long)user.getProperty(SILVER);
-            Long gold = (Long)user.getProperty(GOLD);
+    private static MapResult like(Transaction tx, Node user, Node post) {
+        Map<String, Object> results;
 
-            // User must have a positive balance of gold and silver
-            if (gold + silver < 1) {
-                return Stream.of(INSUFFICIENT_FUNDS);
-            }
+        // Get the first Reposted Post if the post being liked is a Promoting Post.
+        post = getOriginalPost(tx, post);
+        if (userLikesPost(user, post)) {
+            return ALREADY_LIKES;
+        }
 
-            payUser(results, user, like, author, silver, gold);
-            tx.commit();
+        // We are preparing the like relationship and the results before we
+        // find out if the user has the funds needed to perform the action
+        // we do this to minimize the time the nodes are locked.
+        results = getPostAttributes(post);
+        Relationship like = user.createRelationshipTo(post, RelationshipTypes.LIKES);
+        like.setProperty(TIME, ZonedDateTime.now());
+        results.put(LIKED_TIME, ZonedDateTime.now());
+
+        Node author = getAuthor(tx, post);
+        results.put(USERNAME, author.getProperty(USERNAME));
+        results.put(NAME, author.getProperty(NAME));
+        results.put(HASH, author.getProperty(HASH));
+        results.put(LIKES, (long)post.getDegree(RelationshipTypes.LIKES));
+        results.put(REPOSTS, getRepostedCount(post));
+        results.put(LIKED, true);
+        results.put(REPOSTED, userRepostedPost(tx, user, post));
+
+        // Lock the user so nobody else can touch them, the lock will be released at the end
+        // of the transaction. The author is paid through the ledger, so we don't wait on them.
+        lock(tx, user);
+
+        // Anything they are owed can be spent
+        settle(tx, user);
+
+        Long silver = (Long)user.getProperty(SILVER);
+        Long gold = (Long)user.getProperty(GOLD);
+
+        // User must have a positive balance of gold and silver
+        if (gold + silver < 1) {
+            like.delete();
+            return INSUFFICIENT_FUNDS;
         }
 
-        return Stream.of(new MapResult(results));
+        DatedConnections.add(like, LIKED_ON);
+        payUser(tx, results, user, like, author, silver, gold);
+        return new MapResult(results);
     }
 
-
-
     @Procedure(name = "me.tucu.likes.remove", mode = Mode.WRITE)
     @Description("CALL me.tucu.likes.remove(username, post_id)")
     public Stream<MapResult> removeLikes(@Name(value = "username", defaultValue = "") String username,
                                          @Name(value = "post_id", defaultValue = "-1") Long post_id) {
+        return retry(() -> unlike(username, post_id));
+    }
+
+    private Stream<MapResult> unlike(String username, Long post_id) {
         Map<String, Object> results;
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, username);
@@ -178,7 +313,7 @@ public class Likes {
             }
 
             // Get the first Reposted Post if the post being liked is a Promoting Post.
-            post = getOriginalPost(post);
+            post = getOriginalPost(tx, post);
 
             // User has only a minute to unlike a post in the case of a mistaken click
             Relationship like = null;
@@ -204,7 +339,7 @@ public class Likes {
                 return Stream.of(NOT_LIKING);
             }
 
-            results = post.getAllProperties();
+            results = getPostAttributes(post);
 
             // Prevent more than one unlike
             tx.acquireWriteLock(like);
@@ -217,7 +352,7 @@ public class Likes {
                 return Stream.of(UNLIKE_TIMEOUT);
             }
 
-            Node author = getAuthor(post);
+            Node author = getAuthor(tx, post);
             results.put(USERNAME, author.getProperty(USERNAME));
             results.put(NAME, author.getProperty(NAME));
             results.put(HASH, author.getProperty(HASH));
@@ -226,22 +361,22 @@ public class Likes {
             results.put(LIKED, false);
             results.put(REPOSTED, userRepostedPost(tx, user, post));
 
-            // Lock the users so nobody else can touch them,
+            // Lock the user so nobody else can touch them,
             // the lock will be release at the end of the transaction
-            tx.acquireWriteLock(user);
-            tx.acquireWriteLock(author);
+            lock(tx, user);
 
-            // Refund whatever they paid the first time
+            // Refund whatever they paid the first time, taking it back from the author through the ledger
             if(likeProperties.containsKey(SILVER)){
                 user.setProperty(SILVER, 1L + (long)user.getProperty(SILVER));
-                author.setProperty(SILVER, (Long)author.getProperty(SILVER) - 1L);
+                credit(tx, user, author, SILVER, -1L);
                 results.put(SILVER, true);
             } else {
                 user.setProperty(GOLD, 1L + (long)user.getProperty(GOLD));
-                author.setProperty(GOLD, (Long)author.getProperty(GOLD) - 1L);
+                credit(tx, user, author, GOLD, -1L);
                 results.put(GOLD, true);
             }
 
+            DatedConnections.remove(like, LIKED_ON);
             like.delete();
             tx.commit();
         }
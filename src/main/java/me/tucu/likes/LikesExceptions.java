@@ -7,6 +7,7 @@ import java.util.Map;
 public class LikesExceptions {
     public static final MapResult NOT_LIKING = new MapResult(Map.of("Error", "Cannot unlike Post not liked."));
     public static final MapResult ALREADY_LIKES = new MapResult(Map.of("Error", "Cannot like twice."));
+    public static final MapResult LIKE_TIMEOUT = new MapResult(Map.of("Error", "Timed out waiting for like, it may still be committed."));
     public static final MapResult UNLIKE_TIMEOUT = new MapResult(Map.of("Error", "Cannot unlike Post after timeout."));
 
 }
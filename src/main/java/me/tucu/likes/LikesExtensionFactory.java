@@ -0,0 +1,43 @@
+package me.tucu.likes;
+
+import org.neo4j.kernel.extension.ExtensionFactory;
+import org.neo4j.kernel.extension.ExtensionType;
+import org.neo4j.kernel.extension.context.ExtensionContext;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.Lifecycle;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+
+import static org.neo4j.configuration.GraphDatabaseSettings.SYSTEM_DATABASE_NAME;
+
+// Starts a like queue with every database if likes are coalesced, registered in
+// META-INF/services/org.neo4j.kernel.extension.ExtensionFactory
+public class LikesExtensionFactory extends ExtensionFactory<LikesExtensionFactory.Dependencies> {
+
+    public interface Dependencies {
+        GraphDatabaseAPI graphDatabaseAPI();
+    }
+
+    public LikesExtensionFactory() {
+        super(ExtensionType.DATABASE, "tucuLikes");
+    }
+
+    @Override
+    public Lifecycle newInstance(ExtensionContext context, Dependencies dependencies) {
+        GraphDatabaseAPI db = dependencies.graphDatabaseAPI();
+
+        return new LifecycleAdapter() {
+            @Override
+            public void start() {
+                if (db.databaseName().equals(SYSTEM_DATABASE_NAME)) {
+                    return;
+                }
+                LikeQueue.start(db);
+            }
+
+            @Override
+            public void stop() {
+                LikeQueue.stop(db);
+            }
+        };
+    }
+}
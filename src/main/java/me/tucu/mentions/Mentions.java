@@ -1,28 +1,31 @@
 package me.tucu.mentions;
 
+import me.tucu.posts.PostDecorator;
 import me.tucu.results.MapResult;
+import me.tucu.schema.ActiveDays;
 import me.tucu.schema.Labels;
 import me.tucu.schema.RelationshipTypes;
+import me.tucu.utils.Candidates;
+import me.tucu.utils.Candidates.Candidate;
+import me.tucu.utils.Cursor;
+import me.tucu.utils.Tokens;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
-import static java.util.Collections.reverseOrder;
-import static me.tucu.likes.Likes.userLikesPost;
+import static me.tucu.Exceptions.INVALID_CURSOR;
 import static me.tucu.posts.Posts.*;
 import static me.tucu.schema.DatedRelationshipTypes.MENTIONED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
 import static me.tucu.schema.Properties.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
-import static me.tucu.utils.Time.dateFormatter;
-import static me.tucu.utils.Time.getLatestTime;
+import static me.tucu.utils.Cursor.getCursor;
 
 public class Mentions {
     // This field declares that we need a GraphDatabaseService
@@ -35,19 +38,20 @@ public class Mentions {
     @Context
     public Log log;
 
-    private static final Pattern MENTIONS_PATTERN = Pattern.compile("@([a-z][a-z0-9_]{2,31})");
-
     @Procedure(name = "me.tucu.mentions.get", mode = Mode.READ)
-    @Description("CALL me.tucu.mentions.get(username, limit, since, username2)")
+    @Description("CALL me.tucu.mentions.get(username, limit, since, username2, cursor)")
     public Stream<MapResult> getMentions(@Name(value = "username", defaultValue = "") String username,
                                          @Name(value = "limit", defaultValue = "25") Long limit,
                                          @Name(value = "since", defaultValue = "-1") Long since,
-                                         @Name(value = "username2", defaultValue = "") String username2) {
+                                         @Name(value = "username2", defaultValue = "") String username2,
+                                         @Name(value = "cursor", defaultValue = "") String cursor) {
         ArrayList<Map<String, Object>> results = new ArrayList<>();
         limit = abs(limit);
 
-        ZonedDateTime dateTime = getLatestTime(since);
-        ZonedDateTime now = getLatestTime(since);
+        Cursor position = getCursor(since, cursor);
+        if (position == null) {
+            return Stream.of(INVALID_CURSOR);
+        }
 
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, username);
@@ -78,62 +82,59 @@ public class Mentions {
                 }
             }
 
-            ZonedDateTime earliest = ((ZonedDateTime) user.getProperty(TIME)).truncatedTo(ChronoUnit.DAYS);
+            long earliest = getEpochDay((ZonedDateTime) user.getProperty(TIME));
+            long day = getEpochDay(position.getTime());
+            ActiveDays days = ActiveDays.of(user, MENTIONED_ON);
+            Candidates candidates = new Candidates(limit);
             int count = 0;
 
-            while (count < limit && now.isAfter(earliest)) {
-                RelationshipType mentioned_on = RelationshipType.withName(MENTIONED_ON +
-                        now.format(dateFormatter));
+            while (count < limit && day >= earliest) {
+                RelationshipType mentioned_on = getType(MENTIONED_ON, day);
 
                 for (Relationship r1 : user.getRelationships(Direction.INCOMING, mentioned_on)) {
                     Node post = r1.getStartNode();
-                    Map<String, Object> properties = post.getAllProperties();
-
                     ZonedDateTime time = (ZonedDateTime) post.getProperty(TIME);
-                    if (time.isBefore(dateTime)) {
-                        Node author = getAuthor(post);
+                    if (position.includes(time, post.getId())) {
+                        Node author = getAuthor(tx, post);
                         // Ignore any mentions by muted users
                         if (!muted.contains(author)) {
-                            properties.put(USERNAME, author.getProperty(USERNAME));
-                            properties.put(NAME, author.getProperty(NAME));
-                            properties.put(HASH, author.getProperty(HASH));
-                            properties.put(LIKES, (long) post.getDegree(RelationshipTypes.LIKES));
-                            properties.put(REPOSTS, getRepostedCount(post));
-                            if (user2 != null) {
-                                properties.put(LIKED, userLikesPost(user2, post));
-                                properties.put(REPOSTED, userRepostedPost(tx, user2, post));
-                            }
-                            results.add(properties);
+                            candidates.add(time, post, author);
                             count++;
                         }
                     }
 
                 }
-                // Check the day before
-                now = now.minusDays(1);
+                // Check the day before that had any mentions
+                day = days.before(day);
             }
+
+            // Only now read everything else about the mentions that made the page
+            PostDecorator decorator = new PostDecorator(tx, user2);
+            ArrayList<Node> posts = new ArrayList<>();
+            for (Candidate candidate : candidates.getCandidates()) {
+                Map<String, Object> properties = decorator.getProperties(candidate.node, candidate.author);
+                properties.put(CURSOR, candidate.cursor.toString());
+                results.add(properties);
+                posts.add(candidate.node);
+            }
+            decorator.putInteractions(results, posts);
         }
 
-        results.sort(Comparator.comparing(m -> (ZonedDateTime) m.get(TIME), reverseOrder()));
-        return results.stream().limit(limit).map(MapResult::new);
+        return results.stream().map(MapResult::new);
     }
 
-    public static void createMentions(Node post, Map input, ZonedDateTime dateTime, Transaction tx) {
-        Matcher mat = MENTIONS_PATTERN.matcher(((String)input.get(STATUS)).toLowerCase());
-
-        RelationshipType mentioned_on =  RelationshipType.withName(MENTIONED_ON + dateTime.format(dateFormatter));
+    public static void createMentions(Node post, Tokens tokens, ZonedDateTime dateTime, Transaction tx) {
+        RelationshipType mentioned_on = getType(MENTIONED_ON, dateTime);
         for (Relationship r1 : post.getRelationships(Direction.OUTGOING,mentioned_on)) {
             r1.delete();
         }
 
-        Set<Node> mentioned = new HashSet<>();
-        while (mat.find()) {
-            String username = mat.group(1);
+        for (String username : tokens.getMentions()) {
             Node user = tx.findNode(Labels.User, USERNAME, username);
-            if (user != null && !mentioned.contains(user)) {
+            if (user != null) {
                 Relationship r1 = post.createRelationshipTo(user, mentioned_on);
                 r1.setProperty(TIME, dateTime);
-                mentioned.add(user);
+                ActiveDays.add(user, MENTIONED_ON, dateTime);
             }
         }
     }
@@ -3,23 +3,34 @@ package me.tucu.mutes;
 import me.tucu.results.MapResult;
 import me.tucu.schema.Labels;
 import me.tucu.schema.RelationshipTypes;
+import me.tucu.utils.Candidates;
+import me.tucu.utils.Candidates.Candidate;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.list.mutable.primitive.IntArrayList;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.Comparator;
+import java.util.Arrays;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
-import static java.util.Collections.reverseOrder;
 import static me.tucu.mutes.MuteExceptions.*;
 import static me.tucu.schema.Properties.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
+import static me.tucu.users.Users.getPublicProperties;
 import static me.tucu.users.Users.getUserAttributes;
+import static me.tucu.utils.Batches.getItemResult;
+import static me.tucu.utils.Batches.getNode;
+import static me.tucu.utils.Batches.getOrder;
+import static me.tucu.utils.Locks.retry;
 import static me.tucu.utils.Time.getLatestTime;
 
 public class Mutes {
@@ -48,20 +59,23 @@ public class Mutes {
             if (user == null) {
                 return Stream.of(USER_NOT_FOUND);
             }
+            // Pick the page by when they were muted alone, and only read the users that made it
+            Candidates candidates = new Candidates(limit);
             for (Relationship r1: user.getRelationships(Direction.OUTGOING, RelationshipTypes.MUTES)) {
                 ZonedDateTime time = (ZonedDateTime)r1.getProperty(TIME);
                 if(time.isBefore(dateTime)) {
-                    Node muted = r1.getEndNode();
-                    Map<String, Object> result = getUserAttributes(muted);
-                    result.put(TIME, time);
-                    results.add(result);
+                    candidates.add(time, r1, r1.getEndNode());
                 }
             }
+            for (Candidate candidate : candidates.getCandidates()) {
+                Map<String, Object> result = getUserAttributes(candidate.node);
+                result.put(TIME, candidate.cursor.getTime());
+                results.add(result);
+            }
 
             tx.commit();
         }
-        results.sort(Comparator.comparing(m -> (ZonedDateTime) m.get(TIME), reverseOrder()));
-        return results.stream().limit(limit).map(MapResult::new);
+        return results.stream().map(MapResult::new);
     }
 
     @Procedure(name = "me.tucu.mutes.create", mode = Mode.WRITE)
@@ -105,16 +119,87 @@ public class Mutes {
 
             Relationship mutes = user.createRelationshipTo(user2, RelationshipTypes.MUTES);
             mutes.setProperty(TIME, ZonedDateTime.now());
-            results = user2.getAllProperties();
-            results.remove(EMAIL);
-            results.remove(PASSWORD);
-            results.remove(SILVER);
-            results.remove(GOLD);
+            results = getPublicProperties(user2);
             tx.commit();
         }
         return Stream.of(new MapResult(results));
     }
 
+    @Procedure(name = "me.tucu.mutes.createBatch", mode = Mode.WRITE)
+    @Description("CALL me.tucu.mutes.createBatch(username, usernames, batch_size)")
+    public Stream<MapResult> createMutesBatch(@Name(value = "username", defaultValue = "") String username,
+                                              @Name(value = "usernames", defaultValue = "[]") List<String> usernames,
+                                              @Name(value = "batch_size", defaultValue = "1000") Long batchSize) {
+        batchSize = Math.max(1L, abs(batchSize));
+        MapResult[] results = new MapResult[usernames.size()];
+        LongArrayList ids = new LongArrayList();
+        IntArrayList indexes = new IntArrayList();
+        MutableLongSet muted = new LongHashSet();
+        long userId;
+
+        // Find everybody first, and who the user already muted in one go
+        try (Transaction tx = db.beginTx()) {
+            Node user = tx.findNode(Labels.User, USERNAME, username);
+            if (user == null) {
+                return Stream.of(USER_NOT_FOUND);
+            }
+            userId = user.getId();
+            for (Relationship r1 : user.getRelationships(Direction.OUTGOING, RelationshipTypes.MUTES)) {
+                muted.add(r1.getEndNodeId());
+            }
+
+            for (int i = 0; i < usernames.size(); i++) {
+                // Can't mute yourself
+                if (username.equals(usernames.get(i))) {
+                    results[i] = getItemResult(SELF_MUTE, USERNAME, usernames.get(i));
+                    continue;
+                }
+                Node user2 = tx.findNode(Labels.User, USERNAME, usernames.get(i));
+                if (user2 == null) {
+                    results[i] = getItemResult(USER_NOT_FOUND, USERNAME, usernames.get(i));
+                } else {
+                    ids.add(user2.getId());
+                    indexes.add(i);
+                }
+            }
+        }
+
+        // Mute them in node id order, so the locks are always taken in the same order
+        int[] order = getOrder(ids);
+        for (int start = 0; start < order.length; start += batchSize) {
+            int first = start;
+            int end = (int) Math.min(order.length, start + batchSize);
+            MutableLongSet added = retry(() -> {
+                // Only muted once the chunk commits, so a chunk that is run again starts over
+                MutableLongSet muting = new LongHashSet();
+                try (Transaction tx = db.beginTx()) {
+                    Node user = tx.getNodeById(userId);
+                    for (int j = first; j < end; j++) {
+                        int i = indexes.get(order[j]);
+                        Node user2 = getNode(tx, ids.get(order[j]));
+                        if (user2 == null) {
+                            results[i] = getItemResult(USER_NOT_FOUND, USERNAME, usernames.get(i));
+                            continue;
+                        }
+                        if (muted.contains(user2.getId()) || !muting.add(user2.getId())) {
+                            results[i] = getItemResult(ALREADY_MUTED, USERNAME, usernames.get(i));
+                            continue;
+                        }
+
+                        Relationship mutes = user.createRelationshipTo(user2, RelationshipTypes.MUTES);
+                        mutes.setProperty(TIME, ZonedDateTime.now());
+                        Map<String, Object> result = getPublicProperties(user2);
+                        results[i] = new MapResult(result);
+                    }
+                    tx.commit();
+                }
+                return muting;
+            });
+            muted.addAll(added);
+        }
+        return Arrays.stream(results);
+    }
+
     @Procedure(name = "me.tucu.mutes.remove", mode = Mode.WRITE)
     @Description("CALL me.tucu.mutes.remove(username, username2)")
     public Stream<MapResult> removeMutes(@Name(value = "username", defaultValue = "") String username,
@@ -160,11 +245,7 @@ public class Mutes {
 
             mutes.delete();
 
-            results = user2.getAllProperties();
-            results.remove(EMAIL);
-            results.remove(PASSWORD);
-            results.remove(SILVER);
-            results.remove(GOLD);
+            results = getPublicProperties(user2);
             tx.commit();
         }
         return Stream.of(new MapResult(results));
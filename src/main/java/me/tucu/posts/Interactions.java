@@ -0,0 +1,102 @@
+package me.tucu.posts;
+
+import me.tucu.schema.ActiveDays;
+import me.tucu.schema.RelationshipTypes;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import java.time.ZonedDateTime;
+import java.util.List;
+
+import static me.tucu.posts.Posts.isAnAdvertisement;
+import static me.tucu.posts.Posts.userRepostedPost;
+import static me.tucu.schema.DatedRelationshipTypes.REPOSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
+import static me.tucu.schema.Properties.TIME;
+
+// Which posts of a page a user liked or reposted. Instead of looking for each post on its own,
+// we go over the likes of the user once, and over their reposts from the day of the oldest post on.
+public class Interactions {
+
+    private final MutableLongSet liked = new LongHashSet();
+    private final MutableLongSet reposted = new LongHashSet();
+
+    private Interactions() {
+    }
+
+    public static Interactions of(Transaction tx, Node user, List<Node> posts) {
+        Interactions interactions = new Interactions();
+        if (posts.isEmpty()) {
+            return interactions;
+        }
+
+        MutableLongSet page = new LongHashSet();
+        MutableLongSet regular = new LongHashSet();
+        long likes = 0;
+        long earliest = Long.MAX_VALUE;
+        for (Node post : posts) {
+            page.add(post.getId());
+            likes += post.getDegree(RelationshipTypes.LIKES, Direction.INCOMING);
+
+            // Advertisements are reposted through a new post we can find in the index
+            if (isAnAdvertisement(post)) {
+                if (userRepostedPost(tx, user, post)) {
+                    interactions.reposted.add(post.getId());
+                }
+            } else {
+                regular.add(post.getId());
+                earliest = Math.min(earliest, getEpochDay((ZonedDateTime) post.getProperty(TIME)));
+            }
+        }
+
+        // Go over whichever side has fewer likes
+        if (user.getDegree(RelationshipTypes.LIKES, Direction.OUTGOING) < likes) {
+            for (Relationship r1 : user.getRelationships(Direction.OUTGOING, RelationshipTypes.LIKES)) {
+                long id = r1.getEndNodeId();
+                if (page.contains(id)) {
+                    interactions.liked.add(id);
+                }
+            }
+        } else {
+            for (Node post : posts) {
+                for (Relationship r1 : post.getRelationships(Direction.INCOMING, RelationshipTypes.LIKES)) {
+                    if (r1.getStartNodeId() == user.getId()) {
+                        interactions.liked.add(post.getId());
+                        break;
+                    }
+                }
+            }
+        }
+
+        // A post can only be reposted after it was posted
+        if (!regular.isEmpty()) {
+            ActiveDays days = ActiveDays.of(user, REPOSTED_ON);
+            long day = getEpochDay(ZonedDateTime.now());
+            while (day >= earliest) {
+                for (Relationship r1 : user.getRelationships(Direction.OUTGOING, getType(REPOSTED_ON, day))) {
+                    long id = r1.getEndNodeId();
+                    if (regular.contains(id)) {
+                        interactions.reposted.add(id);
+                    }
+                }
+                // Check the day before that had any reposts
+                day = days.before(day);
+            }
+        }
+
+        return interactions;
+    }
+
+    public boolean liked(Node post) {
+        return liked.contains(post.getId());
+    }
+
+    public boolean reposted(Node post) {
+        return reposted.contains(post.getId());
+    }
+}
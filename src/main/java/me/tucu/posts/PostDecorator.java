@@ -0,0 +1,77 @@
+package me.tucu.posts;
+
+import me.tucu.schema.RelationshipTypes;
+import me.tucu.utils.Fields;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.posts.Posts.getPostAttributes;
+import static me.tucu.posts.Posts.getRepostedCount;
+import static me.tucu.schema.Properties.*;
+
+// Adds what we show about a post to its properties: who wrote it, how many likes and reposts it has,
+// and whether the user looking at it liked or reposted it.
+// One is made per request, so a user who shows up on many posts of a page is only read once.
+// Only what is in the fields asked for is read.
+public class PostDecorator {
+
+    private final Transaction tx;
+    private final Node user;
+    private final Fields fields;
+    private final LongObjectHashMap<Map<String, Object>> authors = new LongObjectHashMap<>();
+
+    // The user may be null if nobody in particular is looking
+    public PostDecorator(Transaction tx, Node user) {
+        this(tx, user, Fields.ALL);
+    }
+
+    public PostDecorator(Transaction tx, Node user, Fields fields) {
+        this.tx = tx;
+        this.user = user;
+        this.fields = fields;
+    }
+
+    // The properties of the post with its likes and reposts
+    public Map<String, Object> getProperties(Node post) {
+        Map<String, Object> properties = fields.isAll() ? getPostAttributes(post) : fields.getProperties(post);
+        if (fields.includes(LIKES)) {
+            properties.put(LIKES, (long) post.getDegree(RelationshipTypes.LIKES));
+        }
+        if (fields.includes(REPOSTS)) {
+            properties.put(REPOSTS, getRepostedCount(post));
+        }
+        return properties;
+    }
+
+    // The properties of the post with its likes, reposts and author
+    public Map<String, Object> getProperties(Node post, Node author) {
+        Map<String, Object> properties = getProperties(post);
+        if (fields.includes(USERNAME) || fields.includes(NAME) || fields.includes(HASH)) {
+            properties.putAll(getAuthor(author));
+        }
+        return properties;
+    }
+
+    // The username, name and hash of the user
+    public Map<String, Object> getAuthor(Node author) {
+        return authors.getIfAbsentPutWithKey(author.getId(), id -> author.getProperties(USERNAME, NAME, HASH));
+    }
+
+    // Adds whether the user liked or reposted each post to the properties of the posts, all at once
+    public void putInteractions(List<Map<String, Object>> results, List<Node> posts) {
+        if (user == null || !(fields.includes(LIKED) || fields.includes(REPOSTED))) {
+            return;
+        }
+
+        Interactions interactions = Interactions.of(tx, user, posts);
+        for (int i = 0; i < posts.size(); i++) {
+            Map<String, Object> properties = results.get(results.size() - posts.size() + i);
+            properties.put(LIKED, interactions.liked(posts.get(i)));
+            properties.put(REPOSTED, interactions.reposted(posts.get(i)));
+        }
+    }
+}
@@ -9,5 +9,6 @@ public class PostExceptions {
     public static final MapResult MISSING_STATUS = new MapResult(Map.of("Error", "Missing status Parameter."));
     public static final MapResult EMPTY_STATUS = new MapResult(Map.of("Error", "Empty status Parameter."));
     public static final MapResult POST_ALREADY_REPOSTED = new MapResult(Map.of("Error", "Post already reposted."));
+    public static final MapResult POST_NOT_AN_ADVERTISEMENT = new MapResult(Map.of("Error", "Post is not an advertisement."));
     public static final MapResult PRODUCT_NOT_PURCHASED = new MapResult(Map.of("Error", "Product not purchased"));
 }
@@ -3,32 +3,49 @@ package me.tucu.posts;
 import me.tucu.mentions.Mentions;
 import me.tucu.promotes.Promotes;
 import me.tucu.results.MapResult;
+import me.tucu.schema.ActiveDays;
+import me.tucu.schema.DatedConnections;
 import me.tucu.schema.Labels;
 import me.tucu.schema.RelationshipTypes;
 import me.tucu.tags.Tags;
+import me.tucu.timeline.Inbox;
+import me.tucu.utils.Candidates;
+import me.tucu.utils.Candidates.Candidate;
+import me.tucu.utils.Cursor;
+import me.tucu.utils.Fields;
+import me.tucu.utils.Tokens;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.function.ObjLongConsumer;
 import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
-import static java.util.Collections.reverseOrder;
 import static me.tucu.Exceptions.INSUFFICIENT_FUNDS;
+import static me.tucu.Exceptions.INVALID_CURSOR;
 import static me.tucu.likes.Likes.userLikesPost;
+import static me.tucu.ledger.Ledger.settle;
 import static me.tucu.posts.PostExceptions.*;
 import static me.tucu.schema.DatedRelationshipTypes.POSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.REPLIED_ON;
 import static me.tucu.schema.DatedRelationshipTypes.REPOSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
 import static me.tucu.schema.Properties.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
 import static me.tucu.users.Users.payUser;
-import static me.tucu.utils.Time.dateFormatter;
-import static me.tucu.utils.Time.getLatestTime;
+import static me.tucu.utils.Cursor.getCursor;
+import static me.tucu.utils.Locks.lock;
+import static me.tucu.utils.Locks.retry;
 
 public class Posts {
 
@@ -42,18 +59,32 @@ public class Posts {
     @Context
     public Log log;
 
+    // Only the nearest marketers of an advertisement get a commission
+    public static final int MAX_MARKETERS = 4;
+
+    // How many replies deep a thread goes
+    private static final int MAX_DEPTH = 16;
+
+    // Conversations are read oldest first
+    private static final Comparator<Cursor> OLDEST_FIRST = Comparator.<Cursor>naturalOrder().reversed();
+
 
     @Procedure(name = "me.tucu.posts.get", mode = Mode.READ)
-    @Description("CALL me.tucu.posts.get(username, limit, since, username2)")
+    @Description("CALL me.tucu.posts.get(username, limit, since, username2, cursor, fields)")
     public Stream<MapResult> getPosts(@Name(value = "username", defaultValue = "") String username,
                                       @Name(value = "limit", defaultValue = "25") Long limit,
                                       @Name(value = "since", defaultValue = "-1") Long since,
-                                      @Name(value = "username2", defaultValue = "") String username2) {
+                                      @Name(value = "username2", defaultValue = "") String username2,
+                                      @Name(value = "cursor", defaultValue = "") String cursor,
+                                      @Name(value = "fields", defaultValue = "[]") List<String> fields) {
         ArrayList<Map<String, Object>> results = new ArrayList<>();
         limit = abs(limit);
+        Fields asked = Fields.of(fields, Fields.POST_FIELDS);
 
-        ZonedDateTime dateTime = getLatestTime(since);
-        ZonedDateTime now = getLatestTime(since);
+        Cursor position = getCursor(since, cursor);
+        if (position == null) {
+            return Stream.of(INVALID_CURSOR);
+        }
 
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, username);
@@ -70,74 +101,161 @@ public class Posts {
                 }
             }
 
-            Map<String, Object> userProperties = user.getAllProperties();
-            ZonedDateTime earliest = ((ZonedDateTime) user.getProperty(TIME)).truncatedTo(ChronoUnit.DAYS);
+            long earliest = getEpochDay((ZonedDateTime) user.getProperty(TIME));
+            long day = getEpochDay(position.getTime());
+            ActiveDays days = ActiveDays.of(user, POSTED_ON);
+            Candidates candidates = new Candidates(limit);
             int count = 0;
 
-            while (count < limit && now.isAfter(earliest)) {
-                RelationshipType posted_on = RelationshipType.withName(POSTED_ON +
-                        now.format(dateFormatter));
+            while (count < limit && day >= earliest) {
+                RelationshipType posted_on = getType(POSTED_ON, day);
 
                 for (Relationship r1 : user.getRelationships(Direction.OUTGOING, posted_on)) {
                     Node post = r1.getEndNode();
-                    Map<String, Object> properties = post.getAllProperties();
-
                     ZonedDateTime time = (ZonedDateTime) post.getProperty(TIME);
-                    if (time.isBefore(dateTime)) {
-                        properties.put(USERNAME, username);
-                        properties.put(NAME, userProperties.get(NAME));
-                        properties.put(HASH, userProperties.get(HASH));
-                        properties.put(LIKES, (long) post.getDegree(RelationshipTypes.LIKES));
-                        properties.put(REPOSTS, getRepostedCount(post));
-                        if (user2 != null) {
-                            properties.put(LIKED, userLikesPost(user2, post));
-                            properties.put(REPOSTED, userRepostedPost(tx, user2, post));
-                        }
-                        results.add(properties);
+                    if (position.includes(time, post.getId())) {
+                        candidates.add(time, post, user);
                         count++;
                     }
                 }
-                // Check the day before
-                now = now.minusDays(1);
+                // Check the day before that had any posts
+                day = days.before(day);
+            }
+
+            // Only now read everything else about the posts that made the page
+            PostDecorator decorator = new PostDecorator(tx, user2, asked);
+            ArrayList<Node> posts = new ArrayList<>();
+            for (Candidate candidate : candidates.getCandidates()) {
+                Map<String, Object> properties = decorator.getProperties(candidate.node, candidate.author);
+                properties.put(CURSOR, candidate.cursor.toString());
+                results.add(properties);
+                posts.add(candidate.node);
             }
+            decorator.putInteractions(results, posts);
         }
 
-        results.sort(Comparator.comparing(m -> (ZonedDateTime) m.get(TIME), reverseOrder()));
-        return results.stream().limit(limit).map(MapResult::new);
+        return results.stream().map(asked::project).map(MapResult::new);
+    }
+
+    @Procedure(name = "me.tucu.posts.thread", mode = Mode.READ)
+    @Description("CALL me.tucu.posts.thread(post_id, limit, cursor)")
+    public Stream<MapResult> getThread(@Name(value = "post_id", defaultValue = "-1") Long post_id,
+                                       @Name(value = "limit", defaultValue = "25") Long limit,
+                                       @Name(value = "cursor", defaultValue = "") String cursor) {
+        ArrayList<Map<String, Object>> results = new ArrayList<>();
+        limit = abs(limit);
+
+        // Start from the beginning of the conversation unless we have the cursor of a previous page
+        Cursor position = null;
+        if (!cursor.isEmpty()) {
+            position = getCursor(-1L, cursor);
+            if (position == null) {
+                return Stream.of(INVALID_CURSOR);
+            }
+        }
+
+        try (Transaction tx = db.beginTx()) {
+            Node post;
+            try {
+                post = tx.getNodeById(post_id);
+            } catch (Exception exception) {
+                return Stream.of(POST_NOT_FOUND);
+            }
+
+            if (!post.hasLabel(Labels.Post)) {
+                return Stream.of(POST_NOT_FOUND);
+            }
+
+            Node conversation = getConversation(tx, post);
+            Candidates candidates = new Candidates(limit, OLDEST_FIRST);
+            Cursor after = position;
+
+            if (conversation.hasProperty(REPLIED_DAYS)) {
+                // Replies are kept on the conversation by day, so start from the day of the cursor
+                // and stop after the first day that fills the page
+                ActiveDays days = ActiveDays.of(conversation, REPLIED_ON);
+                long latest = getEpochDay(ZonedDateTime.now());
+                long day = getEpochDay(after == null ? (ZonedDateTime) conversation.getProperty(TIME) : after.getTime());
+                int count = 0;
+
+                while (count < limit && day <= latest) {
+                    for (Relationship r1 : conversation.getRelationships(Direction.INCOMING, getType(REPLIED_ON, day))) {
+                        Node reply = r1.getStartNode();
+                        ZonedDateTime time = (ZonedDateTime) r1.getProperty(TIME);
+                        if ((long) r1.getProperty(DEPTH) <= MAX_DEPTH && (after == null || after.precedes(time, reply.getId()))) {
+                            candidates.add(time, reply, null);
+                            count++;
+                        }
+                    }
+                    // Check the next day that had any replies
+                    day = days.after(day);
+                }
+            } else {
+                // Nobody replied to it since we kept track of conversations
+                forEachReply(conversation, (reply, depth) -> {
+                    ZonedDateTime time = (ZonedDateTime) reply.getProperty(TIME);
+                    if (after == null || after.precedes(time, reply.getId())) {
+                        candidates.add(time, reply, null);
+                    }
+                });
+            }
+
+            PostDecorator decorator = new PostDecorator(tx, null);
+            for (Candidate candidate : candidates.getCandidates()) {
+                Node reply = candidate.node;
+                Map<String, Object> properties = decorator.getProperties(reply, getAuthor(tx, reply));
+                properties.put(CURSOR, candidate.cursor.toString());
+                properties.put(IN_REPLY_TO, reply.getSingleRelationship(RelationshipTypes.REPLIED_TO, Direction.OUTGOING)
+                        .getEndNodeId());
+                results.add(properties);
+            }
+        }
+
+        return results.stream().map(MapResult::new);
     }
 
     @Procedure(name = "me.tucu.posts.create", mode = Mode.WRITE)
     @Description("CALL me.tucu.posts.create(parameters)")
     public Stream<MapResult> createPost(@Name(value = "parameters") Map parameters) {
+        return retry(() -> post(parameters));
+    }
+
+    private Stream<MapResult> post(Map parameters) {
         Map<String, Object> results = null;
         MapResult validation = PostValidator.validate(parameters);
         if (!validation.isEmpty()) {
             return Stream.of(validation);
         }
+        Tokens tokens = Tokens.of((String) parameters.get(STATUS));
 
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, parameters.get(USERNAME));
             if (user == null) {
                 return Stream.of(USER_NOT_FOUND);
             }
+            // Decide whether the post is pushed before creating it locks the user
+            Inbox.decide(tx, user, Inbox.getThreshold(db));
             ZonedDateTime dateTime = ZonedDateTime.now();
             Node post = tx.createNode(Labels.Post);
             post.setProperty(STATUS, parameters.get(STATUS));
             post.setProperty(TIME, dateTime);
-            Relationship posted_on = user.createRelationshipTo(post, RelationshipType.withName(POSTED_ON +
-                    dateTime.format(dateFormatter)));
+            post.setProperty(AUTHOR_ID, user.getId());
+            // Nothing has reposted it yet, so reading the count never has to look for reposts
+            post.setProperty(REPOSTS, 0L);
+            Relationship posted_on = user.createRelationshipTo(post, getType(POSTED_ON, dateTime));
             posted_on.setProperty(TIME, dateTime);
+            ActiveDays.add(user, POSTED_ON, dateTime);
 
-            Tags.createTags(post, parameters, dateTime, tx);
-            Mentions.createMentions(post, parameters, dateTime, tx);
+            Tags.createTags(post, tokens, dateTime, tx);
+            Mentions.createMentions(post, tokens, dateTime, tx);
             // In order to post an advertisement, the user must have already purchased the product (or be the seller).
-            Node product = Promotes.createPromotes(post, parameters, dateTime, tx);
+            Node product = Promotes.createPromotes(post, tokens, dateTime, tx);
             if (product != null) {
                 if (!purchasedProduct(user, product) && !sellsProduct(user, product)) {
                     return Stream.of(PRODUCT_NOT_PURCHASED);
                 }
             }
-            results = post.getAllProperties();
+            results = getPostAttributes(post);
             results.put(USERNAME, parameters.get(USERNAME));
             results.put(NAME, user.getProperty(NAME));
             results.put(HASH, user.getProperty(HASH));
@@ -146,7 +264,10 @@ public class Posts {
 
             // Lock the users so nobody else can touch them,
             // the lock will be released at the end of the transaction
-            tx.acquireWriteLock(user);
+            lock(tx, user);
+
+            // Anything they are owed can be spent
+            settle(tx, user);
 
             Long silver = (Long)user.getProperty(SILVER);
             Long gold = (Long)user.getProperty(GOLD);
@@ -167,7 +288,6 @@ public class Posts {
                 user.setProperty(GOLD, gold);
                 results.put(GOLD, true);
             }
-
             tx.commit();
         }
 
@@ -178,17 +298,24 @@ public class Posts {
     @Description("CALL me.tucu.posts.reply(username, post_id)")
     public Stream<MapResult> createReply(@Name(value = "post_id", defaultValue = "-1") Long post_id,
                                          @Name(value = "parameters", defaultValue = "{}") Map parameters) {
+        return retry(() -> reply(post_id, parameters));
+    }
+
+    private Stream<MapResult> reply(Long post_id, Map parameters) {
         Map<String, Object> results = null;
         MapResult validation = PostValidator.validate(parameters);
         if (!validation.isEmpty()) {
             return Stream.of(validation);
         }
+        Tokens tokens = Tokens.of((String) parameters.get(STATUS));
 
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, parameters.get(USERNAME));
             if (user == null) {
                 return Stream.of(USER_NOT_FOUND);
             }
+            // Decide whether the post is pushed before creating it locks the user
+            Inbox.decide(tx, user, Inbox.getThreshold(db));
             Node post;
             try {
                 post = tx.getNodeById(post_id);
@@ -204,38 +331,50 @@ public class Posts {
             Node reply = tx.createNode(Labels.Post);
             reply.setProperty(STATUS, parameters.get(STATUS));
             reply.setProperty(TIME, dateTime);
-            Relationship posted_on = user.createRelationshipTo(reply, RelationshipType.withName(POSTED_ON +
-                    dateTime.format(dateFormatter)));
+            reply.setProperty(AUTHOR_ID, user.getId());
+            reply.setProperty(REPOSTS, 0L);
+            Relationship posted_on = user.createRelationshipTo(reply, getType(POSTED_ON, dateTime));
             posted_on.setProperty(TIME, dateTime);
+            ActiveDays.add(user, POSTED_ON, dateTime);
 
             // If we are replying to a repost of an advertisement, get the original post
-            post = getOriginalPost(post);
+            post = getOriginalPost(tx, post);
+
+            // Keep the conversation on the reply, so the thread can be read from any reply in it,
+            // and the reply on the conversation by day, so the thread can be read from any day in it
+            Node conversation = getConversation(tx, post);
+            reply.setProperty(CONVERSATION_ID, conversation.getId());
+            if (keepsReplies(tx, conversation)) {
+                addReply(conversation, reply, getDepth(conversation, post) + 1, dateTime);
+            }
 
             Relationship replied_to = reply.createRelationshipTo(post, RelationshipTypes.REPLIED_TO);
             replied_to.setProperty(TIME, dateTime);
 
-            Tags.createTags(reply, parameters, dateTime, tx);
-            Mentions.createMentions(reply, parameters, dateTime, tx);
+            Tags.createTags(reply, tokens, dateTime, tx);
+            Mentions.createMentions(reply, tokens, dateTime, tx);
             // In order to reply with an advertisement, the user must have already purchased the product (or be the seller).
-            Node product = Promotes.createPromotes(post, parameters, dateTime, tx);
+            Node product = Promotes.createPromotes(post, tokens, dateTime, tx);
             if (product != null) {
                 if (!purchasedProduct(user, product) && !sellsProduct(user, product)) {
                     return Stream.of(PRODUCT_NOT_PURCHASED);
                 }
             }
-            results = reply.getAllProperties();
+            results = getPostAttributes(reply);
             results.put(USERNAME, parameters.get(USERNAME));
             results.put(NAME, user.getProperty(NAME));
             results.put(HASH, user.getProperty(HASH));
             results.put(REPOSTS, 0L);
             results.put(LIKES, 0L);
 
-            Node author = getAuthor(post);
+            Node author = getAuthor(tx, post);
 
-            // Lock the users so nobody else can touch them,
-            // the lock will be released at the end of the transaction
-            tx.acquireWriteLock(user);
-            tx.acquireWriteLock(author);
+            // Lock the user so nobody else can touch them, the lock will be released at the end
+            // of the transaction. The author is paid through the ledger, so we don't wait on them.
+            lock(tx, user);
+
+            // Anything they are owed can be spent
+            settle(tx, user);
 
             Long silver = (Long)user.getProperty(SILVER);
             Long gold = (Long)user.getProperty(GOLD);
@@ -245,7 +384,7 @@ public class Posts {
                 return Stream.of(INSUFFICIENT_FUNDS);
             }
 
-            payUser(results, user, posted_on, author, silver, gold);
+            payUser(tx, results, user, posted_on, author, silver, gold);
             tx.commit();
         }
         return Stream.of(new MapResult(results));
@@ -255,6 +394,10 @@ public class Posts {
     @Description("CALL me.tucu.posts.repost(post_id, username)")
     public Stream<MapResult> createRepost(@Name(value = "post_id", defaultValue = "-1") Long post_id,
                                           @Name(value = "username", defaultValue = "") String username) {
+        return retry(() -> repost(post_id, username));
+    }
+
+    private Stream<MapResult> repost(Long post_id, String username) {
         Map<String, Object> results = null;
         ZonedDateTime dateTime = ZonedDateTime.now();
         try (Transaction tx = db.beginTx()) {
@@ -262,6 +405,8 @@ public class Posts {
             if (user == null) {
                 return Stream.of(USER_NOT_FOUND);
             }
+            // Decide whether the post is pushed before creating it locks the user
+            Inbox.decide(tx, user, Inbox.getThreshold(db));
             Node post;
             try {
                 post = tx.getNodeById(post_id);
@@ -277,8 +422,7 @@ public class Posts {
                 return Stream.of(POST_ALREADY_REPOSTED);
             }
 
-            RelationshipType reposted_on = RelationshipType.withName(REPOSTED_ON +
-                    dateTime.format(dateFormatter));
+            RelationshipType reposted_on = getType(REPOSTED_ON, dateTime);
 
             Node repost;
             Relationship reposted;
@@ -295,34 +439,54 @@ public class Posts {
                 reposted.setProperty(TIME, dateTime);
 
                 // Get the actual Post if the post being reposted is a Promoting Post.
-                post = getOriginalPost(post);
+                post = getOriginalPost(tx, post);
 
                 // In order to repost an advertisement, the user must have already purchased the product (or be the seller).
                 Node product = post.getSingleRelationship(RelationshipTypes.PROMOTES, Direction.OUTGOING).getEndNode();
+
+                // Remember where the repost came from, so we don't have to walk the tree back to find it
+                repost.setProperty(ROOT_ID, post.getId());
+                repost.setProperty(PRODUCT_ID, product.getId());
+                repost.setProperty(MARKETERS, getMarketers(tx, repost));
                 if (!purchasedProduct(user, product) && !sellsProduct(user, product)) {
                     return Stream.of(PRODUCT_NOT_PURCHASED);
                 }
 
+                // Keep count of the reposts of the whole tree on the advertisement,
+                // locking the user we are about to charge along with it
+                lock(tx, post, user);
+                Long count = (Long) post.getProperty(REPOSTS, null);
+                post.setProperty(REPOSTS, count == null ? countReposts(post) : count + 1);
+
             } else {
                 reposted = user.createRelationshipTo(post, reposted_on);
                 reposted.setProperty(TIME, dateTime);
+
+                // Keep count of the reposts on the post as well, locking the user we are about to charge along with it
+                lock(tx, post, user);
+                Long count = (Long) post.getProperty(REPOSTS, null);
+                post.setProperty(REPOSTS, count == null ? countRegularReposts(post) : count + 1);
             }
 
-            results = post.getAllProperties();
+            ActiveDays.add(user, REPOSTED_ON, dateTime);
+
+            results = getPostAttributes(post);
             results.put(LIKES, (long)post.getDegree(RelationshipTypes.LIKES));
             results.put(REPOSTS, getRepostedCount(post));
             results.put(LIKED, userLikesPost(user, post));
             results.put(REPOSTED, true);
 
-            Node author = getAuthor(post);
+            Node author = getAuthor(tx, post);
             results.put(USERNAME, author.getProperty(USERNAME));
             results.put(NAME, author.getProperty(NAME));
             results.put(HASH, author.getProperty(HASH));
 
-            // Lock the users so nobody else can touch them,
-            // the lock will be released at the end of the transaction
-            tx.acquireWriteLock(user);
-            tx.acquireWriteLock(author);
+            // Lock the user so nobody else can touch them, the lock will be released at the end
+            // of the transaction. The author is paid through the ledger, so we don't wait on them.
+            lock(tx, user);
+
+            // Anything they are owed can be spent
+            settle(tx, user);
 
             Long silver = (Long)user.getProperty(SILVER);
             Long gold = (Long)user.getProperty(GOLD);
@@ -332,12 +496,136 @@ public class Posts {
                 return Stream.of(INSUFFICIENT_FUNDS);
             }
 
-            payUser(results, user, reposted, author, silver, gold);
+            payUser(tx, results, user, reposted, author, silver, gold);
             tx.commit();
         }
         return Stream.of(new MapResult(results));
     }
 
+    @Procedure(name = "me.tucu.posts.recount", mode = Mode.WRITE)
+    @Description("CALL me.tucu.posts.recount(post_id)")
+    public Stream<MapResult> recountReposts(@Name(value = "post_id", defaultValue = "-1") Long post_id) {
+        ArrayList<Map<String, Object>> results = new ArrayList<>();
+        try (Transaction tx = db.beginTx()) {
+            LinkedHashSet<Node> posts = new LinkedHashSet<>();
+
+            if (post_id == -1) {
+                // Every advertisement, found from the products they promote
+                try (ResourceIterator<Node> products = tx.findNodes(Labels.Product)) {
+                    while (products.hasNext()) {
+                        Node product = products.next();
+                        for (Relationship r1 : product.getRelationships(Direction.INCOMING, RelationshipTypes.PROMOTES)) {
+                            posts.add(r1.getStartNode());
+                        }
+                    }
+                }
+            } else {
+                Node post;
+                try {
+                    post = tx.getNodeById(post_id);
+                } catch (Exception exception) {
+                    return Stream.of(POST_NOT_FOUND);
+                }
+
+                if (!post.hasLabel(Labels.Post)) {
+                    return Stream.of(POST_NOT_FOUND);
+                }
+
+                post = getOriginalPost(tx, post);
+                if (!post.hasRelationship(Direction.OUTGOING, RelationshipTypes.PROMOTES)) {
+                    return Stream.of(POST_NOT_AN_ADVERTISEMENT);
+                }
+                posts.add(post);
+            }
+
+            for (Node post : posts) {
+                tx.acquireWriteLock(post);
+                long count = countReposts(post);
+                post.setProperty(REPOSTS, count);
+                results.add(Map.of(POST_ID, post.getId(), REPOSTS, count));
+            }
+            tx.commit();
+        }
+        return results.stream().map(MapResult::new);
+    }
+
+    @Procedure(name = "me.tucu.posts.backfill", mode = Mode.WRITE)
+    @Description("CALL me.tucu.posts.backfill(batch_size)")
+    public Stream<MapResult> backfill(@Name(value = "batch_size", defaultValue = "10000") Long batchSize) {
+        long size = Math.max(1, abs(batchSize));
+
+        // Find the posts written before they kept their author,
+        // and the conversations replied to before their replies were kept on them by day
+        LongArrayList missing = new LongArrayList();
+        LongArrayList conversations = new LongArrayList();
+        try (Transaction tx = db.beginTx()) {
+            try (ResourceIterator<Node> posts = tx.findNodes(Labels.Post)) {
+                while (posts.hasNext()) {
+                    Node post = posts.next();
+                    // Reposts of advertisements have no status and nobody posted them
+                    if (post.hasProperty(STATUS) && !post.hasProperty(AUTHOR_ID)) {
+                        missing.add(post.getId());
+                    }
+                    if (!post.hasProperty(REPLIED_DAYS) && post.hasRelationship(Direction.INCOMING, RelationshipTypes.REPLIED_TO)
+                            && !post.hasRelationship(Direction.OUTGOING, RelationshipTypes.REPLIED_TO)) {
+                        conversations.add(post.getId());
+                    }
+                }
+            }
+        }
+
+        // Then write them in batches so no single transaction gets too big
+        long updated = 0;
+        for (int start = 0; start < missing.size(); start += size) {
+            try (Transaction tx = db.beginTx()) {
+                for (int i = start; i < Math.min(start + size, missing.size()); i++) {
+                    Node post = tx.getNodeById(missing.get(i));
+                    Node author = findAuthor(post);
+                    if (author != null && !post.hasProperty(AUTHOR_ID)) {
+                        post.setProperty(AUTHOR_ID, author.getId());
+                        updated++;
+                    }
+                }
+                tx.commit();
+            }
+        }
+
+        // A conversation is kept by day all at once, so a batch ends after the conversation that fills it
+        long started = 0;
+        for (int next = 0; next < conversations.size(); ) {
+            int start = next;
+            long[] batch = retry(() -> startConversations(conversations, start, size));
+            started += batch[0];
+            next = (int) batch[1];
+        }
+        return Stream.of(new MapResult(Map.of(POSTS, updated, CONVERSATIONS, started)));
+    }
+
+    // Keeps the conversations from start on by day in one transaction, until batch_size replies were kept.
+    // Returns how many conversations were kept and where the next batch starts.
+    private long[] startConversations(LongArrayList conversations, int start, long size) {
+        long started = 0;
+        long replies = 0;
+        int i = start;
+        try (Transaction tx = db.beginTx()) {
+            while (i < conversations.size() && replies < size) {
+                Node conversation;
+                try {
+                    conversation = tx.getNodeById(conversations.get(i++));
+                } catch (NotFoundException exception) {
+                    continue;
+                }
+                long kept = startConversation(tx, conversation);
+                if (kept > 0) {
+                    started++;
+                    replies += kept;
+                }
+            }
+            tx.commit();
+        }
+        return new long[]{started, i};
+    }
+
     private static boolean purchasedProduct(Node user, Node product) {
         for (Relationship bought : user.getRelationships(Direction.OUTGOING, RelationshipTypes.PURCHASED)) {
             if (bought.getEndNode().equals(product)) {
@@ -383,11 +671,10 @@ public class Posts {
 
         // If the post has lots of relationships, start from now and go backwards
         // until the post creation date checking it or the user for a repost relationship
-        ZonedDateTime now = ZonedDateTime.now();
-        ZonedDateTime time = ((ZonedDateTime)post.getProperty(TIME)).truncatedTo(ChronoUnit.DAYS);
-        while(now.isAfter(time)) {
-            RelationshipType repostedOn = RelationshipType.withName(REPOSTED_ON +
-                    now.format(dateFormatter));
+        long day = getEpochDay(ZonedDateTime.now());
+        long earliest = getEpochDay((ZonedDateTime)post.getProperty(TIME));
+        while(day >= earliest) {
+            RelationshipType repostedOn = getType(REPOSTED_ON, day);
 
             if (user.getDegree(repostedOn, Direction.OUTGOING)
                     < post.getDegree(repostedOn, Direction.INCOMING)) {
@@ -404,42 +691,87 @@ public class Posts {
                 }
             }
             // Check the day before
-            now = now.minusDays(1);
+            day--;
         }
 
             return false;
     }
 
-    public static Node getAuthor(Node post) {
+    public static Node getAuthor(Transaction tx, Node post) {
+        // Posts know who wrote them since we started keeping it on them
+        Long author = (Long) post.getProperty(AUTHOR_ID, null);
+        if (author != null) {
+            return tx.getNodeById(author);
+        }
+        return findAuthor(post);
+    }
+
+    // Who posted the post, from the dated relationship they posted it with, or null if nobody did
+    private static Node findAuthor(Node post) {
         ZonedDateTime time = (ZonedDateTime)post.getProperty(TIME);
-        RelationshipType original = RelationshipType.withName(POSTED_ON +
-                time.format(dateFormatter));
-        return post.getSingleRelationship(original, Direction.INCOMING).getStartNode();
+        RelationshipType original = getType(POSTED_ON, time);
+        Relationship posted = post.getSingleRelationship(original, Direction.INCOMING);
+        if (posted == null) {
+            return null;
+        }
+        return posted.getStartNode();
+    }
+
+    // The properties of a post, without the ones we keep for ourselves
+    public static Map<String, Object> getPostAttributes(Node post) {
+        Map<String, Object> results = post.getAllProperties();
+        results.remove(AUTHOR_ID);
+        results.remove(ROOT_ID);
+        results.remove(PRODUCT_ID);
+        results.remove(MARKETERS);
+        results.remove(CONVERSATION_ID);
+        results.remove(REPLIED_DAYS);
+        return results;
     }
 
     public static Node getReposter(Node post) {
         ZonedDateTime time = (ZonedDateTime)post.getProperty(TIME);
-        RelationshipType original = RelationshipType.withName(REPOSTED_ON +
-                time.format(dateFormatter));
+        RelationshipType original = getType(REPOSTED_ON, time);
         return post.getSingleRelationship(original, Direction.INCOMING).getStartNode();
     }
 
     public static Long getRepostedCount(Node post) {
-        // It's a regular post
+        // The reposts are counted as they are made, for advertisements those of the whole tree
+        Long count = (Long) post.getProperty(REPOSTS, null);
+        if (count != null) {
+            return count;
+        }
+
+        // Unless it was reposted before we kept count
         if(!post.hasRelationship(RelationshipTypes.PROMOTES)) {
-            return (long) (post.getDegree(Direction.INCOMING)
-                    - 1 // for the Posted Relationship Type
-                    - post.getDegree(RelationshipTypes.LIKES)
-                    - post.getDegree(RelationshipTypes.REPLIED_TO));
+            return countRegularReposts(post);
         }
+        return countReposts(post);
+    }
 
-        // It's an advertisement
+    // Everything coming into a regular post that is not something else is a repost
+    private static long countRegularReposts(Node post) {
+        long likes = post.getDegree(RelationshipTypes.LIKES);
+        // Only liked posts can have dated likes
+        long dated = likes > 0 ? DatedConnections.getDegree(post, Direction.INCOMING) : 0;
+        // Only conversations have replies kept by day
+        long replies = post.hasProperty(REPLIED_DAYS) ? getRepliesDegree(post) : 0;
+        return post.getDegree(Direction.INCOMING)
+                - 1 // for the Posted Relationship Type
+                - likes
+                - dated
+                - replies
+                - post.getDegree(RelationshipTypes.REPLIED_TO);
+    }
+
+    // Walk the tree of reposts of an advertisement
+    private static long countReposts(Node post) {
         long count = 0;
-        ArrayList<Node> posts = new ArrayList<>();
+        ArrayDeque<Node> posts = new ArrayDeque<>();
         posts.add(post);
 
         while (!posts.isEmpty()) {
-            Node node = posts.remove(0);
+            Node node = posts.poll();
             for (Relationship rel : node.getRelationships(Direction.INCOMING, RelationshipTypes.REPOSTED)) {
                 count++;
                 posts.add(rel.getStartNode());
@@ -449,18 +781,157 @@ public class Posts {
         return count;
     }
 
-    public static Node getOriginalPost(Node post) {
+    public static Node getOriginalPost(Transaction tx, Node post) {
+        // Reposts of advertisements know the post they came from
+        Long root = (Long) post.getProperty(ROOT_ID, null);
+        if (root != null) {
+            return tx.getNodeById(root);
+        }
+
         while(post.hasRelationship(Direction.OUTGOING, RelationshipTypes.REPOSTED)) {
             post = post.getSingleRelationship(RelationshipTypes.REPOSTED, Direction.OUTGOING).getEndNode();
         }
         return post;
     }
 
-    public static Node getProduct(Node post) {
-        while(post.hasRelationship(Direction.OUTGOING, RelationshipTypes.REPOSTED)) {
+    // The users who get a commission when the product is bought from this post, nearest first:
+    // whoever reposted it, whoever they reposted it from and so on up to the author of the advertisement.
+    public static long[] getMarketers(Transaction tx, Node post) {
+        LongArrayList marketers = new LongArrayList();
+        while (marketers.size() < MAX_MARKETERS) {
+            // Reposts of advertisements keep their marketers, so we only need to walk up to the first one
+            long[] kept = (long[]) post.getProperty(MARKETERS, null);
+            if (kept != null) {
+                for (int i = 0; i < kept.length && marketers.size() < MAX_MARKETERS; i++) {
+                    marketers.add(kept[i]);
+                }
+                break;
+            }
+
+            if (!post.hasRelationship(Direction.OUTGOING, RelationshipTypes.REPOSTED)) {
+                marketers.add(getAuthor(tx, post).getId());
+                break;
+            }
+            marketers.add(getReposter(post).getId());
             post = post.getSingleRelationship(RelationshipTypes.REPOSTED, Direction.OUTGOING).getEndNode();
         }
+        return marketers.toArray();
+    }
+
+    // The post that started the conversation the post is in, which may be the post itself
+    public static Node getConversation(Transaction tx, Node post) {
+        while (true) {
+            Long conversation = (Long) post.getProperty(CONVERSATION_ID, null);
+            if (conversation != null) {
+                return tx.getNodeById(conversation);
+            }
+
+            // Replies from before they knew their conversation, which can be deeper than we read,
+            // so walk all the way up or deep replies would start a conversation of their own
+            Relationship replied = post.getSingleRelationship(RelationshipTypes.REPLIED_TO, Direction.OUTGOING);
+            if (replied == null) {
+                return post;
+            }
+            post = replied.getEndNode();
+        }
+    }
+
+    // Whether the replies of the conversation are kept on it by day. Conversations replied to before we kept
+    // track of them are read by walking their replies until posts.backfill keeps them by day, which can take
+    // a while for a popular post, so a reply to one is only linked to the post it replies to until then.
+    private static boolean keepsReplies(Transaction tx, Node conversation) {
+        if (conversation.hasProperty(REPLIED_DAYS)) {
+            return true;
+        }
+
+        // Nobody replied to it yet, so this reply starts it
+        if (!conversation.hasRelationship(Direction.INCOMING, RelationshipTypes.REPLIED_TO)) {
+            conversation.addLabel(Labels.Conversation);
+            return true;
+        }
+
+        // Wait for the backfill in case it is keeping this one by day right now, or we could miss it
+        tx.acquireWriteLock(conversation);
+        return conversation.hasProperty(REPLIED_DAYS);
+    }
+
+    // Keep the replies a conversation already had on it by day, returns how many were kept
+    private static long startConversation(Transaction tx, Node conversation) {
+        // Held until the end of the transaction, so replies wait for it to be done
+        tx.acquireWriteLock(conversation);
+        if (conversation.hasProperty(REPLIED_DAYS)) {
+            return 0;
+        }
+        conversation.addLabel(Labels.Conversation);
+        long[] replies = new long[1];
+        forEachReply(conversation, (reply, depth) -> {
+            reply.setProperty(CONVERSATION_ID, conversation.getId());
+            addReply(conversation, reply, depth, (ZonedDateTime) reply.getProperty(TIME));
+            replies[0]++;
+        });
+        return replies[0];
+    }
+
+    private static void addReply(Node conversation, Node reply, long depth, ZonedDateTime time) {
+        Relationship replied_on = reply.createRelationshipTo(conversation, getType(REPLIED_ON, time));
+        replied_on.setProperty(TIME, time);
+        replied_on.setProperty(DEPTH, depth);
+
+        // Creating the relationship locked the conversation until the end of the transaction, so two replies
+        // can't both add a day and lose one of them. It also means every reply anywhere in the thread waits
+        // on the ones before it, which is the price of reading a thread by day from the conversation.
+        if (!ActiveDays.has(conversation, REPLIED_ON, time)) {
+            ActiveDays.add(conversation, REPLIED_ON, time);
+        }
+    }
+
+    // How many replies are kept on the conversation by day
+    private static long getRepliesDegree(Node conversation) {
+        long degree = 0;
+        for (RelationshipType type : conversation.getRelationshipTypes()) {
+            if (type.name().startsWith(REPLIED_ON)) {
+                degree += conversation.getDegree(type, Direction.INCOMING);
+            }
+        }
+        return degree;
+    }
+
+    // How many replies down from the conversation the post is. Replies deeper than we looked for when
+    // the conversation started were never added to it, so neither are the replies to them.
+    private static long getDepth(Node conversation, Node post) {
+        if (post.equals(conversation)) {
+            return 0;
+        }
+        Relationship replied_on = post.getSingleRelationship(getType(REPLIED_ON,
+                (ZonedDateTime) post.getProperty(TIME)), Direction.OUTGOING);
+        return replied_on == null ? MAX_DEPTH : (long) replied_on.getProperty(DEPTH);
+    }
+
+    // Walk the replies to a post a level at a time, down to the deepest level we read
+    private static void forEachReply(Node post, ObjLongConsumer<Node> consumer) {
+        ArrayList<Node> level = new ArrayList<>();
+        level.add(post);
+        for (int depth = 1; depth <= MAX_DEPTH && !level.isEmpty(); depth++) {
+            ArrayList<Node> next = new ArrayList<>();
+            for (Node node : level) {
+                for (Relationship r1 : node.getRelationships(Direction.INCOMING, RelationshipTypes.REPLIED_TO)) {
+                    Node reply = r1.getStartNode();
+                    consumer.accept(reply, depth);
+                    next.add(reply);
+                }
+            }
+            level = next;
+        }
+    }
+
+    public static Node getProduct(Transaction tx, Node post) {
+        // Reposts of advertisements know the product they promote
+        Long product = (Long) post.getProperty(PRODUCT_ID, null);
+        if (product != null) {
+            return tx.getNodeById(product);
+        }
 
+        post = getOriginalPost(tx, post);
         return post.getSingleRelationship(RelationshipTypes.PROMOTES, Direction.OUTGOING).getEndNode();
     }
 
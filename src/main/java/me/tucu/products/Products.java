@@ -12,15 +12,20 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Stream;
 
 import static me.tucu.Exceptions.INSUFFICIENT_FUNDS;
+import static me.tucu.ledger.Ledger.getRecipient;
+import static me.tucu.ledger.Ledger.settle;
 import static me.tucu.posts.PostExceptions.POST_NOT_FOUND;
 import static me.tucu.posts.Posts.*;
 import static me.tucu.schema.DatedRelationshipTypes.PURCHASED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
 import static me.tucu.schema.Properties.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
-import static me.tucu.utils.Time.dateFormatter;
+import static me.tucu.utils.Locks.lock;
+import static me.tucu.utils.Locks.retry;
 
 public class Products {
     // This field declares that we need a GraphDatabaseService
@@ -50,6 +55,10 @@ public class Products {
     @Description("CALL me.tucu.products.purchase(username, limit, since, username2)")
     public Stream<MapResult> purchaseProduct(@Name(value = "username", defaultValue = "") String username,
                                             @Name(value = "post_id", defaultValue = "-1") Long post_id) {
+        return retry(() -> purchase(username, post_id));
+    }
+
+    private Stream<MapResult> purchase(String username, Long post_id) {
         Map<String, Object> results = null;
         ZonedDateTime dateTime = ZonedDateTime.now();
 
@@ -69,13 +78,12 @@ public class Products {
                 return Stream.of(POST_NOT_FOUND);
             }
 
-            Node product = getProduct(post);
+            Node product = getProduct(tx, post);
             results = product.getAllProperties();
             Long price = (Long) results.get(PRICE);
             results.put(TIME, dateTime);
 
-            RelationshipType purchased_on = RelationshipType.withName(PURCHASED_ON +
-                    dateTime.format(dateFormatter));
+            RelationshipType purchased_on = getType(PURCHASED_ON, dateTime);
 
             Relationship purchased = user.createRelationshipTo(post, purchased_on);
             purchased.setProperty(TIME, dateTime);
@@ -95,12 +103,10 @@ public class Products {
             List<Node> chain = new ArrayList<>();
             List<Long> commissions = new ArrayList<>();
 
-            while (post.hasRelationship(Direction.OUTGOING, RelationshipTypes.REPOSTED)) {
-                chain.add(getReposter(post));
-                post = post.getSingleRelationship(RelationshipTypes.REPOSTED, Direction.OUTGOING).getEndNode();
+            // Marketers that have since been deleted keep their place in the chain, but nobody is paid for it
+            for (long marketer : getMarketers(tx, post)) {
+                chain.add(getRecipient(tx, marketer));
             }
-            chain.add(getAuthor(post));
-            chain = chain.subList(0, Math.min(chain.size(), 4));
 
             for (Double split : splits.get(chain.size())){
                 commissions.add(((Double)Math.floor(price * split)).longValue());
@@ -108,11 +114,14 @@ public class Products {
 
             // Lock the users so nobody else can touch them,
             // the lock will be released at the end of the transaction
-            tx.acquireWriteLock(user);
-            tx.acquireWriteLock(seller);
-            for (Node marketer : chain) {
-                tx.acquireWriteLock(marketer);
-            }
+            ArrayList<Node> locked = new ArrayList<>(chain);
+            locked.removeIf(Objects::isNull);
+            locked.add(user);
+            locked.add(seller);
+            lock(tx, locked.toArray(new Node[0]));
+
+            // Anything they are owed can be spent
+            settle(tx, user);
 
             Long userGold = (Long)user.getProperty(GOLD);
             if (userGold < price) {
@@ -129,6 +138,9 @@ public class Products {
 
             for(int counter = 0; counter < chain.size(); counter++){
                 Node marketer = chain.get(counter);
+                if (marketer == null) {
+                    continue;
+                }
                 Long marketerGold = (Long)marketer.getProperty(GOLD);
                 marketerGold += commissions.get(counter);
                 marketer.setProperty(GOLD, marketerGold);
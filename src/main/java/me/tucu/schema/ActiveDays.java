@@ -0,0 +1,201 @@
+package me.tucu.schema;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+
+import static me.tucu.schema.DatedRelationshipTypes.FOLLOWED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.LIKED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.MENTIONED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.POSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.REPLIED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.REPOSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.TAGGED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.Properties.ACTIVE_DAYS;
+import static me.tucu.schema.Properties.CONNECTED_DAYS;
+import static me.tucu.schema.Properties.REPLIED_DAYS;
+import static me.tucu.utils.Time.dateFormatter;
+
+// The days a user or tag has dated relationships on, so walking back through them can skip the empty days.
+// Stored in a single sorted long[] property, each day as its epoch day times 4 plus the index of its type.
+// The days of follows and likes came later, and are kept the same way in a property of their own
+// so the days above did not have to be written again. So are the days of the replies to a conversation.
+public final class ActiveDays {
+
+    private static final String[] TYPES = {POSTED_ON, REPOSTED_ON, MENTIONED_ON, TAGGED_ON};
+    private static final String[] CONNECTED_TYPES = {FOLLOWED_ON, LIKED_ON};
+    private static final String[] REPLY_TYPES = {REPLIED_ON};
+
+    // Returned once there are no more active days, which is before anything was created
+    public static final long NONE = Long.MIN_VALUE;
+
+    // Returned once there are no more active days after, which is after anything was created
+    public static final long LAST = Long.MAX_VALUE;
+
+    private static final ActiveDays EVERY_DAY = new ActiveDays(null);
+
+    // The active days we are walking, newest last, or null to walk every day
+    private final long[] days;
+
+    private ActiveDays(long[] days) {
+        this.days = days;
+    }
+
+    // The active days of the node for any of these dated relationship types, which are kept in the same property
+    public static ActiveDays of(Node node, String... types) {
+        String[] kept = getTypes(types[0]);
+        long[] values = (long[]) node.getProperty(getProperty(kept), null);
+        if (values == null) {
+            // Nodes that were never written to since we started keeping their days
+            return EVERY_DAY;
+        }
+
+        int mask = 0;
+        for (String type : types) {
+            mask |= 1 << getIndex(kept, type);
+        }
+
+        long[] days = new long[values.length];
+        int count = 0;
+        for (long value : values) {
+            long day = Math.floorDiv(value, kept.length);
+            if ((mask & (1 << Math.floorMod(value, kept.length))) != 0 && (count == 0 || days[count - 1] != day)) {
+                days[count++] = day;
+            }
+        }
+        return new ActiveDays(Arrays.copyOf(days, count));
+    }
+
+    // The most recent active epoch day before this one, or NONE
+    public long before(long day) {
+        if (days == null) {
+            return day - 1;
+        }
+
+        int position = Arrays.binarySearch(days, day);
+        // Either way this is where the day is or would be, and we want the one before it
+        position = (position < 0 ? -position - 1 : position) - 1;
+        if (position < 0) {
+            return NONE;
+        }
+        return days[position];
+    }
+
+    // The earliest active epoch day after this one, or LAST
+    public long after(long day) {
+        if (days == null) {
+            return day + 1;
+        }
+
+        int position = Arrays.binarySearch(days, day);
+        position = position < 0 ? -position - 1 : position + 1;
+        if (position == days.length) {
+            return LAST;
+        }
+        return days[position];
+    }
+
+    // The most recent active epoch day of the node for any of these dated relationship types, or NONE.
+    // Nodes that were never written to since we started keeping their days have their relationships looked at.
+    public static long latest(Node node, String... types) {
+        String[] kept = getTypes(types[0]);
+        long[] values = (long[]) node.getProperty(getProperty(kept), null);
+        if (values == null) {
+            values = getActiveDays(node, kept);
+        }
+
+        int mask = 0;
+        for (String type : types) {
+            mask |= 1 << getIndex(kept, type);
+        }
+        for (int i = values.length - 1; i >= 0; i--) {
+            if ((mask & (1 << Math.floorMod(values[i], kept.length))) != 0) {
+                return Math.floorDiv(values[i], kept.length);
+            }
+        }
+        return NONE;
+    }
+
+    // Whether the day of a dated relationship is kept already, so adding it would not change anything
+    public static boolean has(Node node, String type, ZonedDateTime dateTime) {
+        String[] kept = getTypes(type);
+        long[] values = (long[]) node.getProperty(getProperty(kept), null);
+        return values != null && Arrays.binarySearch(values, getEpochDay(dateTime) * kept.length + getIndex(kept, type)) >= 0;
+    }
+
+    // Keep track of a dated relationship added to the node
+    public static void add(Node node, String type, ZonedDateTime dateTime) {
+        String[] kept = getTypes(type);
+        long value = getEpochDay(dateTime) * kept.length + getIndex(kept, type);
+        long[] values = (long[]) node.getProperty(getProperty(kept), null);
+        if (values == null) {
+            // The relationship was usually created already, so the day is in there, but the days still have to be kept
+            values = getActiveDays(node, kept);
+            int position = Arrays.binarySearch(values, value);
+            if (position >= 0) {
+                node.setProperty(getProperty(kept), values);
+                return;
+            }
+        }
+
+        int position = Arrays.binarySearch(values, value);
+        if (position >= 0) {
+            return;
+        }
+        position = -position - 1;
+
+        long[] added = new long[values.length + 1];
+        System.arraycopy(values, 0, added, 0, position);
+        added[position] = value;
+        System.arraycopy(values, position, added, position + 1, values.length - position);
+        node.setProperty(getProperty(kept), added);
+    }
+
+    // The days of the relationships the node had before we kept track of them
+    private static long[] getActiveDays(Node node, String[] kept) {
+        long[] values = new long[0];
+        int count = 0;
+        for (RelationshipType relationshipType : node.getRelationshipTypes()) {
+            String name = relationshipType.name();
+            for (int index = 0; index < kept.length; index++) {
+                if (name.startsWith(kept[index])) {
+                    long day = LocalDate.parse(name.substring(kept[index].length()), dateFormatter).toEpochDay();
+                    if (count == values.length) {
+                        values = Arrays.copyOf(values, Math.max(16, count * 2));
+                    }
+                    values[count++] = day * kept.length + index;
+                }
+            }
+        }
+        values = Arrays.copyOf(values, count);
+        Arrays.sort(values);
+        return values;
+    }
+
+    private static String[] getTypes(String type) {
+        if (Arrays.asList(CONNECTED_TYPES).contains(type)) {
+            return CONNECTED_TYPES;
+        }
+        return Arrays.asList(REPLY_TYPES).contains(type) ? REPLY_TYPES : TYPES;
+    }
+
+    private static String getProperty(String[] kept) {
+        if (kept == CONNECTED_TYPES) {
+            return CONNECTED_DAYS;
+        }
+        return kept == REPLY_TYPES ? REPLIED_DAYS : ACTIVE_DAYS;
+    }
+
+    private static int getIndex(String[] kept, String type) {
+        for (int index = 0; index < kept.length; index++) {
+            if (kept[index].equals(type)) {
+                return index;
+            }
+        }
+        throw new IllegalArgumentException("Not a dated relationship type: " + type);
+    }
+}
@@ -0,0 +1,90 @@
+package me.tucu.schema;
+
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.time.ZonedDateTime;
+
+import static me.tucu.schema.DatedRelationshipTypes.FOLLOWED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.LIKED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
+import static me.tucu.schema.Properties.TIME;
+
+// Follows and likes written a second time as a relationship of their day, like FOLLOWED_ON_2020_05_01
+// and LIKED_ON_2020_05_01, so the newest followers or likes of a user can be read a day at a time
+// instead of walking every one of them. FOLLOWS and LIKES stay as they are for everything else.
+// Turned on in two steps by adding one of these lines to "neo4j.conf":
+//   -Dme.tucu.relationships.dated=write to write them next to every new follow and like,
+//      then CALL me.tucu.schema.dateRelationships() for the ones from before
+//   -Dme.tucu.relationships.dated=read to also read the pages of followers, following and likes from them
+public final class DatedConnections {
+
+    private DatedConnections() {
+        throw new IllegalAccessError("Utility class");
+    }
+
+    public static final String SETTING = "me.tucu.relationships.dated";
+
+    public static boolean isWritten() {
+        String dated = System.getProperty(SETTING, "");
+        return dated.equals("write") || dated.equals("read");
+    }
+
+    public static boolean isRead() {
+        return System.getProperty(SETTING, "").equals("read");
+    }
+
+    // Writes the dated relationship of a new FOLLOWS or LIKES one, if they are turned on
+    public static void add(Relationship relationship, String type) {
+        if (isWritten()) {
+            create(relationship, type);
+        }
+    }
+
+    public static void create(Relationship relationship, String type) {
+        ZonedDateTime time = (ZonedDateTime) relationship.getProperty(TIME);
+        Node start = relationship.getStartNode();
+        Node end = relationship.getEndNode();
+        Relationship dated = start.createRelationshipTo(end, getType(type, time));
+        dated.setProperty(TIME, time);
+        ActiveDays.add(start, type, time);
+        // Only users page through who followed them, nobody pages through who liked a post
+        if (type.equals(FOLLOWED_ON)) {
+            ActiveDays.add(end, type, time);
+        }
+    }
+
+    // Deletes the dated relationship of a FOLLOWS or LIKES one about to be deleted, if it has one.
+    // This is done even when they are turned off, since they may have been on before.
+    public static void remove(Relationship relationship, String type) {
+        Relationship dated = get(relationship, type);
+        if (dated != null) {
+            dated.delete();
+        }
+    }
+
+    // How many dated follows and likes the node has in the direction, so they are not counted as something else
+    public static long getDegree(Node node, Direction direction) {
+        long degree = 0;
+        for (RelationshipType type : node.getRelationshipTypes()) {
+            if (type.name().startsWith(FOLLOWED_ON) || type.name().startsWith(LIKED_ON)) {
+                degree += node.getDegree(type, direction);
+            }
+        }
+        return degree;
+    }
+
+    // The dated relationship of a FOLLOWS or LIKES one, or null if it doesn't have one yet
+    public static Relationship get(Relationship relationship, String type) {
+        RelationshipType dated = getType(type, (ZonedDateTime) relationship.getProperty(TIME));
+        Node end = relationship.getEndNode();
+        for (Relationship r1 : relationship.getStartNode().getRelationships(Direction.OUTGOING, dated)) {
+            if (r1.getEndNode().equals(end)) {
+                return r1;
+            }
+        }
+        return null;
+    }
+}
@@ -1,14 +1,102 @@
 package me.tucu.schema;
 
+import org.neo4j.graphdb.RelationshipType;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import static me.tucu.utils.Time.dateFormatter;
+import static me.tucu.utils.Time.utc;
+
 public final class DatedRelationshipTypes {
 
     private DatedRelationshipTypes() {
         throw new IllegalAccessError("Utility class");
     }
 
+    public static final String FOLLOWED_ON = "FOLLOWED_ON_";
+    public static final String LIKED_ON = "LIKED_ON_";
     public static final String MENTIONED_ON = "MENTIONED_ON_";
     public static final String POSTED_ON = "POSTED_ON_";
     public static final String PURCHASED_ON = "PURCHASED_ON";
+    public static final String REPLIED_ON = "REPLIED_ON_";
     public static final String REPOSTED_ON = "REPOSTED_ON_";
     public static final String TAGGED_ON = "TAGGED_ON_";
+
+    private static final String[] TYPES = {FOLLOWED_ON, LIKED_ON, MENTIONED_ON, POSTED_ON, PURCHASED_ON, REPLIED_ON, REPOSTED_ON, TAGGED_ON};
+
+    private static final long SECONDS_PER_DAY = 24 * 60 * 60;
+
+    // Types are kept for a hundred years from this day on, anything else is rare enough to create when asked for
+    private static final long FIRST_DAY = LocalDate.of(2020, 1, 1).toEpochDay();
+    private static final int DAYS = 100 * 366;
+
+    // The types of each of the dated relationship types above, by epoch day since the first day.
+    // Arrays are copied to add days, so they can be read without locking.
+    private static final AtomicReferenceArray<RelationshipType[]> registry =
+            new AtomicReferenceArray<>(TYPES.length);
+
+    static {
+        for (int index = 0; index < TYPES.length; index++) {
+            registry.set(index, new RelationshipType[0]);
+        }
+    }
+
+    // The dated relationship type of the day, for example POSTED_ON_2020_04_01
+    public static RelationshipType getType(String type, long day) {
+        int index = getIndex(type);
+        long offset = day - FIRST_DAY;
+        if (offset < 0 || offset >= DAYS) {
+            return RelationshipType.withName(type + LocalDate.ofEpochDay(day).format(dateFormatter));
+        }
+
+        RelationshipType[] types = registry.get(index);
+        if (offset < types.length) {
+            return types[(int) offset];
+        }
+        return register(index, (int) offset);
+    }
+
+    public static RelationshipType getType(String type, ZonedDateTime dateTime) {
+        return getType(type, getEpochDay(dateTime));
+    }
+
+    // The number of days since 1970-01-01 in UTC, which is how the dated relationship types split days
+    public static long getEpochDay(ZonedDateTime dateTime) {
+        return Math.floorDiv(dateTime.toEpochSecond(), SECONDS_PER_DAY);
+    }
+
+    // Midnight in UTC at the start of the day
+    public static ZonedDateTime getStartOfDay(long day) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(day * SECONDS_PER_DAY), utc);
+    }
+
+    // Add the missing days up to this one, and a year after it so we rarely have to do this again
+    private static synchronized RelationshipType register(int index, int offset) {
+        RelationshipType[] types = registry.get(index);
+        if (offset < types.length) {
+            return types[offset];
+        }
+
+        int length = Math.min(offset + 366, DAYS);
+        RelationshipType[] added = Arrays.copyOf(types, length);
+        for (int i = types.length; i < length; i++) {
+            added[i] = RelationshipType.withName(TYPES[index] +
+                    LocalDate.ofEpochDay(FIRST_DAY + i).format(dateFormatter));
+        }
+        registry.set(index, added);
+        return added[offset];
+    }
+
+    private static int getIndex(String type) {
+        for (int index = 0; index < TYPES.length; index++) {
+            if (TYPES[index].equals(type)) {
+                return index;
+            }
+        }
+        throw new IllegalArgumentException("Not a dated relationship type: " + type);
+    }
 }
@@ -4,8 +4,11 @@ import org.neo4j.graphdb.Label;
 
 public enum Labels implements Label {
     Conversation,
+    Credit,
+    Inbox,
     Post,
     Product,
+    Schema,
     User,
     Tag
 }
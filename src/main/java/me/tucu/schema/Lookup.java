@@ -0,0 +1,78 @@
+package me.tucu.schema;
+
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.schema.IndexCreator;
+import org.neo4j.graphdb.schema.IndexDefinition;
+import org.neo4j.graphdb.schema.IndexType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// A way the procedures find nodes by a label and properties, and the index or constraint that makes it fast.
+// Since is the version of the schema that added it.
+public class Lookup {
+
+    private final Label label;
+    private final List<String> keys;
+    private final boolean unique;
+    private final long since;
+
+    private Lookup(Label label, boolean unique, long since, String... keys) {
+        this.label = label;
+        this.keys = List.of(keys);
+        this.unique = unique;
+        this.since = since;
+    }
+
+    public static Lookup index(Label label, long since, String... keys) {
+        return new Lookup(label, false, since, keys);
+    }
+
+    public static Lookup constraint(Label label, long since, String... keys) {
+        return new Lookup(label, true, since, keys);
+    }
+
+    public boolean isUnique() {
+        return unique;
+    }
+
+    public long getSince() {
+        return since;
+    }
+
+    // The index behind the lookup, null if there isn't one.
+    // A unique constraint on the same properties is as good as an index.
+    public IndexDefinition getIndex(org.neo4j.graphdb.schema.Schema schema) {
+        for (IndexDefinition index : schema.getIndexes(label)) {
+            if (index.getIndexType() != IndexType.BTREE || index.isMultiTokenIndex()) {
+                continue;
+            }
+            if (unique && !index.isConstraintIndex()) {
+                continue;
+            }
+            ArrayList<String> indexed = new ArrayList<>();
+            index.getPropertyKeys().forEach(indexed::add);
+            if (indexed.equals(keys)) {
+                return index;
+            }
+        }
+        return null;
+    }
+
+    public void create(org.neo4j.graphdb.schema.Schema schema) {
+        if (unique) {
+            schema.constraintFor(label).assertPropertyIsUnique(keys.get(0)).create();
+        } else {
+            IndexCreator creator = schema.indexFor(label);
+            for (String key : keys) {
+                creator = creator.on(key);
+            }
+            creator.create();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "(:" + label.name() + " {" + String.join(", ", keys) + "})";
+    }
+}
@@ -5,34 +5,65 @@ public final class Properties {
     private Properties() {
         throw new IllegalAccessError("Utility class");
     }
+    public static final String ACTIVE_DAYS = "active_days";
+    public static final String AUTHOR_ID = "author_id";
+    public static final String CHUNK = "chunk";
+    public static final String CONNECTED_DAYS = "connected_days";
+    public static final String CONVERSATION_ID = "conversation_id";
+    public static final String CONVERSATIONS = "conversations";
+    public static final String CREDITS = "credits";
+    public static final String CURSOR = "cursor";
     public static final String DAYS = "days";
+    public static final String DEPTH = "depth";
     public static final String EMAIL = "email";
+    public static final String FOLLOWERS = "followers";
     public static final String FOLLOWERS_YOU_KNOW = "followers_you_know";
     public static final String FOLLOWERS_YOU_KNOW_COUNT = "followers_you_know_count";
+    public static final String FOLLOWS = "follows";
     public static final String FOLLOWS_ME = "follows_me";
+    public static final String FOLLOWING = "following";
     public static final String GOLD = "gold";
     public static final String HASH = "hash";
     public static final String ID = "id";
+    public static final String IN_REPLY_TO = "in_reply_to";
     public static final String I_FOLLOW = "i_follow";
     public static final String LABEL = "label";
     public static final String LIKES = "likes";
     public static final String LIKED = "liked";
     public static final String LIKED_TIME = "liked_time";
+    public static final String LOOKUP = "lookup";
     public static final String PASSWORD = "password";
     public static final String POST = "post";
     public static final String POST_ID = "post_id";
+    public static final String POSTS = "posts";
+    public static final String POSTINGS = "postings";
+    public static final String POSTING_TIMES = "posting_times";
     public static final String PRICE = "price";
     public static final String PRODUCT = "product";
+    public static final String PRODUCT_ID = "product_id";
+    public static final String PUSHED = "pushed";
+    public static final String UNPUSHED = "unpushed";
+    public static final String RECIPIENT_ID = "recipient_id";
+    public static final String REPLIED_DAYS = "replied_days";
+    public static final String RETRIES = "retries";
+    public static final String MARKETERS = "marketers";
     public static final String NAME = "name";
     public static final String USER = "user";
     public static final String USERNAME = "username";
+    public static final String USERS = "users";
+    public static final String VERSION = "version";
     public static final String REPOSTS = "reposts";
     public static final String REPOSTED = "reposted";
     public static final String REPOSTED_TIME = "reposted_time";
     public static final String REPOSTER_NAME = "reposter_name";
     public static final String REPOSTER_USERNAME = "reposter_username";
+    public static final String ROOT_ID = "root_id";
     public static final String SILVER = "silver";
+    public static final String SINCE = "since";
+    public static final String STATE = "state";
     public static final String STATUS = "status";
+    public static final String STRIPE = "stripe";
     public static final String TERM = "term";
     public static final String TIME = "time";
+    public static final String TYPE = "type";
 }
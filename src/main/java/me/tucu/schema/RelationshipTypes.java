@@ -4,6 +4,7 @@ import org.neo4j.graphdb.RelationshipType;
 
 public enum RelationshipTypes implements RelationshipType {
     FOLLOWS,
+    INBOX,
     LIKES,
     MUTES,
     PROMOTES,
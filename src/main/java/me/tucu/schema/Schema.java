@@ -1,18 +1,27 @@
 package me.tucu.schema;
 
+import me.tucu.results.MapResult;
 import me.tucu.results.StringResult;
-import org.neo4j.graphdb.GraphDatabaseService;
-import org.neo4j.graphdb.Transaction;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.*;
+import org.neo4j.graphdb.schema.IndexDefinition;
 import org.neo4j.logging.Log;
-import org.neo4j.procedure.Context;
-import org.neo4j.procedure.Description;
-import org.neo4j.procedure.Mode;
-import org.neo4j.procedure.Procedure;
+import org.neo4j.procedure.*;
 
+import java.time.ZonedDateTime;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.stream.Stream;
 
+import static java.lang.Math.abs;
+import static me.tucu.schema.DatedRelationshipTypes.FOLLOWED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.LIKED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
 import static me.tucu.schema.Properties.*;
+import static me.tucu.utils.Locks.retry;
 
 public class Schema {
 
@@ -26,56 +35,216 @@ public class Schema {
     @Context
     public Log log;
 
+    // Bump it when adding lookups, and add them with it as their since. Once all of them are created
+    // it is kept on the Schema node, so we can tell which version a database was last brought up to.
+    public static final long VERSION = 2;
+
+    // Every way the procedures find nodes by their properties. Anything calling tx.findNode
+    // or tx.findNodes on something new has to be added here, or it will scan the whole label.
+    public static final List<Lookup> LOOKUPS = List.of(
+            // We have a need to quickly find out if a user Re-advertises an Advertisement
+            Lookup.index(Labels.Post, 1, USERNAME, POST_ID),
+            // We have a need to quickly find the pending credits of a user, and a stripe of them to settle
+            Lookup.index(Labels.Credit, 1, RECIPIENT_ID),
+            Lookup.index(Labels.Credit, 1, STRIPE),
+            Lookup.constraint(Labels.Product, 1, ID),
+            Lookup.index(Labels.Product, 1, NAME),
+            Lookup.constraint(Labels.User, 1, USERNAME),
+            Lookup.constraint(Labels.Tag, 1, NAME),
+            // We have a need to quickly find out if an email is taken when users sign up
+            Lookup.index(Labels.User, 2, EMAIL)
+    );
+
     @Procedure(name = "me.tucu.schema.create", mode = Mode.SCHEMA)
     @Description("CALL me.tucu.schema.create() - create schema")
     public Stream<StringResult> create() {
         ArrayList<String> results = new ArrayList<>();
 
-        // We have a need to quickly find out if a user Re-advertises an Advertisement
-        try (Transaction tx = db.beginTx()) {
-            org.neo4j.graphdb.schema.Schema schema = tx.schema();
-            if (!schema.getIndexes(Labels.Post).iterator().hasNext()) {
-                schema.indexFor(Labels.Post).on(USERNAME).on(POST_ID).create();
-                tx.commit();
-                results.add("(:Post {username, post_id}) index created");
+        // Whatever is already there is left alone, so this can be run again after every upgrade
+        boolean complete = true;
+        for (Lookup lookup : LOOKUPS) {
+            try (Transaction tx = db.beginTx()) {
+                org.neo4j.graphdb.schema.Schema schema = tx.schema();
+                if (lookup.getIndex(schema) == null) {
+                    lookup.create(schema);
+                    tx.commit();
+                    results.add(lookup + (lookup.isUnique() ? " constraint created" : " index created"));
+                }
+            } catch (RuntimeException exception) {
+                // An index on the same properties is in the way of a constraint, or the data breaks it
+                log.error("Could not create " + lookup + ": " + exception.getMessage());
+                results.add(lookup + " could not be created: " + exception.getMessage());
+                complete = false;
             }
         }
+
+        if (complete) {
+            try (Transaction tx = db.beginTx()) {
+                Node schema = getSchema(tx);
+                if (schema == null) {
+                    schema = tx.createNode(Labels.Schema);
+                }
+                if ((long) schema.getProperty(Properties.VERSION, 0L) < VERSION) {
+                    schema.setProperty(Properties.VERSION, VERSION);
+                    schema.setProperty(TIME, ZonedDateTime.now());
+                    tx.commit();
+                    results.add("schema version " + VERSION + " applied");
+                }
+            }
+        }
+
+        return results.stream().map(StringResult::new);
+    }
+
+    @Procedure(name = "me.tucu.schema.audit", mode = Mode.READ)
+    @Description("CALL me.tucu.schema.audit() - check every lookup has an index")
+    public Stream<MapResult> audit() {
+        ArrayList<MapResult> results = new ArrayList<>();
+
         try (Transaction tx = db.beginTx()) {
+            // Lookups since a later version than the one applied were added after schema.create last finished
+            Node applied = getSchema(tx);
+            long version = applied == null ? 0L : (long) applied.getProperty(Properties.VERSION, 0L);
             org.neo4j.graphdb.schema.Schema schema = tx.schema();
-            if (!schema.getConstraints(Labels.Product).iterator().hasNext()) {
-                schema.constraintFor(Labels.Product)
-                        .assertPropertyIsUnique(ID)
-                        .create();
-
-                schema.indexFor(Labels.Product).on(NAME).create();
-                tx.commit();
-                results.add("(:Product {id}) constraint created");
-                results.add("(:Product {name}) index created");
+            for (Lookup lookup : LOOKUPS) {
+                IndexDefinition index = lookup.getIndex(schema);
+                String state = index == null ? "MISSING" : schema.getIndexState(index).name();
+                results.add(new MapResult(Map.of(LOOKUP, lookup.toString(),
+                        TYPE, lookup.isUnique() ? "constraint" : "index",
+                        SINCE, lookup.getSince(),
+                        STATE, state,
+                        Properties.VERSION, version)));
             }
         }
 
+        return results.stream();
+    }
+
+    // The node keeping the schema version that was applied, or null if schema.create never finished
+    private static Node getSchema(Transaction tx) {
+        try (ResourceIterator<Node> iterator = tx.findNodes(Labels.Schema)) {
+            return iterator.hasNext() ? iterator.next() : null;
+        }
+    }
+
+    @Procedure(name = "me.tucu.schema.dateRelationships", mode = Mode.WRITE)
+    @Description("CALL me.tucu.schema.dateRelationships(batch_size) - date the follows and likes from before")
+    public Stream<MapResult> dateRelationships(@Name(value = "batch_size", defaultValue = "1000") Long batchSize) {
+        batchSize = Math.max(1L, abs(batchSize));
+        LongArrayList ids = new LongArrayList();
         try (Transaction tx = db.beginTx()) {
-            org.neo4j.graphdb.schema.Schema schema = tx.schema();
-            if (!schema.getConstraints(Labels.User).iterator().hasNext()) {
-                schema.constraintFor(Labels.User)
-                        .assertPropertyIsUnique(USERNAME)
-                        .create();
-                tx.commit();
-                results.add("(:User {username}) constraint created");
+            try (ResourceIterator<Node> iterator = tx.findNodes(Labels.User)) {
+                iterator.forEachRemaining(user -> ids.add(user.getId()));
             }
         }
 
+        // The follows and likes of as many users as it takes to fill a batch are read first, and then dated
+        // batch size relationships per transaction. A user with millions of them is split over many, and
+        // anything already dated is skipped so this can be run again.
+        LongArrayList pending = new LongArrayList();
+        long follows = 0;
+        long likes = 0;
+        int next = 0;
+        while (next < ids.size()) {
+            try (Transaction tx = db.beginTx()) {
+                while (next < ids.size() && pending.size() < batchSize) {
+                    Node user;
+                    try {
+                        user = tx.getNodeById(ids.get(next++));
+                    } catch (NotFoundException exception) {
+                        // Deleted since we looked
+                        continue;
+                    }
+                    addRelationships(pending, user, RelationshipTypes.FOLLOWS);
+                    addRelationships(pending, user, RelationshipTypes.LIKES);
+                }
+            }
+
+            // The last few are dated once there are no users left to fill the batch
+            int start = 0;
+            while (pending.size() - start >= batchSize || (next == ids.size() && start < pending.size())) {
+                int first = start;
+                int end = (int) Math.min(pending.size(), start + batchSize);
+                LongArrayList relationships = pending;
+                long[] dated = retry(() -> dateRelationships(relationships, first, end));
+                follows += dated[0];
+                likes += dated[1];
+                start = end;
+            }
+            LongArrayList rest = new LongArrayList(pending.size() - start);
+            for (int i = start; i < pending.size(); i++) {
+                rest.add(pending.get(i));
+            }
+            pending = rest;
+        }
+
+        return Stream.of(new MapResult(Map.of(USERS, (long) ids.size(), FOLLOWS, follows, LIKES, likes)));
+    }
+
+    // The dated copies get their ids in the order of the relationships they copy, as long as Neo4j has no freed
+    // ids to hand out, so followers with the same time page in the same order from either of them
+    private static void addRelationships(LongArrayList pending, Node user, RelationshipType type) {
+        LongArrayList ids = new LongArrayList();
+        for (Relationship r1 : user.getRelationships(Direction.OUTGOING, type)) {
+            ids.add(r1.getId());
+        }
+        ids.sortThis();
+        pending.addAll(ids);
+    }
+
+    // Returns how many of these follows and likes were dated
+    private long[] dateRelationships(LongArrayList ids, int first, int end) {
         try (Transaction tx = db.beginTx()) {
-            org.neo4j.graphdb.schema.Schema schema = tx.schema();
-            if (!schema.getConstraints(Labels.Tag).iterator().hasNext()) {
-                schema.constraintFor(Labels.Tag)
-                        .assertPropertyIsUnique(NAME)
-                        .create();
-                tx.commit();
-                results.add("(:Tag {name}) constraint created");
+            ArrayList<Relationship> relationships = new ArrayList<>(end - first);
+            // The end nodes of the relationships by user and day, so each day of a user is read once
+            HashMap<Node, HashMap<RelationshipType, LongHashSet>> ends = new HashMap<>();
+            for (int i = first; i < end; i++) {
+                Relationship r1;
+                try {
+                    r1 = tx.getRelationshipById(ids.get(i));
+                } catch (NotFoundException exception) {
+                    // Deleted since we looked
+                    continue;
+                }
+                relationships.add(r1);
+                ends.computeIfAbsent(r1.getStartNode(), user -> new HashMap<>())
+                        .computeIfAbsent(getDatedType(r1), day -> new LongHashSet())
+                        .add(r1.getEndNodeId());
+            }
+
+            // Only keep the ones that are already dated, which is never more than the batch
+            for (Map.Entry<Node, HashMap<RelationshipType, LongHashSet>> user : ends.entrySet()) {
+                for (Map.Entry<RelationshipType, LongHashSet> day : user.getValue().entrySet()) {
+                    LongHashSet found = new LongHashSet();
+                    for (Relationship r2 : user.getKey().getRelationships(Direction.OUTGOING, day.getKey())) {
+                        if (day.getValue().contains(r2.getEndNodeId())) {
+                            found.add(r2.getEndNodeId());
+                        }
+                    }
+                    day.setValue(found);
+                }
             }
+
+            long follows = 0;
+            long likes = 0;
+            for (Relationship r1 : relationships) {
+                if (ends.get(r1.getStartNode()).get(getDatedType(r1)).add(r1.getEndNodeId())) {
+                    if (r1.isType(RelationshipTypes.FOLLOWS)) {
+                        DatedConnections.create(r1, FOLLOWED_ON);
+                        follows++;
+                    } else {
+                        DatedConnections.create(r1, LIKED_ON);
+                        likes++;
+                    }
+                }
+            }
+            tx.commit();
+            return new long[]{follows, likes};
         }
+    }
 
-        return results.stream().map(StringResult::new);
+    private static RelationshipType getDatedType(Relationship relationship) {
+        String dated = relationship.isType(RelationshipTypes.FOLLOWS) ? FOLLOWED_ON : LIKED_ON;
+        return getType(dated, (ZonedDateTime) relationship.getProperty(TIME));
     }
 }
@@ -1,20 +1,21 @@
 package me.tucu.search;
 
+import me.tucu.posts.PostDecorator;
 import me.tucu.results.MapResult;
 import me.tucu.schema.Labels;
-import me.tucu.schema.RelationshipTypes;
+import me.tucu.users.MutedAndFollows;
+import me.tucu.utils.Fields;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
 import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
-import static me.tucu.likes.Likes.userLikesPost;
 import static me.tucu.posts.Posts.*;
 import static me.tucu.schema.Properties.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
@@ -35,15 +36,17 @@ public class Search {
 
 
     @Procedure(name = "me.tucu.search.get", mode = Mode.READ)
-    @Description("CALL me.tucu.search.get(username, limit, since, username2)")
+    @Description("CALL me.tucu.search.get(term, type, limit, offset, username, fields)")
     public Stream<MapResult> getSearch(@Name(value = "term", defaultValue = "") String term,
                                        @Name(value = "type", defaultValue = "") String type,
                                        @Name(value = "limit", defaultValue = "25") Long limit,
                                        @Name(value = "offset", defaultValue = "0") Long offset,
-                                       @Name(value = "username", defaultValue = "") String username) {
+                                       @Name(value = "username", defaultValue = "") String username,
+                                       @Name(value = "fields", defaultValue = "[]") List<String> fields) {
         ArrayList<Map<String, Object>> results = new ArrayList<>();
         limit = abs(limit);
         offset = abs(offset);
+        Fields asked = Fields.of(fields, Fields.USER_FIELDS, Fields.PRODUCT_FIELDS, Fields.POST_FIELDS);
 
         boolean userType = true;
         boolean productType = true;
@@ -68,18 +71,21 @@ public class Search {
         try (Transaction tx = db.beginTx()) {
             // Get the User
             Node user = null;
-            HashSet<Node> muted = new HashSet<>();
-            HashSet<Node> follows = new HashSet<>();
+            MutedAndFollows mutedAndFollows = MutedAndFollows.EMPTY;
 
             if (!username.isEmpty()) {
                 user = tx.findNode(Labels.User, USERNAME, username);
                 if (user == null) {
                     return Stream.of(USER_NOT_FOUND);
                 }
-                getMutedAndFollows(user, muted, follows);
+                mutedAndFollows = getMutedAndFollows(db, user);
 
             }
 
+            PostDecorator decorator = new PostDecorator(tx, user, asked);
+            ArrayList<Node> posts = new ArrayList<>();
+            ArrayList<Map<String, Object>> postResults = new ArrayList<>();
+
             Map<String, Object> queryParameters = new HashMap<>();
             queryParameters.put(TERM, term);
             Result result = tx.execute("CALL db.index.fulltext.queryNodes('fulltext', $term) " +
@@ -91,9 +97,9 @@ public class Search {
 
                     if(node.hasLabel(Labels.User) && userType) {
                         // Ignore muted users
-                        if (!muted.contains(node)) {
-                            Map<String, Object> properties = getUserAttributes(node);
-                            properties.put(I_FOLLOW, follows.contains(node));
+                        if (!mutedAndFollows.isMuted(node)) {
+                            Map<String, Object> properties = getUserAttributes(node, asked);
+                            properties.put(I_FOLLOW, mutedAndFollows.isFollowed(node));
                             properties.put(LABEL, USER);
 
                             results.add(properties);
@@ -102,7 +108,7 @@ public class Search {
                     }
 
                     if (node.hasLabel(Labels.Product) && productType) {
-                        Map<String, Object> properties = node.getAllProperties();
+                        Map<String, Object> properties = asked.isAll() ? node.getAllProperties() : asked.getProperties(node);
                         //todo: Handle Product type
                         properties.put(LABEL, PRODUCT);
                         results.add(properties);
@@ -110,31 +116,25 @@ public class Search {
                     }
 
                     if (node.hasLabel(Labels.Post) && postType) {
-                        Node author = getAuthor(node);
+                        Node author = getAuthor(tx, node);
                         // Ignore any mentions by muted users
-                        if (!muted.contains(author)) {
-                            Map<String, Object> properties = node.getAllProperties();
-                            properties.put(USERNAME, author.getProperty(USERNAME));
-                            properties.put(NAME, author.getProperty(NAME));
-                            properties.put(HASH, author.getProperty(HASH));
-                            properties.put(LIKES, (long) node.getDegree(RelationshipTypes.LIKES));
-                            properties.put(REPOSTS, getRepostedCount(node));
-                            if (user != null) {
-                                properties.put(LIKED, userLikesPost(user, node));
-                                properties.put(REPOSTED, userRepostedPost(tx, user, node));
-                            }
+                        if (!mutedAndFollows.isMuted(author)) {
+                            Map<String, Object> properties = decorator.getProperties(node, author);
                             properties.put(LABEL, POST);
                             results.add(properties);
+                            posts.add(node);
+                            postResults.add(properties);
                             continue;
                         }
                     }
                 }
 
             }
+            decorator.putInteractions(postResults, posts);
         }
 
         results.sort(LABEL_COMPARATOR);
-        return results.stream().skip(offset).map(MapResult::new);
+        return results.stream().skip(offset).map(asked::project).map(MapResult::new);
     }
 
 }
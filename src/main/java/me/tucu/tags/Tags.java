@@ -1,30 +1,34 @@
 package me.tucu.tags;
 
+import me.tucu.posts.PostDecorator;
 import me.tucu.results.MapResult;
+import me.tucu.schema.ActiveDays;
 import me.tucu.schema.Labels;
-import me.tucu.schema.RelationshipTypes;
+import me.tucu.users.MutedAndFollows;
+import me.tucu.utils.Candidates;
+import me.tucu.utils.Candidates.Candidate;
+import me.tucu.utils.Cursor;
+import me.tucu.utils.Dictionary;
+import me.tucu.utils.Tokens;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
 
 import java.time.ZonedDateTime;
-import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
-import static java.util.Collections.reverseOrder;
-import static me.tucu.likes.Likes.userLikesPost;
+import static me.tucu.Exceptions.INVALID_CURSOR;
 import static me.tucu.posts.Posts.*;
 import static me.tucu.schema.DatedRelationshipTypes.TAGGED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
 import static me.tucu.schema.Properties.*;
 import static me.tucu.tags.TagExceptions.TAG_NOT_FOUND;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
 import static me.tucu.users.Users.getMutedAndFollows;
-import static me.tucu.utils.Time.dateFormatter;
-import static me.tucu.utils.Time.getLatestTime;
+import static me.tucu.utils.Cursor.getCursor;
 
 public class Tags {
 
@@ -38,20 +42,21 @@ public class Tags {
     @Context
     public Log log;
 
-    private static final Pattern TAGS_PATTERN = Pattern.compile("#([a-z][a-z0-9_]{2,31})");
-
 
     @Procedure(name = "me.tucu.tags.get", mode = Mode.READ)
-    @Description("CALL me.tucu.tags.get(hashtag, limit, since, username)")
+    @Description("CALL me.tucu.tags.get(hashtag, limit, since, username, cursor)")
     public Stream<MapResult> getTags(@Name(value = "hashtag", defaultValue = "") String hashtag,
                                          @Name(value = "limit", defaultValue = "25") Long limit,
                                          @Name(value = "since", defaultValue = "-1") Long since,
-                                         @Name(value = "username", defaultValue = "") String username) {
+                                         @Name(value = "username", defaultValue = "") String username,
+                                         @Name(value = "cursor", defaultValue = "") String cursor) {
         ArrayList<Map<String, Object>> results = new ArrayList<>();
         limit = abs(limit);
 
-        ZonedDateTime dateTime = getLatestTime(since);
-        ZonedDateTime now = getLatestTime(since);
+        Cursor position = getCursor(since, cursor);
+        if (position == null) {
+            return Stream.of(INVALID_CURSOR);
+        }
 
         try (Transaction tx = db.beginTx()) {
             // Get the tag
@@ -62,8 +67,7 @@ public class Tags {
 
             // Get the User
             Node user = null;
-            HashSet<Node> muted = new HashSet<>();
-            HashSet<Node> follows = new HashSet<>();
+            MutedAndFollows mutedAndFollows = MutedAndFollows.EMPTY;
 
             if (!username.isEmpty()) {
                 user = tx.findNode(Labels.User, USERNAME, username);
@@ -72,70 +76,65 @@ public class Tags {
                 }
 
                 // Hide posts by muted users
-                getMutedAndFollows(user, muted, follows);
+                mutedAndFollows = getMutedAndFollows(db, user);
             }
 
-            ZonedDateTime earliest = ((ZonedDateTime) tag.getProperty(TIME)).truncatedTo(ChronoUnit.DAYS);
+            long earliest = getEpochDay((ZonedDateTime) tag.getProperty(TIME));
+            long day = getEpochDay(position.getTime());
+            ActiveDays days = ActiveDays.of(tag, TAGGED_ON);
+            Candidates candidates = new Candidates(limit);
             int count = 0;
 
-            while (count < limit && now.isAfter(earliest)) {
-                RelationshipType tagged_on = RelationshipType.withName(TAGGED_ON +
-                        now.format(dateFormatter));
+            while (count < limit && day >= earliest) {
+                RelationshipType tagged_on = getType(TAGGED_ON, day);
 
                 for (Relationship r1 : tag.getRelationships(Direction.INCOMING, tagged_on)) {
                     Node post = r1.getStartNode();
-                    Map<String, Object> properties = post.getAllProperties();
-
                     ZonedDateTime time = (ZonedDateTime) post.getProperty(TIME);
-                    if (time.isBefore(dateTime)) {
-                        Node author = getAuthor(post);
+                    if (position.includes(time, post.getId())) {
+                        Node author = getAuthor(tx, post);
                         // Ignore any mentions by muted users
-                        if (!muted.contains(author)) {
-                            properties.put(USERNAME, author.getProperty(USERNAME));
-                            properties.put(NAME, author.getProperty(NAME));
-                            properties.put(HASH, author.getProperty(HASH));
-                            properties.put(LIKES, (long) post.getDegree(RelationshipTypes.LIKES));
-                            properties.put(REPOSTS, getRepostedCount(post));
-                            if (user != null) {
-                                properties.put(LIKED, userLikesPost(user, post));
-                                properties.put(REPOSTED, userRepostedPost(tx, user, post));
-                            }
-                            results.add(properties);
+                        if (!mutedAndFollows.isMuted(author)) {
+                            candidates.add(time, post, author);
                             count++;
                         }
                     }
                 }
-                // Check the day before
-                now = now.minusDays(1);
+                // Check the day before that had any posts
+                day = days.before(day);
             }
 
+            // Only now read everything else about the posts that made the page
+            PostDecorator decorator = new PostDecorator(tx, user);
+            ArrayList<Node> posts = new ArrayList<>();
+            for (Candidate candidate : candidates.getCandidates()) {
+                Map<String, Object> properties = decorator.getProperties(candidate.node, candidate.author);
+                properties.put(CURSOR, candidate.cursor.toString());
+                results.add(properties);
+                posts.add(candidate.node);
+            }
+            decorator.putInteractions(results, posts);
         }
-        results.sort(Comparator.comparing(m -> (ZonedDateTime) m.get(TIME), reverseOrder()));
-        return results.stream().limit(limit).map(MapResult::new);
+
+        return results.stream().map(MapResult::new);
     }
 
 
 
-    public static void createTags(Node post, Map input, ZonedDateTime dateTime, Transaction tx) {
-        Matcher mat = TAGS_PATTERN.matcher(((String)input.get(STATUS)).toLowerCase());
-        for (Relationship r1 : post.getRelationships(Direction.OUTGOING, RelationshipType.withName(TAGGED_ON +
-                dateTime.format(dateFormatter)))) {
+    public static void createTags(Node post, Tokens tokens, ZonedDateTime dateTime, Transaction tx) {
+        for (Relationship r1 : post.getRelationships(Direction.OUTGOING, getType(TAGGED_ON, dateTime))) {
             r1.delete();
         }
-        Set<Node> tagged = new HashSet<>();
-        while (mat.find()) {
-            String tag = mat.group(1);
-            Node hashtag = tx.findNode(Labels.Tag, NAME, tag);
+        for (String tag : tokens.getTags()) {
+            Node hashtag = Dictionary.getTag(tx, tag);
             if (hashtag == null) {
                 hashtag = tx.createNode(Labels.Tag);
                 hashtag.setProperty(NAME, tag);
                 hashtag.setProperty(TIME, dateTime);
+                Dictionary.putTag(hashtag, tag);
             }
-            if (!tagged.contains(hashtag)) {
-                post.createRelationshipTo(hashtag, RelationshipType.withName(TAGGED_ON +
-                        dateTime.format(dateFormatter)));
-                tagged.add(hashtag);
-            }
+            post.createRelationshipTo(hashtag, getType(TAGGED_ON, dateTime));
+            ActiveDays.add(hashtag, TAGGED_ON, dateTime);
         }
     }
 }
@@ -0,0 +1,340 @@
+package me.tucu.timeline;
+
+import me.tucu.schema.ActiveDays;
+import me.tucu.schema.Labels;
+import me.tucu.schema.RelationshipTypes;
+import org.neo4j.graphdb.*;
+
+import java.time.ZonedDateTime;
+import java.util.*;
+
+import static me.tucu.schema.DatedRelationshipTypes.POSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.REPOSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.Properties.*;
+import static me.tucu.timeline.TimelineMerger.getPostingTime;
+import static me.tucu.utils.Time.fromNanos;
+import static me.tucu.utils.Time.toNanos;
+
+// Authors with fewer followers than the threshold push their posts and reposts to the inbox of each
+// of their followers, so reading a timeline does not have to visit them at all.
+// Everyone else is still read from the users themselves and merged in with the inbox.
+// Whether an author pushes is kept on them and only changes when they post, so what was pushed
+// and what a timeline reads always agree. Each posting is kept on its author as unpushed in the transaction
+// that creates it, and the InboxQueue pushes it once it is committed. Until then timelines read it from the
+// author, so a posting the queue never got to is still read, and is pushed along with the next one of its author.
+// The postings are kept in chunks of id and time pairs, so adding one only writes the newest chunk.
+public class Inbox {
+
+    // Set with -Dme.tucu.timeline.inbox.threshold=1000 in neo4j.conf, 0 turns the push path off
+    public static final String THRESHOLD_SETTING = "me.tucu.timeline.inbox.threshold";
+
+    private static final int CHUNK_SIZE = 50;
+    private static final int CHUNKS = 10;
+
+    // The threshold the database was started with, 0 if it does not push
+    public static long getThreshold(GraphDatabaseService db) {
+        InboxQueue queue = InboxQueue.getQueue(db);
+        return queue == null ? 0 : queue.getThreshold();
+    }
+
+    // Whether the posts of the author are pushed, as decided the last time they posted
+    public static boolean isPushed(Node author) {
+        return (boolean) author.getProperty(PUSHED, false);
+    }
+
+    public static Node getInbox(Node user) {
+        Relationship r1 = user.getSingleRelationship(RelationshipTypes.INBOX, Direction.INCOMING);
+        return r1 == null ? null : r1.getStartNode();
+    }
+
+    // Decide whether what the author is about to post is pushed, before the author is locked by anything else.
+    // An author that starts pushing never pushed what they posted before, so the inboxes that started before
+    // their last post are started over. One that stops is read in full again, so nothing else has to change for them.
+    public static void decide(Transaction tx, Node author, long threshold) {
+        boolean pushed = threshold > 0 && author.getDegree(RelationshipTypes.FOLLOWS, Direction.INCOMING) < threshold;
+        if (pushed == isPushed(author)) {
+            return;
+        }
+
+        // Everything they posted is read from them again, so nothing has to wait to be pushed
+        if (!pushed) {
+            author.removeProperty(PUSHED);
+            author.removeProperty(UNPUSHED);
+            return;
+        }
+
+        // Creating the posting locks the author, so taking the followers only after that would deadlock
+        // two users that follow each other and start pushing at the same time
+        List<Node> users = lockUsers(tx, author);
+        if (isPushed(author)) {
+            return;
+        }
+        long latest = ActiveDays.latest(author, POSTED_ON, REPOSTED_ON);
+        if (latest != ActiveDays.NONE) {
+            for (Node user : users) {
+                Node inbox = getInbox(user);
+                if (inbox != null && getEpochDay((ZonedDateTime) inbox.getProperty(TIME)) <= latest) {
+                    reset(tx, user);
+                }
+            }
+        }
+        author.setProperty(PUSHED, true);
+    }
+
+    // Keep the posting on its author until it is pushed. Creating the posting locked the author already.
+    static void addUnpushed(Node author, long posting) {
+        long[] unpushed = (long[]) author.getProperty(UNPUSHED, new long[0]);
+        long[] added = Arrays.copyOf(unpushed, unpushed.length + 1);
+        added[unpushed.length] = posting;
+        author.setProperty(UNPUSHED, added);
+    }
+
+    // Adds the unpushed postings of the authors to the inbox of everyone who follows them, writing each inbox once.
+    // Only the worker of the InboxQueue pushes, so only it creates inboxes, but resets can happen at any time.
+    // The authors are locked first, as posting does, then the inboxes in the order of their users,
+    // the same order decide resets them in.
+    static void push(Transaction tx, long[] authors) {
+        long[] ordered = authors.clone();
+        Arrays.sort(ordered);
+
+        TreeMap<Long, ArrayList<TimelineMerger.Posting>> users = new TreeMap<>();
+        for (int i = 0; i < ordered.length; i++) {
+            if (i > 0 && ordered[i] == ordered[i - 1]) {
+                continue;
+            }
+            Node author;
+            try {
+                author = tx.getNodeById(ordered[i]);
+            } catch (NotFoundException exception) {
+                continue;
+            }
+
+            // They may have been pushed along with an earlier posting of the author
+            tx.acquireWriteLock(author);
+            long[] unpushed = (long[]) author.getProperty(UNPUSHED, null);
+            if (unpushed == null) {
+                continue;
+            }
+            author.removeProperty(UNPUSHED);
+            // The author stopped pushing since, so they are read in full
+            if (!isPushed(author)) {
+                continue;
+            }
+
+            ArrayList<TimelineMerger.Posting> postings = getPostings(tx, author, unpushed);
+            if (postings.isEmpty()) {
+                continue;
+            }
+            // Authors see their own posts on their timeline as well
+            users.computeIfAbsent(author.getId(), k -> new ArrayList<>()).addAll(postings);
+            for (Relationship r1 : author.getRelationships(Direction.INCOMING, RelationshipTypes.FOLLOWS)) {
+                users.computeIfAbsent(r1.getStartNodeId(), k -> new ArrayList<>()).addAll(postings);
+            }
+        }
+
+        for (Map.Entry<Long, ArrayList<TimelineMerger.Posting>> entry : users.entrySet()) {
+            Node user = tx.getNodeById(entry.getKey());
+            Node inbox = getInbox(user);
+            if (inbox == null) {
+                inbox = tx.createNode(Labels.Inbox);
+                inbox.setProperty(TIME, getEarliest(entry.getValue()));
+                inbox.createRelationshipTo(user, RelationshipTypes.INBOX);
+            } else {
+                tx.acquireWriteLock(inbox);
+            }
+            append(inbox, entry.getValue());
+        }
+    }
+
+    // The inbox is missing whatever was posted before it was reset, so start it over from now
+    public static void reset(Transaction tx, Node user) {
+        Node inbox = getInbox(user);
+        if (inbox != null) {
+            tx.acquireWriteLock(inbox);
+            inbox.setProperty(TIME, ZonedDateTime.now());
+            clear(inbox);
+        }
+    }
+
+    // Always lock the users in the same order so concurrent posts do not deadlock.
+    // Authors see their own posts on their timeline as well, so they are locked along with their followers.
+    private static List<Node> lockUsers(Transaction tx, Node author) {
+        ArrayList<Node> users = new ArrayList<>();
+        users.add(author);
+        for (Relationship r1 : author.getRelationships(Direction.INCOMING, RelationshipTypes.FOLLOWS)) {
+            users.add(r1.getStartNode());
+        }
+
+        users.sort(Comparator.comparingLong(Node::getId));
+        for (Node user : users) {
+            tx.acquireWriteLock(user);
+        }
+        return users;
+    }
+
+    private static void append(Node inbox, List<TimelineMerger.Posting> pushes) {
+        ZonedDateTime started = (ZonedDateTime) inbox.getProperty(TIME);
+
+        // Inboxes from before the postings were kept in chunks are started over from what we push now,
+        // anything older is read from the users instead
+        if (inbox.hasProperty(POSTING_TIMES)) {
+            clear(inbox);
+            ZonedDateTime earliest = getEarliest(pushes);
+            if (earliest.isAfter(started)) {
+                started = earliest;
+            }
+        }
+
+        long chunk = (long) inbox.getProperty(CHUNK, 0L);
+        long[] entries = (long[]) inbox.getProperty(getChunkKey(chunk), new long[0]);
+        int count = entries.length / 2;
+        int loaded = count;
+        entries = Arrays.copyOf(entries, 2 * CHUNK_SIZE);
+
+        for (TimelineMerger.Posting push : pushes) {
+            if (count == CHUNK_SIZE) {
+                if (count > loaded) {
+                    inbox.setProperty(getChunkKey(chunk), entries);
+                }
+                chunk++;
+                entries = new long[2 * CHUNK_SIZE];
+                count = 0;
+                loaded = 0;
+
+                // Drop the oldest chunk, anything before the newest posting in it is read from the users instead
+                long[] dropped = (long[]) inbox.getProperty(getChunkKey(chunk - CHUNKS), null);
+                if (dropped != null) {
+                    for (int i = 1; i < dropped.length; i += 2) {
+                        if (dropped[i] >= toNanos(started)) {
+                            started = fromNanos(dropped[i] + 1);
+                        }
+                    }
+                    inbox.removeProperty(getChunkKey(chunk - CHUNKS));
+                }
+            }
+            entries[2 * count] = push.relationship.getId();
+            entries[2 * count + 1] = toNanos(push.time);
+            count++;
+        }
+
+        inbox.setProperty(getChunkKey(chunk), Arrays.copyOf(entries, 2 * count));
+        inbox.setProperty(CHUNK, chunk);
+        inbox.setProperty(TIME, started);
+    }
+
+    private static void clear(Node inbox) {
+        long chunk = (long) inbox.getProperty(CHUNK, 0L);
+        for (long i = chunk - CHUNKS + 1; i <= chunk; i++) {
+            inbox.removeProperty(getChunkKey(i));
+        }
+        inbox.removeProperty(POSTINGS);
+        inbox.removeProperty(POSTING_TIMES);
+    }
+
+    private static String getChunkKey(long chunk) {
+        return POSTINGS + "_" + chunk;
+    }
+
+    private static ZonedDateTime getEarliest(List<TimelineMerger.Posting> pushes) {
+        ZonedDateTime earliest = pushes.get(0).time;
+        for (TimelineMerger.Posting push : pushes) {
+            if (push.time.isBefore(earliest)) {
+                earliest = push.time;
+            }
+        }
+        return earliest;
+    }
+
+    // The inbox postings by the pushed users from the time the inbox started until before, newest first
+    public static Iterator<TimelineMerger.Posting> getPostings(Transaction tx, Node inbox, Set<Node> pushed,
+                                                               ZonedDateTime before) {
+        long started = toNanos((ZonedDateTime) inbox.getProperty(TIME));
+        long latest = toNanos(before);
+        long chunk = (long) inbox.getProperty(CHUNK, 0L);
+
+        ArrayList<long[]> order = new ArrayList<>();
+        for (long i = chunk - CHUNKS + 1; i <= chunk; i++) {
+            long[] entries = (long[]) inbox.getProperty(getChunkKey(i), new long[0]);
+            for (int j = 0; j < entries.length; j += 2) {
+                if (entries[j + 1] >= started && entries[j + 1] < latest) {
+                    order.add(new long[]{entries[j], entries[j + 1]});
+                }
+            }
+        }
+        order.sort((o1, o2) -> Long.compare(o2[1], o1[1]));
+
+        Iterator<long[]> iterator = order.iterator();
+        return new Iterator<>() {
+            private TimelineMerger.Posting next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && iterator.hasNext()) {
+                    long[] entry = iterator.next();
+                    ZonedDateTime time = fromNanos(entry[1]);
+                    Relationship r1 = getPosting(tx, entry[0]);
+                    // Ignore postings that were deleted or by users we no longer get pushed from
+                    if (r1 != null && pushed.contains(r1.getStartNode())
+                            && getPostingTime(r1, (ZonedDateTime) r1.getProperty(TIME)).isEqual(time)) {
+                        next = new TimelineMerger.Posting(r1, time);
+                    }
+                }
+                return next != null;
+            }
+
+            @Override
+            public TimelineMerger.Posting next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                TimelineMerger.Posting posting = next;
+                next = null;
+                return posting;
+            }
+        };
+    }
+
+    // The postings of the pushed users that were not pushed yet, from the time the inbox started until before, newest first
+    public static Iterator<TimelineMerger.Posting> getUnpushed(Transaction tx, Collection<Node> pushed,
+                                                               ZonedDateTime started, ZonedDateTime before) {
+        ArrayList<TimelineMerger.Posting> postings = new ArrayList<>();
+        for (Node author : pushed) {
+            long[] unpushed = (long[]) author.getProperty(UNPUSHED, null);
+            if (unpushed != null) {
+                for (TimelineMerger.Posting posting : getPostings(tx, author, unpushed)) {
+                    if (!posting.time.isBefore(started) && posting.time.isBefore(before)) {
+                        postings.add(posting);
+                    }
+                }
+            }
+        }
+        postings.sort(TimelineMerger.DESC_TIME_COMPARATOR);
+        return postings.iterator();
+    }
+
+    // The postings of the author that still exist
+    private static ArrayList<TimelineMerger.Posting> getPostings(Transaction tx, Node author, long[] ids) {
+        ArrayList<TimelineMerger.Posting> postings = new ArrayList<>();
+        for (long id : ids) {
+            Relationship r1 = getPosting(tx, id);
+            if (r1 != null && r1.getStartNode().equals(author)) {
+                postings.add(new TimelineMerger.Posting(r1, getPostingTime(r1, (ZonedDateTime) r1.getProperty(TIME))));
+            }
+        }
+        return postings;
+    }
+
+    private static Relationship getPosting(Transaction tx, long id) {
+        try {
+            Relationship r1 = tx.getRelationshipById(id);
+            String type = r1.getType().name();
+            if (type.startsWith(POSTED_ON) || type.startsWith(REPOSTED_ON)) {
+                return r1;
+            }
+        } catch (NotFoundException exception) {
+            return null;
+        }
+        return null;
+    }
+}
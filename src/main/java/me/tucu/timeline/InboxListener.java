@@ -0,0 +1,45 @@
+package me.tucu.timeline;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+
+import java.util.ArrayList;
+
+import static me.tucu.schema.DatedRelationshipTypes.POSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.REPOSTED_ON;
+import static me.tucu.timeline.Inbox.addUnpushed;
+import static me.tucu.timeline.Inbox.isPushed;
+
+// Keeps the new postings of authors that push on them as unpushed, in the same transaction so they are
+// never lost, and only hands the authors to the InboxQueue once it has committed, so a rolled back post is never pushed.
+public class InboxListener extends TransactionEventListenerAdapter<ArrayList<Long>> {
+
+    private final InboxQueue queue;
+
+    InboxListener(InboxQueue queue) {
+        this.queue = queue;
+    }
+
+    @Override
+    public ArrayList<Long> beforeCommit(TransactionData data, Transaction tx, GraphDatabaseService db) {
+        ArrayList<Long> authors = new ArrayList<>();
+        for (Relationship r1 : data.createdRelationships()) {
+            String type = r1.getType().name();
+            if ((type.startsWith(POSTED_ON) || type.startsWith(REPOSTED_ON)) && isPushed(r1.getStartNode())) {
+                addUnpushed(r1.getStartNode(), r1.getId());
+                authors.add(r1.getStartNodeId());
+            }
+        }
+        return authors;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, ArrayList<Long> authors, GraphDatabaseService db) {
+        if (!authors.isEmpty()) {
+            queue.submit(authors);
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package me.tucu.timeline;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.logging.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static me.tucu.utils.Locks.retry;
+
+// Authors whose postings wait to be pushed to the inboxes of their followers. Pushing them in the
+// transaction that pays for the post would lock every follower until it commits, and write each inbox
+// once for every post. Instead each posting is kept on its author as unpushed, the InboxListener queues the
+// author once the post is committed, and a worker pushes the postings of whoever is queued, up to the
+// batch size, in one transaction that writes each inbox once.
+// Timelines read the unpushed postings from their authors, so nothing is missing while they wait. When the
+// queue is full, or the database stops before the worker gets to them, they wait for the next posting of their author.
+public class InboxQueue {
+
+    // Set with -Dme.tucu.timeline.inbox.batch.size=1000 in neo4j.conf
+    public static final String BATCH_SETTING = "me.tucu.timeline.inbox.batch.size";
+    // Set with -Dme.tucu.timeline.inbox.queue.size=100000 in neo4j.conf, authors past it are not queued
+    public static final String QUEUE_SETTING = "me.tucu.timeline.inbox.queue.size";
+
+    private static final ConcurrentHashMap<String, InboxQueue> queues = new ConcurrentHashMap<>();
+
+    private final GraphDatabaseService db;
+    private final Log log;
+    private final long threshold;
+    private final int batchSize;
+    private final ArrayBlockingQueue<Long> queue;
+    private final Thread worker;
+    private volatile boolean running = true;
+
+    private InboxQueue(GraphDatabaseService db, Log log, long threshold, int batchSize, int queueSize) {
+        this.db = db;
+        this.log = log;
+        this.threshold = threshold;
+        this.batchSize = batchSize;
+        this.queue = new ArrayBlockingQueue<>(queueSize);
+        this.worker = new Thread(this::work, "tucu-inbox-" + ((GraphDatabaseAPI) db).databaseName());
+        this.worker.setDaemon(true);
+    }
+
+    public static InboxQueue getQueue(GraphDatabaseService db) {
+        return queues.get(getKey(db));
+    }
+
+    static InboxQueue start(GraphDatabaseService db, Log log) {
+        long threshold = Long.getLong(Inbox.THRESHOLD_SETTING, 0L);
+        if (threshold < 1) {
+            return null;
+        }
+        InboxQueue inboxQueue = new InboxQueue(db, log, threshold, Math.max(1, Integer.getInteger(BATCH_SETTING, 1000)),
+                Math.max(1, Integer.getInteger(QUEUE_SETTING, 100000)));
+        queues.put(getKey(db), inboxQueue);
+        inboxQueue.worker.start();
+        return inboxQueue;
+    }
+
+    static void stop(GraphDatabaseService db) {
+        InboxQueue inboxQueue = queues.remove(getKey(db));
+        if (inboxQueue == null) {
+            return;
+        }
+        inboxQueue.running = false;
+        try {
+            inboxQueue.worker.join();
+        } catch (InterruptedException exception) {
+            Thread.currentThread().interrupt();
+        }
+        // Anything queued after the worker stopped is still pushed
+        ArrayList<Long> batch = new ArrayList<>();
+        inboxQueue.queue.drainTo(batch);
+        inboxQueue.push(batch);
+    }
+
+    private static String getKey(GraphDatabaseService db) {
+        return ((GraphDatabaseAPI) db).databaseLayout().databaseDirectory().getAbsolutePath();
+    }
+
+    long getThreshold() {
+        return threshold;
+    }
+
+    // Never waits, so a full queue or a stuck worker can't hold up posting. The postings of the authors
+    // that don't fit are read from them until their next posting is queued.
+    void submit(List<Long> authors) {
+        for (Long author : authors) {
+            if (!queue.offer(author)) {
+                return;
+            }
+        }
+    }
+
+    private void work() {
+        ArrayList<Long> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                Long author = queue.poll(100, TimeUnit.MILLISECONDS);
+                if (author == null) {
+                    continue;
+                }
+                batch.add(author);
+                queue.drainTo(batch, batchSize - 1);
+                push(batch);
+            } catch (InterruptedException exception) {
+                Thread.currentThread().interrupt();
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void push(List<Long> batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            commit(batch.stream().mapToLong(Long::longValue).toArray());
+        } catch (Exception exception) {
+            // One of them broke the whole batch, so push them one at a time
+            for (Long author : batch) {
+                try {
+                    commit(new long[]{author});
+                } catch (Exception failure) {
+                    log.warn("Could not push the postings of user %d to their followers, " +
+                            "they are read from the user until their next posting", author);
+                }
+            }
+        }
+    }
+
+    private void commit(long[] authors) {
+        retry(() -> {
+            try (Transaction tx = db.beginTx()) {
+                Inbox.push(tx, authors);
+                tx.commit();
+            }
+            return null;
+        });
+    }
+}
@@ -1,8 +1,11 @@
 package me.tucu.timeline;
 
+import me.tucu.posts.PostDecorator;
 import me.tucu.results.MapResult;
 import me.tucu.schema.Labels;
-import me.tucu.schema.RelationshipTypes;
+import me.tucu.users.MutedAndFollows;
+import me.tucu.utils.Cursor;
+import me.tucu.utils.Fields;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
@@ -11,20 +14,19 @@ import java.time.ZonedDateTime;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
 import static java.lang.Math.abs;
-import static me.tucu.likes.Likes.userLikesPost;
+import static me.tucu.Exceptions.INVALID_CURSOR;
 import static me.tucu.posts.Posts.*;
 import static me.tucu.schema.DatedRelationshipTypes.POSTED_ON;
-import static me.tucu.schema.DatedRelationshipTypes.REPOSTED_ON;
 import static me.tucu.schema.Properties.*;
+import static me.tucu.timeline.Inbox.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
 import static me.tucu.users.Users.getMutedAndFollows;
-import static me.tucu.utils.Comparators.DESC_TIME_COMPARATOR;
-import static me.tucu.utils.Time.dateFormatter;
-import static me.tucu.utils.Time.getLatestTime;
+import static me.tucu.utils.Cursor.getCursor;
 
 public class Timeline {
     // This field declares that we need a GraphDatabaseService
@@ -38,15 +40,21 @@ public class Timeline {
     public Log log;
 
     @Procedure(name = "me.tucu.timeline.get", mode = Mode.READ)
-    @Description("CALL me.tucu.timeline.get(username, limit, since)")
+    @Description("CALL me.tucu.timeline.get(username, limit, since, cursor, fields)")
     public Stream<MapResult> geTimeline(@Name(value = "username", defaultValue = "") String username,
                                      @Name(value = "limit", defaultValue = "25") Long limit,
-                                     @Name(value = "since", defaultValue = "-1") Long since) {
+                                     @Name(value = "since", defaultValue = "-1") Long since,
+                                     @Name(value = "cursor", defaultValue = "") String cursor,
+                                     @Name(value = "fields", defaultValue = "[]") List<String> fields) {
         ArrayList<Map<String, Object>> results = new ArrayList<>();
         limit = abs(limit);
+        Fields asked = Fields.of(fields, Fields.POST_FIELDS);
 
-        ZonedDateTime dateTime = getLatestTime(since);
-        ZonedDateTime now = getLatestTime(since);
+        Cursor position = getCursor(since, cursor);
+        if (position == null) {
+            return Stream.of(INVALID_CURSOR);
+        }
+        ZonedDateTime dateTime = position.getBefore();
 
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, username);
@@ -54,77 +62,129 @@ public class Timeline {
                 return Stream.of(USER_NOT_FOUND);
             }
 
-            HashSet<Long> seen = new HashSet<>();
-            HashSet<Node> muted = new HashSet<>();
-            HashSet<Node> follows = new HashSet<>();
-            getMutedAndFollows(user, muted, follows);
+            MutedAndFollows mutedAndFollows = getMutedAndFollows(db, user);
 
             // Adding user to see their posts on timeline as well
+            ArrayList<Node> follows = new ArrayList<>();
             follows.add(user);
+            mutedAndFollows.getFollows().forEach(follow -> follows.add(tx.getNodeById(follow)));
 
             ZonedDateTime earliest = ((ZonedDateTime) user.getProperty(TIME)).truncatedTo(ChronoUnit.DAYS);
-            int count = 0;
-
-            while (count < limit && now.isAfter(earliest)) {
-                RelationshipType posted_on = RelationshipType.withName(POSTED_ON +
-                        now.format(dateFormatter));
-                RelationshipType reposted_on = RelationshipType.withName(REPOSTED_ON +
-                        now.format(dateFormatter));
 
-                for (Node follow : follows) {
-                    Map userProperties = follow.getAllProperties();
-
-                    for (Relationship r1 : follow.getRelationships(Direction.OUTGOING, posted_on)) {
-                        Node post = r1.getEndNode();
-
-                        if (seen.add(post.getId())) {
-                            ZonedDateTime time = (ZonedDateTime) r1.getProperty(TIME);
-                            if (time.isBefore(dateTime)) {
-                                Map<String, Object> properties = post.getAllProperties();
-
-                                properties.put(USERNAME, userProperties.get(USERNAME));
-                                properties.put(NAME, userProperties.get(NAME));
-                                properties.put(HASH, userProperties.get(HASH));
-                                properties.put(LIKES, (long) post.getDegree(RelationshipTypes.LIKES));
-                                properties.put(REPOSTS, getRepostedCount(post));
-                                properties.put(LIKED, userLikesPost(user, post));
-                                properties.put(REPOSTED, userRepostedPost(tx, user, post));
-                                results.add(properties);
-                            }
-                        }
+            // The first page is served from the buffer of the user when we have one
+            TimelineCache cache = TimelineCache.getCache(db);
+            TimelineBuffer buffer = null;
+            if (cache != null && since == -1L && cursor.isEmpty()) {
+                buffer = cache.get(user.getId());
+                if (buffer != null) {
+                    TimelineMerger merger = new TimelineMerger(earliest);
+                    merger.add(buffer.getPostings(tx));
+                    getTimeline(tx, user, merger, mutedAndFollows, position, limit, asked, results, null);
+                    if (results.size() >= limit || buffer.isComplete()) {
+                        tx.commit();
+                        return results.stream().map(Cursor::encode).map(asked::project).map(MapResult::new);
                     }
+                    // The buffer does not go back far enough, read it all again
+                    results.clear();
+                }
+                long[] sources = follows.stream().mapToLong(Node::getId).toArray();
+                buffer = cache.create(user.getId(), sources);
+            }
 
-                    for (Relationship r1 : follow.getRelationships(Direction.OUTGOING, reposted_on)) {
-                        Node post = r1.getEndNode();
-                        if (seen.add(post.getId())) {
-                            ZonedDateTime time = (ZonedDateTime) r1.getProperty(TIME);
-                            if (time.isBefore(dateTime)) {
-                                Map<String, Object> properties = post.getAllProperties();
-                                properties.put(REPOSTED_TIME, time);
-                                properties.put(REPOSTER_USERNAME, userProperties.get(USERNAME));
-                                properties.put(REPOSTER_NAME, userProperties.get(NAME));
-                                properties.put(HASH, userProperties.get(HASH));
-                                properties.put(LIKES, (long) post.getDegree(RelationshipTypes.LIKES));
-                                properties.put(REPOSTS, getRepostedCount(post));
-                                properties.put(LIKED, userLikesPost(user, post));
-                                properties.put(REPOSTED, userRepostedPost(tx, user, post));
-                                Node author = getAuthor(post);
-                                if (!muted.contains(author)) {
-                                    properties.put(USERNAME, author.getProperty(USERNAME));
-                                    properties.put(NAME, author.getProperty(NAME));
-                                    results.add(properties);
-                                }
-                            }
-                        }
+            TimelineMerger merger = new TimelineMerger(earliest);
+            Node inbox = getInbox(user);
+            if (getThreshold(db) > 0 && inbox != null) {
+                // Users under the threshold pushed their posts to our inbox since it started, or still have them
+                // waiting to be pushed, so we only need to read them ourselves for anything older than that
+                ZonedDateTime started = (ZonedDateTime) inbox.getProperty(TIME);
+                HashSet<Node> pushed = new HashSet<>();
+                for (Node follow : follows) {
+                    if (isPushed(follow)) {
+                        pushed.add(follow);
+                        merger.add(follow, started.isBefore(dateTime) ? started : dateTime);
+                    } else {
+                        merger.add(follow, dateTime);
                     }
                 }
-                // Check the day before
-                now = now.minusDays(1);
+                // Read what waits to be pushed before the inbox, so a push committing in between shows up twice
+                // instead of not at all, and the second one is skipped
+                merger.add(getUnpushed(tx, pushed, started, dateTime));
+                merger.add(getPostings(tx, inbox, pushed, dateTime));
+            } else {
+                for (Node follow : follows) {
+                    merger.add(follow, dateTime);
+                }
+            }
+
+            if (buffer != null) {
+                ArrayList<TimelineMerger.Posting> postings = new ArrayList<>();
+                boolean exhausted = getTimeline(tx, user, merger, mutedAndFollows, position, limit, asked, results, postings);
+                buffer.fill(postings, exhausted);
+            } else {
+                getTimeline(tx, user, merger, mutedAndFollows, position, limit, asked, results, null);
             }
             tx.commit();
         }
 
-        results.sort(DESC_TIME_COMPARATOR);
-        return results.stream().limit(limit).map(MapResult::new);
+        return results.stream().map(Cursor::encode).map(asked::project).map(MapResult::new);
+    }
+
+    // Adds up to limit posts from the merger to the results, keeping the postings it went through
+    // if asked to. Returns true if the merger ran out of postings.
+    private static boolean getTimeline(Transaction tx, Node user, TimelineMerger merger,
+                                       MutedAndFollows mutedAndFollows, Cursor position, long limit,
+                                       Fields fields, ArrayList<Map<String, Object>> results,
+                                       ArrayList<TimelineMerger.Posting> postings) {
+        HashSet<Long> seen = new HashSet<>();
+        PostDecorator decorator = new PostDecorator(tx, user, fields);
+        ArrayList<Node> posts = new ArrayList<>();
+        boolean exhausted = false;
+
+        // Postings come out newest first, so we can stop as soon as we have enough
+        while (results.size() < limit) {
+            TimelineMerger.Posting posting = merger.next();
+            if (posting == null) {
+                exhausted = true;
+                break;
+            }
+            if (postings != null && postings.size() < TimelineCache.BUFFER_SIZE) {
+                postings.add(posting);
+            }
+
+            Relationship r1 = posting.relationship;
+            Node post = r1.getEndNode();
+            if (!position.includes(posting.time, post.getId()) || !seen.add(post.getId())) {
+                continue;
+            }
+
+            Node follow = r1.getStartNode();
+
+            if (r1.getType().name().startsWith(POSTED_ON)) {
+                Map<String, Object> properties = decorator.getProperties(post, follow);
+                properties.put(CURSOR, new Cursor(posting.time, post.getId()));
+                results.add(properties);
+                posts.add(post);
+            } else {
+                Node author = getAuthor(tx, post);
+                if (!mutedAndFollows.isMuted(author)) {
+                    Map<String, Object> properties = decorator.getProperties(post);
+                    Map<String, Object> reposter = decorator.getAuthor(follow);
+                    Map<String, Object> authorProperties = decorator.getAuthor(author);
+                    properties.put(CURSOR, new Cursor(posting.time, post.getId()));
+                    properties.put(REPOSTED_TIME, r1.getProperty(TIME));
+                    properties.put(REPOSTER_USERNAME, reposter.get(USERNAME));
+                    properties.put(REPOSTER_NAME, reposter.get(NAME));
+                    properties.put(HASH, reposter.get(HASH));
+                    properties.put(USERNAME, authorProperties.get(USERNAME));
+                    properties.put(NAME, authorProperties.get(NAME));
+                    results.add(properties);
+                    posts.add(post);
+                }
+            }
+        }
+
+        // Find out which of the posts we liked or reposted all at once
+        decorator.putInteractions(results, posts);
+        return exhausted;
     }
 }
@@ -0,0 +1,153 @@
+package me.tucu.timeline;
+
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+
+import java.nio.ByteBuffer;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static me.tucu.utils.Time.fromNanos;
+import static me.tucu.utils.Time.toNanos;
+
+// The most recent timeline postings of a user, newest first, kept off heap as pairs of
+// relationship id and time in nanoseconds in a ring so new postings are added at the head.
+public class TimelineBuffer {
+
+    private static final int ENTRY_SIZE = 2 * Long.BYTES;
+
+    private final ByteBuffer entries;
+    private final int capacity;
+    private final long[] sources;
+    private int head = 0;
+    private int count = 0;
+
+    // True while the buffer holds every posting of the timeline, not just the most recent ones
+    private boolean complete = false;
+
+    TimelineBuffer(int capacity, long[] sources) {
+        this.entries = ByteBuffer.allocateDirect(capacity * ENTRY_SIZE);
+        this.capacity = capacity;
+        this.sources = sources;
+    }
+
+    long[] getSources() {
+        return sources;
+    }
+
+    // Add a posting in time order, dropping the oldest one if we are full
+    synchronized void add(long id, ZonedDateTime time) {
+        long nanos = toNanos(time);
+        int position = 0;
+        while (position < count) {
+            if (getId(position) == id) {
+                return;
+            }
+            if (getTime(position) < nanos) {
+                break;
+            }
+            position++;
+        }
+
+        if (position == capacity) {
+            complete = false;
+            return;
+        }
+
+        if (count == capacity) {
+            complete = false;
+        } else {
+            count++;
+        }
+
+        // The newest posting moves the head back, taking over the slot of the oldest one if we are full
+        if (position == 0) {
+            head = (head + capacity - 1) % capacity;
+            put(0, id, nanos);
+            return;
+        }
+
+        // Shift everything older one slot towards the tail, the oldest falls off if we are full
+        for (int i = count - 1; i > position; i--) {
+            put(i, getId(i - 1), getTime(i - 1));
+        }
+        put(position, id, nanos);
+    }
+
+    // Append postings from a timeline read, which come out older than everything we already have
+    synchronized void fill(ArrayList<TimelineMerger.Posting> postings, boolean exhausted) {
+        for (TimelineMerger.Posting posting : postings) {
+            add(posting.relationship.getId(), posting.time);
+        }
+        if (exhausted && count < capacity) {
+            complete = true;
+        }
+    }
+
+    synchronized boolean isComplete() {
+        return complete;
+    }
+
+    synchronized int size() {
+        return count;
+    }
+
+    // The postings in the buffer, skipping any that were deleted since they were added
+    synchronized Iterator<TimelineMerger.Posting> getPostings(Transaction tx) {
+        long[] ids = new long[count];
+        long[] times = new long[count];
+        for (int i = 0; i < count; i++) {
+            ids[i] = getId(i);
+            times[i] = getTime(i);
+        }
+
+        return new Iterator<>() {
+            private int position = 0;
+            private TimelineMerger.Posting next;
+
+            @Override
+            public boolean hasNext() {
+                while (next == null && position < ids.length) {
+                    try {
+                        Relationship r1 = tx.getRelationshipById(ids[position]);
+                        next = new TimelineMerger.Posting(r1, fromNanos(times[position]));
+                    } catch (NotFoundException exception) {
+                        // Deleted, the listener drops the buffer once that commits
+                    }
+                    position++;
+                }
+                return next != null;
+            }
+
+            @Override
+            public TimelineMerger.Posting next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                TimelineMerger.Posting posting = next;
+                next = null;
+                return posting;
+            }
+        };
+    }
+
+    private int offset(int position) {
+        return ((head + position) % capacity) * ENTRY_SIZE;
+    }
+
+    private long getId(int position) {
+        return entries.getLong(offset(position));
+    }
+
+    private long getTime(int position) {
+        return entries.getLong(offset(position) + Long.BYTES);
+    }
+
+    private void put(int position, long id, long nanos) {
+        entries.putLong(offset(position), id);
+        entries.putLong(offset(position) + Long.BYTES, nanos);
+    }
+}
@@ -0,0 +1,117 @@
+package me.tucu.timeline;
+
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.time.ZonedDateTime;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The timeline buffers of the most recently active users of a database, kept current by the
+// TimelineListener. Users that have not asked for their timeline in a while are evicted first.
+public class TimelineCache {
+
+    // Set with -Dme.tucu.timeline.cache.users=10000 in neo4j.conf, 0 (the default) turns the cache off
+    public static final String USERS_SETTING = "me.tucu.timeline.cache.users";
+    public static final int BUFFER_SIZE = 100;
+
+    private static final ConcurrentHashMap<String, TimelineCache> caches = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<Long, TimelineBuffer> buffers;
+
+    // The users whose timeline buffer each user posts to
+    private final HashMap<Long, HashSet<Long>> readers = new HashMap<>();
+
+    private TimelineCache(int users) {
+        this.buffers = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, TimelineBuffer> eldest) {
+                if (size() > users) {
+                    unregister(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static TimelineCache getCache(GraphDatabaseService db) {
+        return caches.get(getKey(db));
+    }
+
+    static TimelineCache start(GraphDatabaseService db) {
+        int users = Integer.getInteger(USERS_SETTING, 0);
+        if (users < 1) {
+            return null;
+        }
+        TimelineCache cache = new TimelineCache(users);
+        caches.put(getKey(db), cache);
+        return cache;
+    }
+
+    static void stop(GraphDatabaseService db) {
+        caches.remove(getKey(db));
+    }
+
+    private static String getKey(GraphDatabaseService db) {
+        return ((GraphDatabaseAPI) db).databaseLayout().databaseDirectory().getAbsolutePath();
+    }
+
+    public synchronized TimelineBuffer get(long user) {
+        return buffers.get(user);
+    }
+
+    // Start a new buffer for the user, it has to exist before the timeline is read so
+    // nothing committed while we read it is missed.
+    public synchronized TimelineBuffer create(long user, long[] sources) {
+        evict(user);
+        TimelineBuffer buffer = new TimelineBuffer(BUFFER_SIZE, sources);
+        for (long source : sources) {
+            readers.computeIfAbsent(source, k -> new HashSet<>()).add(user);
+        }
+        buffers.put(user, buffer);
+        return buffer;
+    }
+
+    synchronized void evict(long user) {
+        TimelineBuffer buffer = buffers.remove(user);
+        if (buffer != null) {
+            unregister(user, buffer);
+        }
+    }
+
+    // A user posted or reposted, add it to the buffer of everyone who reads them
+    synchronized void posted(long source, long id, ZonedDateTime time) {
+        HashSet<Long> users = readers.get(source);
+        if (users != null) {
+            for (Long user : users) {
+                buffers.get(user).add(id, time);
+            }
+        }
+    }
+
+    // A posting was deleted, the buffers that may have it have to be read again
+    synchronized void removed(long source) {
+        HashSet<Long> users = readers.get(source);
+        if (users != null) {
+            for (Long user : users.toArray(new Long[0])) {
+                evict(user);
+            }
+        }
+    }
+
+    private void unregister(long user, TimelineBuffer buffer) {
+        for (long source : buffer.getSources()) {
+            HashSet<Long> users = readers.get(source);
+            if (users != null) {
+                users.remove(user);
+                if (users.isEmpty()) {
+                    readers.remove(source);
+                }
+            }
+        }
+    }
+}
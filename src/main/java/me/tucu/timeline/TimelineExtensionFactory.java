@@ -0,0 +1,71 @@
+package me.tucu.timeline;
+
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.kernel.extension.ExtensionFactory;
+import org.neo4j.kernel.extension.ExtensionType;
+import org.neo4j.kernel.extension.context.ExtensionContext;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.Lifecycle;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+import org.neo4j.logging.internal.LogService;
+
+import static org.neo4j.configuration.GraphDatabaseSettings.SYSTEM_DATABASE_NAME;
+
+// Starts a timeline cache and an inbox queue with every database, along with their listeners, registered in
+// META-INF/services/org.neo4j.kernel.extension.ExtensionFactory
+public class TimelineExtensionFactory extends ExtensionFactory<TimelineExtensionFactory.Dependencies> {
+
+    public interface Dependencies {
+        DatabaseManagementService databaseManagementService();
+        GraphDatabaseAPI graphDatabaseAPI();
+        LogService logService();
+    }
+
+    public TimelineExtensionFactory() {
+        super(ExtensionType.DATABASE, "tucuTimeline");
+    }
+
+    @Override
+    public Lifecycle newInstance(ExtensionContext context, Dependencies dependencies) {
+        GraphDatabaseAPI db = dependencies.graphDatabaseAPI();
+        DatabaseManagementService managementService = dependencies.databaseManagementService();
+        LogService logService = dependencies.logService();
+
+        return new LifecycleAdapter() {
+            private TimelineListener listener;
+            private InboxListener inboxListener;
+
+            @Override
+            public void start() {
+                if (db.databaseName().equals(SYSTEM_DATABASE_NAME)) {
+                    return;
+                }
+                TimelineCache cache = TimelineCache.start(db);
+                if (cache != null) {
+                    listener = new TimelineListener(cache);
+                    managementService.registerTransactionEventListener(db.databaseName(), listener);
+                }
+                InboxQueue queue = InboxQueue.start(db, logService.getUserLog(InboxQueue.class));
+                if (queue != null) {
+                    inboxListener = new InboxListener(queue);
+                    managementService.registerTransactionEventListener(db.databaseName(), inboxListener);
+                }
+            }
+
+            @Override
+            public void stop() {
+                if (listener != null) {
+                    managementService.unregisterTransactionEventListener(db.databaseName(), listener);
+                    listener = null;
+                }
+                TimelineCache.stop(db);
+                // Nothing is queued once the listener is gone, so stopping pushes everything that was
+                if (inboxListener != null) {
+                    managementService.unregisterTransactionEventListener(db.databaseName(), inboxListener);
+                    inboxListener = null;
+                }
+                InboxQueue.stop(db);
+            }
+        };
+    }
+}
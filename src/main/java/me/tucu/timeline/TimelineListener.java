@@ -0,0 +1,72 @@
+package me.tucu.timeline;
+
+import me.tucu.schema.RelationshipTypes;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+import static me.tucu.schema.DatedRelationshipTypes.POSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.REPOSTED_ON;
+import static me.tucu.schema.Properties.TIME;
+import static me.tucu.timeline.TimelineMerger.getPostingTime;
+
+// Keeps the timeline buffers current. The changes are read before the commit while the
+// transaction is still open, and only applied to the buffers once it has committed.
+// Mutes are applied when the timeline is read, so they never change what is buffered.
+public class TimelineListener extends TransactionEventListenerAdapter<ArrayList<Consumer<TimelineCache>>> {
+
+    private final TimelineCache cache;
+
+    TimelineListener(TimelineCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public ArrayList<Consumer<TimelineCache>> beforeCommit(TransactionData data, Transaction tx,
+                                                          GraphDatabaseService db) {
+        ArrayList<Consumer<TimelineCache>> changes = new ArrayList<>();
+
+        for (Relationship r1 : data.createdRelationships()) {
+            if (isPosting(r1)) {
+                long source = r1.getStartNodeId();
+                long id = r1.getId();
+                ZonedDateTime time = getPostingTime(r1, (ZonedDateTime) r1.getProperty(TIME));
+                changes.add(cache -> cache.posted(source, id, time));
+            } else if (r1.isType(RelationshipTypes.FOLLOWS)) {
+                long user = r1.getStartNodeId();
+                changes.add(cache -> cache.evict(user));
+            }
+        }
+
+        for (Relationship r1 : data.deletedRelationships()) {
+            if (isPosting(r1)) {
+                long source = r1.getStartNodeId();
+                changes.add(cache -> cache.removed(source));
+            } else if (r1.isType(RelationshipTypes.FOLLOWS)) {
+                long user = r1.getStartNodeId();
+                changes.add(cache -> cache.evict(user));
+            }
+        }
+
+        return changes;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, ArrayList<Consumer<TimelineCache>> changes,
+                            GraphDatabaseService db) {
+        for (Consumer<TimelineCache> change : changes) {
+            change.accept(cache);
+        }
+    }
+
+    private static boolean isPosting(Relationship r1) {
+        String type = r1.getType().name();
+        return type.startsWith(POSTED_ON) || type.startsWith(REPOSTED_ON);
+    }
+}
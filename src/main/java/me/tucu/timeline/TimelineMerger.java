@@ -0,0 +1,165 @@
+package me.tucu.timeline;
+
+import me.tucu.schema.ActiveDays;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.RelationshipType;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+
+import static me.tucu.schema.DatedRelationshipTypes.POSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.REPOSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getEpochDay;
+import static me.tucu.schema.DatedRelationshipTypes.getStartOfDay;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
+import static me.tucu.schema.Properties.TIME;
+
+// Merges the POSTED_ON_ and REPOSTED_ON_ relationships of a set of users in descending time order.
+// Each user has at most one entry in the queue, either its next relationship or a placeholder for
+// a day we have not read yet. Placeholders are keyed by the end of their day, so a day is only read
+// once everything newer has been returned, and nothing older than the requested page is touched.
+public class TimelineMerger {
+
+    // Newest first, placeholders before relationships of the same time so their day is read in time,
+    // and the highest post id first within the same time so pages can continue from a cursor
+    private static final Comparator<Entry> DESC_KEY_COMPARATOR = (o1, o2) -> {
+        int compared = o2.key.toInstant().compareTo(o1.key.toInstant());
+        if (compared != 0) {
+            return compared;
+        }
+        if (o1.relationship == null || o2.relationship == null) {
+            return Boolean.compare(o1.relationship != null, o2.relationship != null);
+        }
+        return Long.compare(o2.relationship.getEndNodeId(), o1.relationship.getEndNodeId());
+    };
+
+    static final Comparator<Posting> DESC_TIME_COMPARATOR = (o1, o2) -> {
+        int compared = o2.time.toInstant().compareTo(o1.time.toInstant());
+        if (compared != 0) {
+            return compared;
+        }
+        return Long.compare(o2.relationship.getEndNodeId(), o1.relationship.getEndNodeId());
+    };
+
+    private final PriorityQueue<Entry> queue = new PriorityQueue<>(DESC_KEY_COMPARATOR);
+    private final ZonedDateTime earliest;
+    private final long earliestDay;
+
+    public TimelineMerger(ZonedDateTime earliest) {
+        this.earliest = earliest;
+        this.earliestDay = getEpochDay(earliest);
+    }
+
+    // Walk the days of this user, only returning relationships from before the given time
+    public void add(Node source, ZonedDateTime before) {
+        if (before.isAfter(earliest)) {
+            queue.add(new Entry(source, before));
+        }
+    }
+
+    // Merge relationships that are already in descending time order
+    public void add(Iterator<Posting> postings) {
+        Entry entry = new Entry(null, null);
+        entry.day = postings;
+        advance(entry);
+    }
+
+    // Returns the next most recent posting, or null once every source is exhausted
+    public Posting next() {
+        while (!queue.isEmpty()) {
+            Entry entry = queue.poll();
+
+            if (entry.relationship == null) {
+                // Placeholder, read the day for this source and queue its most recent relationship
+                entry.day = load(entry.source, entry.epochDay, entry.before);
+                advance(entry);
+                continue;
+            }
+
+            Posting posting = new Posting(entry.relationship, entry.key);
+            advance(entry);
+            return posting;
+        }
+        return null;
+    }
+
+    private void advance(Entry entry) {
+        if (entry.day.hasNext()) {
+            Posting posting = entry.day.next();
+            entry.relationship = posting.relationship;
+            entry.key = posting.time;
+            queue.add(entry);
+            return;
+        }
+
+        if (entry.source == null) {
+            return;
+        }
+
+        // Check the day before that had any postings
+        long day = entry.days.before(entry.epochDay);
+        if (day >= earliestDay) {
+            entry.key = getStartOfDay(day + 1);
+            entry.epochDay = day;
+            entry.relationship = null;
+            queue.add(entry);
+        }
+    }
+
+    private static Iterator<Posting> load(Node source, long day, ZonedDateTime before) {
+        RelationshipType posted_on = getType(POSTED_ON, day);
+        RelationshipType reposted_on = getType(REPOSTED_ON, day);
+
+        ArrayList<Posting> postings = new ArrayList<>();
+        for (Relationship r1 : source.getRelationships(Direction.OUTGOING, posted_on, reposted_on)) {
+            ZonedDateTime time = (ZonedDateTime) r1.getProperty(TIME);
+            if (time.isBefore(before)) {
+                postings.add(new Posting(r1, getPostingTime(r1, time)));
+            }
+        }
+        postings.sort(DESC_TIME_COMPARATOR);
+        return postings.iterator();
+    }
+
+    // Posts are ordered by when they were written, reposts by when they were reposted
+    static ZonedDateTime getPostingTime(Relationship r1, ZonedDateTime time) {
+        if (r1.getType().name().startsWith(POSTED_ON)) {
+            return (ZonedDateTime) r1.getEndNode().getProperty(TIME);
+        }
+        return time;
+    }
+
+    public static class Posting {
+        final Relationship relationship;
+        final ZonedDateTime time;
+
+        Posting(Relationship relationship, ZonedDateTime time) {
+            this.relationship = relationship;
+            this.time = time;
+        }
+    }
+
+    private static class Entry {
+        private final Node source;
+        private final ZonedDateTime before;
+        private final ActiveDays days;
+        private long epochDay;
+        private ZonedDateTime key;
+        private Relationship relationship;
+        private Iterator<Posting> day = Collections.emptyIterator();
+
+        private Entry(Node source, ZonedDateTime before) {
+            this.source = source;
+            this.before = before;
+            this.days = source == null ? null : ActiveDays.of(source, POSTED_ON, REPOSTED_ON);
+            this.epochDay = before == null ? 0 : getEpochDay(before);
+            this.key = before;
+        }
+    }
+}
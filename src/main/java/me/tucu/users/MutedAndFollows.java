@@ -0,0 +1,31 @@
+package me.tucu.users;
+
+import org.eclipse.collections.api.set.primitive.LongSet;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+import org.neo4j.graphdb.Node;
+
+// The node ids of the users a user follows, and of the users whose posts are hidden from them
+public class MutedAndFollows {
+
+    public static final MutedAndFollows EMPTY = new MutedAndFollows(LongSets.immutable.empty(), LongSets.immutable.empty());
+
+    private final LongSet muted;
+    private final LongSet follows;
+
+    MutedAndFollows(LongSet muted, LongSet follows) {
+        this.muted = muted;
+        this.follows = follows;
+    }
+
+    public boolean isMuted(Node user) {
+        return muted.contains(user.getId());
+    }
+
+    public boolean isFollowed(Node user) {
+        return follows.contains(user.getId());
+    }
+
+    public LongSet getFollows() {
+        return follows;
+    }
+}
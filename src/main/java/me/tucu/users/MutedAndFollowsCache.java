@@ -0,0 +1,146 @@
+package me.tucu.users;
+
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.map.mutable.primitive.LongObjectHashMap;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// The muted and followed users of the most recently active users of a database, kept current by the
+// MutedAndFollowsListener. Users that have not read anything in a while are evicted first.
+public class MutedAndFollowsCache {
+
+    // Set with -Dme.tucu.users.cache.users=10000 in neo4j.conf, 0 (the default) turns the cache off
+    public static final String USERS_SETTING = "me.tucu.users.cache.users";
+
+    private static final ConcurrentHashMap<String, MutedAndFollowsCache> caches = new ConcurrentHashMap<>();
+
+    private final LinkedHashMap<Long, MutedAndFollows> users;
+
+    // The users whose muted users depend on what each user mutes
+    private final LongObjectHashMap<MutableLongSet> followers = new LongObjectHashMap<>();
+
+    // When the follows or mutes of each user last changed, oldest first, so sets read while a change
+    // to that user committed are not kept. Only the most recent changes are remembered.
+    private final LinkedHashMap<Long, Long> changes;
+
+    // Counts every change, and the newest change we no longer remember
+    private long generation = 0;
+    private long forgotten = 0;
+
+    private MutedAndFollowsCache(int size) {
+        this.users = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, MutedAndFollows> eldest) {
+                if (size() > size) {
+                    unregister(eldest.getKey(), eldest.getValue());
+                    return true;
+                }
+                return false;
+            }
+        };
+        this.changes = new LinkedHashMap<>() {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, Long> eldest) {
+                if (size() > size) {
+                    forgotten = eldest.getValue();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    public static MutedAndFollowsCache getCache(GraphDatabaseService db) {
+        return caches.get(getKey(db));
+    }
+
+    static MutedAndFollowsCache start(GraphDatabaseService db) {
+        int size = Integer.getInteger(USERS_SETTING, 0);
+        if (size < 1) {
+            return null;
+        }
+        MutedAndFollowsCache cache = new MutedAndFollowsCache(size);
+        caches.put(getKey(db), cache);
+        return cache;
+    }
+
+    static void stop(GraphDatabaseService db) {
+        caches.remove(getKey(db));
+    }
+
+    private static String getKey(GraphDatabaseService db) {
+        return ((GraphDatabaseAPI) db).databaseLayout().databaseDirectory().getAbsolutePath();
+    }
+
+    synchronized long getGeneration() {
+        return generation;
+    }
+
+    synchronized MutedAndFollows get(long user) {
+        return users.get(user);
+    }
+
+    // Keep the sets of a user, unless the user or someone they follow changed since we started reading them
+    synchronized void put(long user, MutedAndFollows mutedAndFollows, long generation) {
+        // We can't tell who changed that long ago
+        if (generation < forgotten || changedSince(user, generation)) {
+            return;
+        }
+        for (long follow : mutedAndFollows.getFollows().toArray()) {
+            if (changedSince(follow, generation)) {
+                return;
+            }
+        }
+        mutedAndFollows.getFollows().forEach(follow ->
+                followers.getIfAbsentPut(follow, LongHashSet::new).add(user));
+        users.put(user, mutedAndFollows);
+    }
+
+    // The user followed, unfollowed, muted or unmuted someone
+    synchronized void evict(long user) {
+        changes.remove(user);
+        changes.put(user, ++generation);
+        remove(user);
+    }
+
+    // The user muted or unmuted someone, which changes who is hidden from their followers as well.
+    // Followers reading their sets right now see the change to the user when they put them.
+    synchronized void muted(long user) {
+        evict(user);
+        MutableLongSet readers = followers.get(user);
+        if (readers != null) {
+            for (long follower : readers.toArray()) {
+                remove(follower);
+            }
+        }
+    }
+
+    private boolean changedSince(long user, long generation) {
+        Long changed = changes.get(user);
+        return changed != null && changed > generation;
+    }
+
+    private void remove(long user) {
+        MutedAndFollows mutedAndFollows = users.remove(user);
+        if (mutedAndFollows != null) {
+            unregister(user, mutedAndFollows);
+        }
+    }
+
+    private void unregister(long user, MutedAndFollows mutedAndFollows) {
+        mutedAndFollows.getFollows().forEach(follow -> {
+            MutableLongSet readers = followers.get(follow);
+            if (readers != null) {
+                readers.remove(user);
+                if (readers.isEmpty()) {
+                    followers.remove(follow);
+                }
+            }
+        });
+    }
+}
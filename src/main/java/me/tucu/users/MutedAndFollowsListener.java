@@ -0,0 +1,52 @@
+package me.tucu.users;
+
+import me.tucu.schema.RelationshipTypes;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.graphdb.event.TransactionData;
+import org.neo4j.graphdb.event.TransactionEventListenerAdapter;
+
+import java.util.ArrayList;
+import java.util.function.Consumer;
+
+// Evicts the muted and followed users of anyone whose FOLLOWS or MUTES changed, and of the followers
+// of anyone whose MUTES changed. The changes are only applied once the transaction has committed.
+public class MutedAndFollowsListener extends TransactionEventListenerAdapter<ArrayList<Consumer<MutedAndFollowsCache>>> {
+
+    private final MutedAndFollowsCache cache;
+
+    MutedAndFollowsListener(MutedAndFollowsCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public ArrayList<Consumer<MutedAndFollowsCache>> beforeCommit(TransactionData data, Transaction tx,
+                                                                 GraphDatabaseService db) {
+        ArrayList<Consumer<MutedAndFollowsCache>> changes = new ArrayList<>();
+        for (Relationship r1 : data.createdRelationships()) {
+            addChange(r1, changes);
+        }
+        for (Relationship r1 : data.deletedRelationships()) {
+            addChange(r1, changes);
+        }
+        return changes;
+    }
+
+    @Override
+    public void afterCommit(TransactionData data, ArrayList<Consumer<MutedAndFollowsCache>> changes,
+                            GraphDatabaseService db) {
+        for (Consumer<MutedAndFollowsCache> change : changes) {
+            change.accept(cache);
+        }
+    }
+
+    private static void addChange(Relationship r1, ArrayList<Consumer<MutedAndFollowsCache>> changes) {
+        long user = r1.getStartNodeId();
+        if (r1.isType(RelationshipTypes.FOLLOWS)) {
+            changes.add(cache -> cache.evict(user));
+        } else if (r1.isType(RelationshipTypes.MUTES)) {
+            changes.add(cache -> cache.muted(user));
+        }
+    }
+}
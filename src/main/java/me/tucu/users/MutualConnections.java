@@ -0,0 +1,124 @@
+package me.tucu.users;
+
+import me.tucu.schema.RelationshipTypes;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.neo4j.graphdb.Direction;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.util.Arrays;
+
+// Who two users both follow, worked out on the sorted node ids of who each of them follows.
+// Walking the shorter list we gallop through the longer one, doubling the step until we pass the id
+// and searching between the last two steps, so a user following a handful of people against one following
+// millions costs a handful of short searches instead of hashing everybody.
+public class MutualConnections {
+
+    // Set with -Dme.tucu.users.mutual.estimate=100000 in neo4j.conf, 0 always counts them exactly.
+    // When both users follow more than this many people, the count is estimated from a sample of them.
+    public static final String ESTIMATE_SETTING = "me.tucu.users.mutual.estimate";
+
+    // How many of the shorter list are looked up in the longer one when estimating
+    private static final int ESTIMATE_SAMPLE = 10000;
+
+    private final long[] following;
+    private final long[] following2;
+
+    public MutualConnections(Node user, Node user2) {
+        this.following = getFollowing(user);
+        this.following2 = getFollowing(user2);
+    }
+
+    public boolean userFollows(Node other) {
+        return Arrays.binarySearch(following, other.getId()) >= 0;
+    }
+
+    public boolean user2Follows(Node other) {
+        return Arrays.binarySearch(following2, other.getId()) >= 0;
+    }
+
+    // Up to limit of the users both follow, lowest node id first, stopping as soon as we have them
+    public long[] getSample(int limit) {
+        LongArrayList sample = new LongArrayList(limit);
+        if (limit > 0) {
+            intersect(getShorter(), getLonger(), 1, id -> {
+                sample.add(id);
+                return sample.size() < limit;
+            });
+        }
+        return sample.toArray();
+    }
+
+    // How many users both follow
+    public long getCount() {
+        long[] shorter = getShorter();
+        long[] longer = getLonger();
+        long threshold = Long.getLong(ESTIMATE_SETTING, 0L);
+        if (threshold > 0 && shorter.length > threshold && shorter.length > ESTIMATE_SAMPLE) {
+            // Look up every stride-th id of the shorter list and scale up what we found
+            int stride = shorter.length / ESTIMATE_SAMPLE;
+            long[] found = new long[1];
+            intersect(shorter, longer, stride, id -> {
+                found[0]++;
+                return true;
+            });
+            return Math.round((double) found[0] * shorter.length / Math.ceil((double) shorter.length / stride));
+        }
+
+        long[] found = new long[1];
+        intersect(shorter, longer, 1, id -> {
+            found[0]++;
+            return true;
+        });
+        return found[0];
+    }
+
+    private long[] getShorter() {
+        return following.length <= following2.length ? following : following2;
+    }
+
+    private long[] getLonger() {
+        return following.length <= following2.length ? following2 : following;
+    }
+
+    // The ids are read straight off the relationships, without looking at the users they point to
+    private static long[] getFollowing(Node user) {
+        LongArrayList ids = new LongArrayList(user.getDegree(RelationshipTypes.FOLLOWS, Direction.OUTGOING));
+        for (Relationship r1 : user.getRelationships(Direction.OUTGOING, RelationshipTypes.FOLLOWS)) {
+            ids.add(r1.getEndNodeId());
+        }
+        long[] sorted = ids.toArray();
+        Arrays.sort(sorted);
+        return sorted;
+    }
+
+    // Hands every stride-th id of the shorter list that is also in the longer one to found, in ascending order,
+    // until it returns false
+    private static void intersect(long[] shorter, long[] longer, int stride, Found found) {
+        int low = 0;
+        for (int i = 0; i < shorter.length && low < longer.length; i += stride) {
+            long id = shorter[i];
+            // Everything before low is smaller than the id, gallop until we are past it
+            int high = low;
+            int step = 1;
+            while (high < longer.length && longer[high] < id) {
+                low = high + 1;
+                high += step;
+                step <<= 1;
+            }
+            int position = Arrays.binarySearch(longer, low, Math.min(high + 1, longer.length), id);
+            if (position >= 0) {
+                if (!found.found(id)) {
+                    return;
+                }
+                low = position + 1;
+            } else {
+                low = -position - 1;
+            }
+        }
+    }
+
+    private interface Found {
+        boolean found(long id);
+    }
+}
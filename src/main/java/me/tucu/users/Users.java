@@ -1,9 +1,13 @@
 package me.tucu.users;
 
 import me.tucu.results.MapResult;
+import me.tucu.schema.DatedConnections;
 import me.tucu.schema.Labels;
 import me.tucu.schema.RelationshipTypes;
+import me.tucu.utils.Fields;
 import org.apache.shiro.crypto.hash.Md5Hash;
+import org.eclipse.collections.api.set.primitive.MutableLongSet;
+import org.eclipse.collections.impl.set.mutable.primitive.LongHashSet;
 import org.neo4j.graphdb.*;
 import org.neo4j.logging.Log;
 import org.neo4j.procedure.*;
@@ -12,10 +16,12 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.time.temporal.ChronoUnit;
 import java.util.ArrayList;
-import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.stream.Stream;
 
+import static me.tucu.ledger.Ledger.credit;
+import static me.tucu.ledger.Ledger.putPending;
 import static me.tucu.schema.Properties.*;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
 import static me.tucu.utils.Time.utc;
@@ -32,6 +38,9 @@ public class Users {
     @Context
     public Log log;
 
+    // How many of the users both follow a profile shows
+    public static final int SAMPLE = 10;
+
     @Procedure(name = "me.tucu.users.get", mode = Mode.READ)
     @Description("CALL me.tucu.users.get(username)")
     public Stream<MapResult> usersGet(@Name(value = "username", defaultValue = "") String username) {
@@ -41,57 +50,50 @@ public class Users {
             if (user == null) {
                 return Stream.of(USER_NOT_FOUND);
             }
-            results = user.getAllProperties();
+            results = getOwnProperties(user);
+            putPending(tx, user, results);
         }
         return Stream.of(new MapResult(results));
     }
 
     @Procedure(name = "me.tucu.users.profile", mode = Mode.READ)
-    @Description("CALL me.tucu.users.profile(username, username2)")
+    @Description("CALL me.tucu.users.profile(username, username2, fields)")
     public Stream<MapResult> usersProfile(@Name(value = "username", defaultValue = "") String username,
-                                          @Name(value = "username2", defaultValue = "") String username2) {
+                                          @Name(value = "username2", defaultValue = "") String username2,
+                                          @Name(value = "fields", defaultValue = "[]") List<String> fields) {
         Map<String, Object> results;
+        Fields asked = Fields.of(fields, Fields.USER_FIELDS);
         try (Transaction tx = db.beginTx()) {
             Node user = tx.findNode(Labels.User, USERNAME, username);
             if (user == null) { return Stream.of(USER_NOT_FOUND); }
 
-            results = getUserAttributes(user);
+            results = getUserAttributes(user, asked);
 
             // If a different user asked for the profile, add a few things
             if (!username2.isEmpty() && !username.equals(username2)) {
                 Node user2 = tx.findNode(Labels.User, USERNAME, username2);
                 if(user2 == null) { return Stream.of(USER_NOT_FOUND); }
 
-                // Figure out if they follow me, or I follow them
-                HashSet<Node> followed = new HashSet<>();
-                for (Relationship r1 : user.getRelationships(Direction.OUTGOING, RelationshipTypes.FOLLOWS)) {
-                    followed.add(r1.getEndNode());
+                // Skip walking who they follow if none of it was asked for
+                if (!asked.includes(I_FOLLOW) && !asked.includes(FOLLOWS_ME)
+                        && !asked.includes(FOLLOWERS_YOU_KNOW) && !asked.includes(FOLLOWERS_YOU_KNOW_COUNT)) {
+                    return Stream.of(new MapResult(asked.project(results)));
                 }
-                HashSet<Node> followed2 = new HashSet<>();
-                for (Relationship r1 : user2.getRelationships(Direction.OUTGOING, RelationshipTypes.FOLLOWS)) {
-                    followed2.add(r1.getEndNode());
-                }
-
-                boolean follows_me = followed.contains(user2);
-                boolean i_follow = followed2.contains(user);
-                results.put(I_FOLLOW, i_follow);
-                results.put(FOLLOWS_ME, follows_me);
 
-                // Figure out which of their followers I follow
-                followed.retainAll(followed2);
+                // Figure out if they follow me, or I follow them
+                MutualConnections mutual = new MutualConnections(user, user2);
+                results.put(I_FOLLOW, mutual.user2Follows(user));
+                results.put(FOLLOWS_ME, mutual.userFollows(user2));
 
-                results.put(FOLLOWERS_YOU_KNOW_COUNT, Long.valueOf(followed.size()));
+                // Figure out which of the users they follow I follow
+                if (asked.includes(FOLLOWERS_YOU_KNOW_COUNT)) {
+                    results.put(FOLLOWERS_YOU_KNOW_COUNT, mutual.getCount());
+                }
                 ArrayList<Map<String, Object>> followers_sample = new ArrayList<>();
-                int count = 0;
-                for (Node follower : followed) {
-                    count++;
-                    Map<String, Object> properties = follower.getAllProperties();
-                    properties.remove(PASSWORD);
-                    properties.remove(EMAIL);
-                    properties.remove(SILVER);
-                    properties.remove(GOLD);
+                long[] sample = asked.includes(FOLLOWERS_YOU_KNOW) ? mutual.getSample(SAMPLE) : new long[0];
+                for (long id : sample) {
+                    Map<String, Object> properties = getPublicProperties(tx.getNodeById(id));
                     followers_sample.add(properties);
-                    if (count > 10) { break; };
                 }
 
                 results.put(FOLLOWERS_YOU_KNOW, followers_sample);
@@ -101,7 +103,7 @@ public class Users {
             tx.commit();
 
         }
-        return Stream.of(new MapResult(results));
+        return Stream.of(new MapResult(asked.project(results)));
     }
 
     @Procedure(name = "me.tucu.users.create", mode = Mode.WRITE)
@@ -128,7 +130,7 @@ public class Users {
                     LocalDateTime dateTime = LocalDateTime.now(utc);
                     user.setProperty(TIME, dateTime);
 
-                    results = user.getAllProperties();
+                    results = getOwnProperties(user);
                 } else {
                     return  Stream.of(UserExceptions.EXISTING_EMAIL);
                 }
@@ -143,64 +145,127 @@ public class Users {
     // todo: Modify user
     // todo: Delete user
 
+    // Kept on users for ourselves, nobody gets to see them
+    private static final List<String> INTERNAL_PROPERTIES = List.of(ACTIVE_DAYS, CONNECTED_DAYS, PUSHED, UNPUSHED);
+    // Only the user gets to see these
+    private static final List<String> PRIVATE_PROPERTIES = List.of(EMAIL, PASSWORD, SILVER, GOLD);
+
+    // The properties of a user as they see them
+    public static Map<String, Object> getOwnProperties(Node user) {
+        Map<String, Object> results = user.getAllProperties();
+        results.keySet().removeAll(INTERNAL_PROPERTIES);
+        return results;
+    }
+
+    // The properties of a user as everybody else sees them
+    public static Map<String, Object> getPublicProperties(Node user) {
+        Map<String, Object> results = getOwnProperties(user);
+        results.keySet().removeAll(PRIVATE_PROPERTIES);
+        return results;
+    }
+
     public static Map<String, Object> getUserAttributes(Node user) {
+        return getUserAttributes(user, Fields.ALL);
+    }
+
+    // Only reads the properties and counts that were asked for
+    public static Map<String, Object> getUserAttributes(Node user, Fields fields) {
         Map<String, Object> results;
-        results = user.getAllProperties();
-        results.remove(EMAIL);
-        results.remove(PASSWORD);
-        results.remove(SILVER);
-        results.remove(GOLD);
-        long following = user.getDegree(RelationshipTypes.FOLLOWS, Direction.OUTGOING);
-        long followers = user.getDegree(RelationshipTypes.FOLLOWS, Direction.INCOMING);
-        long likes = user.getDegree(RelationshipTypes.LIKES, Direction.OUTGOING);
-        long mutes = user.getDegree(RelationshipTypes.MUTES, Direction.OUTGOING);
-        long purchased = user.getDegree(RelationshipTypes.PURCHASED, Direction.OUTGOING);
-        long posts = user.getDegree(Direction.OUTGOING) - following - likes - mutes - purchased;
-        results.put("following", following);
-        results.put("followers", followers);
-        results.put("likes", likes);
-        results.put("posts", posts);
-        return results;
+        if (fields.isAll()) {
+            results = getPublicProperties(user);
+        } else {
+            // Search asks with the fields of posts as well, which include the balance, so strip them here too
+            results = fields.getProperties(user);
+            results.keySet().removeAll(INTERNAL_PROPERTIES);
+            results.keySet().removeAll(PRIVATE_PROPERTIES);
+        }
+
+        // The number of posts is what is left of the outgoing relationships
+        boolean posts = fields.includes(POSTS);
+        long following = 0;
+        long likes = 0;
+        if (posts || fields.includes(FOLLOWING)) {
+            following = user.getDegree(RelationshipTypes.FOLLOWS, Direction.OUTGOING);
+            results.put(FOLLOWING, following);
+        }
+        if (fields.includes(FOLLOWERS)) {
+            results.put(FOLLOWERS, (long) user.getDegree(RelationshipTypes.FOLLOWS, Direction.INCOMING));
+        }
+        if (posts || fields.includes(LIKES)) {
+            likes = user.getDegree(RelationshipTypes.LIKES, Direction.OUTGOING);
+            results.put(LIKES, likes);
+        }
+        if (posts) {
+            long mutes = user.getDegree(RelationshipTypes.MUTES, Direction.OUTGOING);
+            long purchased = user.getDegree(RelationshipTypes.PURCHASED, Direction.OUTGOING);
+            // Anybody with dated follows or likes has the days of them
+            long dated = user.hasProperty(CONNECTED_DAYS) ? DatedConnections.getDegree(user, Direction.OUTGOING) : 0;
+            results.put(POSTS, user.getDegree(Direction.OUTGOING) - following - likes - mutes - purchased - dated);
+        }
+        return fields.project(results);
     }
 
-    public static void getMutedAndFollows(Node user, HashSet<Node> muted, HashSet<Node> followed) {
+    // The cached muted and followed users of the user, read from the graph if we don't have them
+    public static MutedAndFollows getMutedAndFollows(GraphDatabaseService db, Node user) {
+        MutedAndFollowsCache cache = MutedAndFollowsCache.getCache(db);
+        if (cache == null) {
+            return getMutedAndFollows(user);
+        }
+
+        MutedAndFollows mutedAndFollows = cache.get(user.getId());
+        if (mutedAndFollows == null) {
+            long generation = cache.getGeneration();
+            mutedAndFollows = getMutedAndFollows(user);
+            cache.put(user.getId(), mutedAndFollows, generation);
+        }
+        return mutedAndFollows;
+    }
+
+    private static MutedAndFollows getMutedAndFollows(Node user) {
+        MutableLongSet muted = new LongHashSet();
+        MutableLongSet followed = new LongHashSet();
+
         // Hide posts by muted users
         for (Relationship r1 : user.getRelationships(Direction.OUTGOING, RelationshipTypes.MUTES)) {
-            muted.add(r1.getEndNode());
+            muted.add(r1.getEndNodeId());
         }
 
         // Find the people I follow
+        ArrayList<Node> follows = new ArrayList<>();
         for (Relationship r1 : user.getRelationships(Direction.OUTGOING, RelationshipTypes.FOLLOWS)) {
             Node follow = r1.getEndNode();
-            followed.add(follow);
+            follows.add(follow);
+            followed.add(follow.getId());
         }
 
         // Add the muted users of the people I follow
-        for (Node follow : followed) {
+        for (Node follow : follows) {
             for (Relationship r2 : follow.getRelationships(Direction.OUTGOING, RelationshipTypes.MUTES)) {
-                Node theyMuted = r2.getEndNode();
+                long theyMuted = r2.getEndNodeId();
                 // Don't mute myself
-                if (theyMuted.equals(user)) { continue; }
+                if (theyMuted == user.getId()) { continue; }
                 // Add to muted as long as I don't directly follow them
                 if(!followed.contains(theyMuted) ) {
                   muted.add(theyMuted);
                 }
             }
         }
+        return new MutedAndFollows(muted, followed);
     }
 
-    public static void payUser(Map<String, Object> results, Node user, Relationship like, Node author, Long silver, Long gold) {
+    // The user must be locked. The author is credited through the ledger, so they don't have to be.
+    public static void payUser(Transaction tx, Map<String, Object> results, Node user, Relationship like, Node author, Long silver, Long gold) {
         if (silver > 0) {
             like.setProperty(SILVER, true);
             silver = silver - 1;
             user.setProperty(SILVER, silver);
-            author.setProperty(SILVER, (Long)author.getProperty(SILVER) + 1);
+            credit(tx, user, author, SILVER, 1L);
             results.put(SILVER, true);
         } else {
             like.setProperty(GOLD, true);
             gold = gold - 1;
             user.setProperty(GOLD, gold);
-            author.setProperty(GOLD, (Long)author.getProperty(GOLD) + 1);
+            credit(tx, user, author, GOLD, 1L);
             results.put(GOLD, true);
         }
     }
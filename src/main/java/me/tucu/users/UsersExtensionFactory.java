@@ -0,0 +1,56 @@
+package me.tucu.users;
+
+import org.neo4j.dbms.api.DatabaseManagementService;
+import org.neo4j.kernel.extension.ExtensionFactory;
+import org.neo4j.kernel.extension.ExtensionType;
+import org.neo4j.kernel.extension.context.ExtensionContext;
+import org.neo4j.kernel.internal.GraphDatabaseAPI;
+import org.neo4j.kernel.lifecycle.Lifecycle;
+import org.neo4j.kernel.lifecycle.LifecycleAdapter;
+
+import static org.neo4j.configuration.GraphDatabaseSettings.SYSTEM_DATABASE_NAME;
+
+// Starts a muted and follows cache and its listener with every database, registered in
+// META-INF/services/org.neo4j.kernel.extension.ExtensionFactory
+public class UsersExtensionFactory extends ExtensionFactory<UsersExtensionFactory.Dependencies> {
+
+    public interface Dependencies {
+        DatabaseManagementService databaseManagementService();
+        GraphDatabaseAPI graphDatabaseAPI();
+    }
+
+    public UsersExtensionFactory() {
+        super(ExtensionType.DATABASE, "tucuUsers");
+    }
+
+    @Override
+    public Lifecycle newInstance(ExtensionContext context, Dependencies dependencies) {
+        GraphDatabaseAPI db = dependencies.graphDatabaseAPI();
+        DatabaseManagementService managementService = dependencies.databaseManagementService();
+
+        return new LifecycleAdapter() {
+            private MutedAndFollowsListener listener;
+
+            @Override
+            public void start() {
+                if (db.databaseName().equals(SYSTEM_DATABASE_NAME)) {
+                    return;
+                }
+                MutedAndFollowsCache cache = MutedAndFollowsCache.start(db);
+                if (cache != null) {
+                    listener = new MutedAndFollowsListener(cache);
+                    managementService.registerTransactionEventListener(db.databaseName(), listener);
+                }
+            }
+
+            @Override
+            public void stop() {
+                if (listener != null) {
+                    managementService.unregisterTransactionEventListener(db.databaseName(), listener);
+                    listener = null;
+                }
+                MutedAndFollowsCache.stop(db);
+            }
+        };
+    }
+}
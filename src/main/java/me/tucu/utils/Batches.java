@@ -0,0 +1,40 @@
+package me.tucu.utils;
+
+import me.tucu.results.MapResult;
+import org.eclipse.collections.impl.list.mutable.primitive.LongArrayList;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.stream.IntStream;
+
+// Helpers for the procedures that take a list of things to do at once and return a row for each
+public class Batches {
+
+    // The result of one item of a batch, with the item it is about
+    public static MapResult getItemResult(MapResult error, String key, Object value) {
+        HashMap<String, Object> result = new HashMap<>(error.value);
+        result.put(key, value);
+        return new MapResult(result);
+    }
+
+    // The positions of the node ids from the lowest id to the highest, so every batch
+    // locks nodes in the same order and two of them can't wait on each other
+    public static int[] getOrder(LongArrayList ids) {
+        return IntStream.range(0, ids.size()).boxed()
+                .sorted(Comparator.comparingLong(ids::get))
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    // A node found before the batch was split into chunks, or null if it was deleted since
+    public static Node getNode(Transaction tx, long id) {
+        try {
+            return tx.getNodeById(id);
+        } catch (NotFoundException exception) {
+            return null;
+        }
+    }
+}
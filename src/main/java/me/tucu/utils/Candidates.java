@@ -0,0 +1,82 @@
+package me.tucu.utils;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.PriorityQueue;
+
+// The posts that make a page of a feed, picked by their position in the feed alone.
+// Only the best limit candidates are kept, so the properties, likes and reposts of a post
+// are read once we know it is going to be on the page and not for everything we walked past.
+// Pages of users work the same way, by when they were followed or muted.
+public class Candidates {
+
+    private final int limit;
+    private final Comparator<Cursor> order;
+
+    // The worst candidate we kept is at the head, so it is the one to drop when a better one comes along
+    private final PriorityQueue<Candidate> queue;
+
+    // Feeds are newest first
+    public Candidates(long limit) {
+        this(limit, Comparator.naturalOrder());
+    }
+
+    public Candidates(long limit, Comparator<Cursor> order) {
+        this.limit = (int) Math.min(limit, Integer.MAX_VALUE);
+        this.order = order;
+        this.queue = new PriorityQueue<>(Math.max(1, Math.min(this.limit, 64)),
+                (c1, c2) -> order.compare(c2.cursor, c1.cursor));
+    }
+
+    // The author may be null if we did not need it to pick the post
+    public void add(ZonedDateTime time, Node post, Node author) {
+        if (limit == 0) {
+            return;
+        }
+
+        add(new Cursor(time, post.getId()), post, author);
+    }
+
+    // Users are picked by the time of the relationship to them, and for the same time
+    // the newest relationship goes first, the order Neo4j walks them in
+    public void add(ZonedDateTime time, Relationship relationship, Node user) {
+        if (limit == 0) {
+            return;
+        }
+
+        add(new Cursor(time, relationship.getId()), user, null);
+    }
+
+    private void add(Cursor cursor, Node node, Node author) {
+        if (queue.size() < limit) {
+            queue.add(new Candidate(cursor, node, author));
+        } else if (order.compare(cursor, queue.peek().cursor) < 0) {
+            queue.poll();
+            queue.add(new Candidate(cursor, node, author));
+        }
+    }
+
+    // The candidates in the order of the feed
+    public ArrayList<Candidate> getCandidates() {
+        ArrayList<Candidate> candidates = new ArrayList<>(queue);
+        candidates.sort((c1, c2) -> order.compare(c1.cursor, c2.cursor));
+        return candidates;
+    }
+
+    // The post or user on the page
+    public static class Candidate {
+        public final Cursor cursor;
+        public final Node node;
+        public final Node author;
+
+        Candidate(Cursor cursor, Node node, Node author) {
+            this.cursor = cursor;
+            this.node = node;
+            this.author = author;
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package me.tucu.utils;
+
+import java.nio.ByteBuffer;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.util.Base64;
+import java.util.Map;
+
+import static me.tucu.schema.Properties.CURSOR;
+import static me.tucu.utils.Time.getLatestTime;
+import static me.tucu.utils.Time.utc;
+
+// A position in a feed. Feeds are ordered newest first and by descending post id for the same time,
+// so the time and post id of the last item of a page is enough to start the next page right after it.
+public class Cursor implements Comparable<Cursor> {
+
+    private static final int SIZE = Long.BYTES + Integer.BYTES + Long.BYTES;
+
+    private final ZonedDateTime time;
+    private final long id;
+
+    public Cursor(ZonedDateTime time, long id) {
+        this.time = time;
+        this.id = id;
+    }
+
+    // Start from the cursor of a previous page if we have one, otherwise from the time in epoch seconds.
+    // Returns null if the cursor is not one of ours.
+    public static Cursor getCursor(Long since, String cursor) {
+        if (cursor.isEmpty()) {
+            return new Cursor(getLatestTime(since), -1L);
+        }
+
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(cursor);
+        } catch (IllegalArgumentException exception) {
+            return null;
+        }
+        if (bytes.length != SIZE) {
+            return null;
+        }
+
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        long seconds = buffer.getLong();
+        int nanos = buffer.getInt();
+        long id = buffer.getLong();
+        if (nanos < 0 || nanos > 999_999_999) {
+            return null;
+        }
+        return new Cursor(ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds, nanos), utc), id);
+    }
+
+    public ZonedDateTime getTime() {
+        return time;
+    }
+
+    // The exclusive upper bound of the times on the pages after this cursor
+    public ZonedDateTime getBefore() {
+        return time.plusNanos(1);
+    }
+
+    // True if the item comes after this cursor in the feed.
+    // Times are compared as instants, stored times are in the zone of the server but decoded cursors are in UTC.
+    public boolean includes(ZonedDateTime time, long id) {
+        int compared = time.toInstant().compareTo(this.time.toInstant());
+        return compared < 0 || (compared == 0 && id < this.id);
+    }
+
+    // True if the item comes after this cursor in a conversation, which is ordered oldest first
+    public boolean precedes(ZonedDateTime time, long id) {
+        int compared = time.toInstant().compareTo(this.time.toInstant());
+        return compared > 0 || (compared == 0 && id > this.id);
+    }
+
+    // Replaces the cursor of a result with the opaque value we hand out
+    public static Map<String, Object> encode(Map<String, Object> result) {
+        Object cursor = result.get(CURSOR);
+        if (cursor instanceof Cursor) {
+            result.put(CURSOR, cursor.toString());
+        }
+        return result;
+    }
+
+    @Override
+    public int compareTo(Cursor other) {
+        int compared = other.time.toInstant().compareTo(time.toInstant());
+        if (compared != 0) {
+            return compared;
+        }
+        return Long.compare(other.id, id);
+    }
+
+    @Override
+    public String toString() {
+        ByteBuffer buffer = ByteBuffer.allocate(SIZE);
+        buffer.putLong(time.toEpochSecond());
+        buffer.putInt(time.getNano());
+        buffer.putLong(id);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+}
@@ -0,0 +1,65 @@
+package me.tucu.utils;
+
+import me.tucu.schema.Labels;
+import org.neo4j.graphdb.Label;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.NotFoundException;
+import org.neo4j.graphdb.Transaction;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import static me.tucu.schema.Properties.ID;
+import static me.tucu.schema.Properties.NAME;
+
+// The node ids of tags by name and of products by id, so posting does not seek an index for every token.
+// An id is checked against its node before we use it: the transaction that created the node may
+// have been rolled back, its id reused, or it may belong to another database in the same server.
+// Any of those is treated as a miss, and the index tells us the right node.
+public class Dictionary {
+
+    // Past this many entries we stop adding, the rest are found through the index
+    public static final int SIZE = 100_000;
+
+    private static final ConcurrentHashMap<String, Long> tags = new ConcurrentHashMap<>();
+    private static final ConcurrentHashMap<String, Long> products = new ConcurrentHashMap<>();
+
+    public static Node getTag(Transaction tx, String name) {
+        return get(tx, tags, Labels.Tag, NAME, name);
+    }
+
+    // Tags are added as they are created, so the next post using them finds them here
+    public static void putTag(Node tag, String name) {
+        put(tags, name, tag);
+    }
+
+    public static Node getProduct(Transaction tx, String id) {
+        return get(tx, products, Labels.Product, ID, id);
+    }
+
+    private static Node get(Transaction tx, ConcurrentHashMap<String, Long> ids, Label label, String key, String value) {
+        Long id = ids.get(value);
+        if (id != null) {
+            try {
+                Node node = tx.getNodeById(id);
+                if (node.hasLabel(label) && value.equals(node.getProperty(key, null))) {
+                    return node;
+                }
+            } catch (NotFoundException exception) {
+                // Gone, look it up again
+            }
+            ids.remove(value, id);
+        }
+
+        Node node = tx.findNode(label, key, value);
+        if (node != null) {
+            put(ids, value, node);
+        }
+        return node;
+    }
+
+    private static void put(ConcurrentHashMap<String, Long> ids, String value, Node node) {
+        if (ids.size() < SIZE) {
+            ids.put(value, node.getId());
+        }
+    }
+}
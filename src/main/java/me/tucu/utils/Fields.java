@@ -0,0 +1,77 @@
+package me.tucu.utils;
+
+import org.neo4j.graphdb.Entity;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static me.tucu.schema.Properties.*;
+
+// The fields a client asked a read procedure for, so we only read and send those.
+// Asking for no fields gets all of them. Fields a procedure does not hand out are ignored,
+// so private properties like the email or password of a user can never be asked for.
+public class Fields {
+
+    public static final Set<String> POST_FIELDS = Set.of(STATUS, TIME, POST_ID, USERNAME, NAME, HASH, LIKES, REPOSTS,
+            LIKED, REPOSTED, LIKED_TIME, REPOSTED_TIME, REPOSTER_USERNAME, REPOSTER_NAME, SILVER, GOLD);
+
+    public static final Set<String> USER_FIELDS = Set.of(USERNAME, NAME, HASH, TIME, FOLLOWING, FOLLOWERS, LIKES, POSTS,
+            I_FOLLOW, FOLLOWS_ME, FOLLOWERS_YOU_KNOW, FOLLOWERS_YOU_KNOW_COUNT);
+
+    public static final Set<String> PRODUCT_FIELDS = Set.of(ID, NAME, PRICE, TIME);
+
+    public static final Fields ALL = new Fields(null);
+
+    // The fields asked for, or null for all of them
+    private final Set<String> fields;
+    private final String[] keys;
+
+    private Fields(Set<String> fields) {
+        this.fields = fields;
+        this.keys = fields == null ? null : fields.toArray(new String[0]);
+    }
+
+    @SafeVarargs
+    public static Fields of(List<String> fields, Set<String>... allowed) {
+        if (fields == null || fields.isEmpty()) {
+            return ALL;
+        }
+
+        HashSet<String> asked = new HashSet<>();
+        for (String field : fields) {
+            for (Set<String> set : allowed) {
+                if (set.contains(field)) {
+                    asked.add(field);
+                }
+            }
+        }
+        // Paging needs the cursor and search sorts by label, so they are always there
+        asked.add(CURSOR);
+        asked.add(LABEL);
+        return new Fields(asked);
+    }
+
+    public boolean isAll() {
+        return fields == null;
+    }
+
+    public boolean includes(String field) {
+        return fields == null || fields.contains(field);
+    }
+
+    // The properties asked for that the entity has. Only use it when not all fields were asked for,
+    // otherwise read all of them and remove the private ones.
+    public Map<String, Object> getProperties(Entity entity) {
+        return entity.getProperties(keys);
+    }
+
+    // Drops whatever was not asked for from a result
+    public Map<String, Object> project(Map<String, Object> result) {
+        if (fields != null) {
+            result.keySet().retainAll(fields);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,58 @@
+package me.tucu.utils;
+
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.kernel.DeadlockDetectedException;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+// Every procedure that touches balances locks the nodes it needs here, from the lowest node id to the
+// highest, so two of them can never each hold a lock the other one is waiting for.
+// Neo4j takes locks of its own, when creating relationships for example, so it can still find a deadlock
+// and abort one of the transactions. Those are run again a few times before the client ever hears about it.
+public class Locks {
+
+    public static final int RETRIES = 3;
+
+    private static final AtomicLong retries = new AtomicLong();
+
+    // The locks are released at the end of the transaction
+    public static void lock(Transaction tx, Node... nodes) {
+        Node[] ordered = nodes.clone();
+        Arrays.sort(ordered, Comparator.comparingLong(Node::getId));
+        for (Node node : ordered) {
+            tx.acquireWriteLock(node);
+        }
+    }
+
+    // The work has to begin and end its own transaction, so it can be run again
+    public static <T> T retry(Supplier<T> work) {
+        for (int attempt = 0; ; attempt++) {
+            try {
+                return work.get();
+            } catch (RuntimeException exception) {
+                if (attempt == RETRIES || !isDeadlock(exception)) {
+                    throw exception;
+                }
+                retries.incrementAndGet();
+            }
+        }
+    }
+
+    // How many times work was run again since Neo4j started
+    public static long getRetries() {
+        return retries.get();
+    }
+
+    private static boolean isDeadlock(Throwable exception) {
+        for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+            if (cause instanceof DeadlockDetectedException) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
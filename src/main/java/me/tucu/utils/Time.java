@@ -25,4 +25,12 @@ public class Time {
             return ZonedDateTime.ofInstant(i, UTC);
         }
     }
+
+    public static long toNanos(ZonedDateTime time) {
+        return time.toEpochSecond() * 1_000_000_000L + time.getNano();
+    }
+
+    public static ZonedDateTime fromNanos(long nanos) {
+        return ZonedDateTime.ofInstant(Instant.ofEpochSecond(0, nanos), utc);
+    }
 }
@@ -0,0 +1,72 @@
+package me.tucu.utils;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+
+// The #tags, @mentions and $products of a status, found in one pass over it.
+// A token is the sign followed by a character, followed by 2 to 31 more characters, numbers or underscores,
+// the same as the patterns we used to match separately. Each one is kept once, in the order they were written.
+public class Tokens {
+
+    private static final int MAX_LENGTH = 32;
+
+    private final LinkedHashSet<String> tags = new LinkedHashSet<>();
+    private final LinkedHashSet<String> mentions = new LinkedHashSet<>();
+    private final LinkedHashSet<String> products = new LinkedHashSet<>();
+
+    private Tokens() {}
+
+    public static Tokens of(String status) {
+        Tokens tokens = new Tokens();
+        String text = status.toLowerCase();
+        int length = text.length();
+        int i = 0;
+        while (i < length) {
+            LinkedHashSet<String> found = tokens.getFound(text.charAt(i));
+            if (found == null || i + 1 == length || !isLetter(text.charAt(i + 1))) {
+                i++;
+                continue;
+            }
+            int start = i + 1;
+            int end = start + 1;
+            while (end < length && end - start < MAX_LENGTH && isWordCharacter(text.charAt(end))) {
+                end++;
+            }
+            if (end - start >= 3) {
+                found.add(text.substring(start, end));
+            }
+            // Nothing we skipped over can start another token
+            i = end;
+        }
+        return tokens;
+    }
+
+    public ArrayList<String> getTags() {
+        return new ArrayList<>(tags);
+    }
+
+    public ArrayList<String> getMentions() {
+        return new ArrayList<>(mentions);
+    }
+
+    public ArrayList<String> getProducts() {
+        return new ArrayList<>(products);
+    }
+
+    private LinkedHashSet<String> getFound(char sign) {
+        switch (sign) {
+            case '#': return tags;
+            case '@': return mentions;
+            case '$': return products;
+            default: return null;
+        }
+    }
+
+    private static boolean isLetter(char c) {
+        return c >= 'a' && c <= 'z';
+    }
+
+    private static boolean isWordCharacter(char c) {
+        return isLetter(c) || (c >= '0' && c <= '9') || c == '_';
+    }
+}
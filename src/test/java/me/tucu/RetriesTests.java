@@ -0,0 +1,95 @@
+package me.tucu;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.likes.Likes;
+import me.tucu.posts.Posts;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class RetriesTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Procedures.class)
+                .withProcedure(Schema.class)
+                .withProcedure(Likes.class)
+                .withProcedure(Posts.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @Test
+    void shouldGetRetries() throws Exception
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a few users each with a post
+            List<Long> post_ids = new ArrayList<>();
+            for (Record record : session.run( "UNWIND range(1, 6) AS i " +
+                    "CREATE (:User {username: 'trader' + i, name: 'Trader', hash: 'hash', silver: 100, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})" +
+                    "-[:POSTED_ON_2020_05_01 {time: datetime('2020-05-01T10:00:00Z')}]->" +
+                    "(post:Post {status: 'Trade with me', time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "RETURN ID(post) AS id ORDER BY id").list()) {
+                post_ids.add(record.get("id").asLong());
+            }
+
+            // When they all like and repost each other's posts at once
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            ArrayList<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 1; i <= post_ids.size(); i++) {
+                for (int j = 1; j <= post_ids.size(); j++) {
+                    if (i == j) {
+                        continue;
+                    }
+                    String username = "trader" + i;
+                    long post_id = post_ids.get(j - 1);
+                    String query = (i + j) % 2 == 0 ? "CALL me.tucu.likes.create($username, $post_id);"
+                            : "CALL me.tucu.posts.repost($post_id, $username);";
+                    futures.add(executor.submit(() -> {
+                        try (Session trader = driver.session()) {
+                            return trader.run( query,
+                                    parameters("username", username, "post_id", post_id)).single().get("value").asMap();
+                        }
+                    }));
+                }
+            }
+            for (Future<Map<String, Object>> future : futures) {
+                // Then none of them should fail
+                assertThat(future.get().containsKey("Error"), is(false));
+            }
+            executor.shutdown();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.retries();");
+
+            // Then I should get what I expect
+            Map<String, Object> actual = result.single().get("value").asMap();
+            assertThat((long) actual.get("retries") >= 0, is(true));
+        }
+    }
+}
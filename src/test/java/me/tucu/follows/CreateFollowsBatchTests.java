@@ -0,0 +1,96 @@
+package me.tucu.follows;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.follows.FollowExceptions.ALREADY_FOLLOW;
+import static me.tucu.follows.FollowExceptions.SELF_FOLLOW;
+import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class CreateFollowsBatchTests {
+
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Follows.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @Test
+    void shouldCreateFollowsBatch()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.follows.createBatch($username, $usernames, $batch_size);",
+                    parameters("username", "jexp", "usernames", List.of("markneedham", "rich", "jexp", "not_there", "rich", "hello_there"), "batch_size", 2));
+
+            // Then I should get a row for each of them, in the order I asked
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> actual.add(e.get("value").asMap()));
+
+            assertThat(actual.size(), is(6));
+            assertThat(actual.get(0).get("Error"), is(ALREADY_FOLLOW.value.get("Error")));
+            assertThat(actual.get(0).get("username"), is("markneedham"));
+            assertThat(actual.get(1).get("username"), is("rich"));
+            assertThat(actual.get(1).containsKey("Error"), is(false));
+            assertThat(actual.get(1).containsKey("password"), is(false));
+            assertThat(actual.get(2).get("Error"), is(SELF_FOLLOW.value.get("Error")));
+            assertThat(actual.get(3).get("Error"), is(USER_NOT_FOUND.value.get("Error")));
+            assertThat(actual.get(3).get("username"), is("not_there"));
+            assertThat(actual.get(4).get("Error"), is(ALREADY_FOLLOW.value.get("Error")));
+            assertThat(actual.get(5).get("username"), is("hello_there"));
+            assertThat(actual.get(5).containsKey("Error"), is(false));
+
+            // And only the new ones should be followed
+            result = session.run( "MATCH (:User {username: 'jexp'})-[:FOLLOWS]->(user) RETURN user.username AS username " +
+                    "ORDER BY username");
+            ArrayList<String> followed = new ArrayList<>();
+            result.forEachRemaining(e -> followed.add(e.get("username").asString()));
+            assertThat(followed, is(List.of("darthvader42", "hello_there", "markneedham", "maxdemarzi", "rich")));
+        }
+    }
+
+    @Test
+    void shouldNotCreateFollowsBatchUserNotFound()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.follows.createBatch($username, $usernames);",
+                    parameters("username", "not_there", "usernames", List.of("markneedham", "rich", "jexp", "not_there", "rich", "hello_there")));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), equalTo(USER_NOT_FOUND.value));
+        }
+    }
+}
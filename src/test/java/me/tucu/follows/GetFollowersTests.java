@@ -12,6 +12,7 @@ import org.neo4j.harness.Neo4jBuilders;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static me.tucu.schema.Properties.TIME;
@@ -116,6 +117,35 @@ public class GetFollowersTests {
         }
     }
 
+    @Test
+    void shouldGetNewestFollowersFirst()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a user followed by more users than fit on a page, not in the order they followed
+            session.run( "CREATE (popular:User {username: 'popular', name: 'Popular', hash: 'hash', " +
+                    "silver: 0, gold: 0, time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "WITH popular UNWIND [3, 1, 5, 2, 6, 4] AS i " +
+                    "CREATE (popular)<-[:FOLLOWS {time: datetime('2020-05-0' + i + 'T10:00:00Z')}]-" +
+                    "(:User {username: 'fan' + i, name: 'Fan', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})").list();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.follows.followers($username, $limit);",
+                    parameters("username", "popular", "limit", 3));
+
+            // Then I should get the newest followers, newest first
+            ArrayList<Object> actual = new ArrayList<>();
+            result.forEachRemaining(e -> actual.add(e.get("value").asMap().get("username")));
+            assertThat(actual, is(List.of("fan6", "fan5", "fan4")));
+        }
+    }
+
     @Test
     void shouldNotGetFollowersNotFound()
     {
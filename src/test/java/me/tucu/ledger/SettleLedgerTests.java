@@ -0,0 +1,145 @@
+package me.tucu.ledger;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.likes.Likes;
+import me.tucu.schema.Schema;
+import me.tucu.users.Users;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class SettleLedgerTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Ledger.class)
+                .withProcedure(Likes.class)
+                .withProcedure(Users.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @Test
+    void shouldSettleCredits()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given jexp has nothing pending
+            session.run( "CALL me.tucu.ledger.settle();").list();
+            long gold = getStoredGold(session, "jexp");
+
+            // When rich likes a post of jexp
+            session.run( "CALL me.tucu.likes.create($username, $post_id);",
+                    parameters("username", "rich", "post_id", 8)).list();
+
+            // Then jexp is owed the gold without being paid yet
+            assertThat(getStoredGold(session, "jexp"), is(gold));
+            assertThat(getPendingCredits(session, "jexp"), is(1L));
+            Map<String, Object> jexp = session.run( "CALL me.tucu.users.get($username);",
+                    parameters("username", "jexp")).single().get("value").asMap();
+            assertThat(jexp.get("gold"), is(gold + 1));
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.ledger.settle($batch_size);",
+                    parameters("batch_size", 1));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), is(Map.of("credits", 1L, "users", 1L)));
+            assertThat(getStoredGold(session, "jexp"), is(gold + 1));
+            assertThat(getPendingCredits(session, "jexp"), is(0L));
+        }
+    }
+
+    @Test
+    void shouldSpendPendingCredits()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a user without any funds with a post
+            Result result = session.run( "CREATE (broke:User {username: 'broke', name: 'Broke', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})" +
+                    "-[:POSTED_ON_2020_05_01 {time: datetime('2020-05-01T10:00:00Z')}]->" +
+                    "(post:Post {status: 'Anybody?', time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "RETURN ID(post) AS id");
+            long post_id = result.single().get("id").asLong();
+
+            // When somebody likes their post
+            session.run( "CALL me.tucu.likes.create($username, $post_id);",
+                    parameters("username", "darthvader42", "post_id", post_id)).list();
+
+            // And they like a post with what they are owed
+            Map<String, Object> like = session.run( "CALL me.tucu.likes.create($username, $post_id);",
+                    parameters("username", "broke", "post_id", 8)).single().get("value").asMap();
+
+            // Then it should be paid for and nothing should be left pending
+            assertThat(like.get("silver"), is(true));
+            assertThat(getPendingCredits(session, "broke"), is(0L));
+            result = session.run( "MATCH (user:User {username: 'broke'}) RETURN user.silver AS silver");
+            assertThat(result.single().get("silver").asLong(), is(0L));
+        }
+    }
+
+    @Test
+    void shouldForfeitCreditsOfDeletedUsers()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a user that was deleted while they were still owed something
+            Result result = session.run( "CREATE (gone:User {username: 'gone', name: 'Gone', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "CREATE (:Credit {recipient_id: ID(gone), stripe: 0, gold: 1}) " +
+                    "CREATE (:Credit {recipient_id: ID(gone), stripe: 0, gold: 1}) " +
+                    "RETURN ID(gone) AS id");
+            long gone = result.single().get("id").asLong();
+            session.run( "MATCH (gone:User {username: 'gone'}) DETACH DELETE gone").consume();
+
+            // When I use the procedure
+            session.run( "CALL me.tucu.ledger.settle($batch_size);",
+                    parameters("batch_size", 1)).consume();
+
+            // Then their credits should be gone
+            result = session.run( "MATCH (credit:Credit) WHERE credit.recipient_id = $id RETURN count(*) AS count",
+                    parameters("id", gone));
+            assertThat(result.single().get("count").asLong(), is(0L));
+        }
+    }
+
+    private static long getStoredGold(Session session, String username) {
+        return session.run( "MATCH (user:User {username: $username}) RETURN user.gold AS gold",
+                parameters("username", username)).single().get("gold").asLong();
+    }
+
+    private static long getPendingCredits(Session session, String username) {
+        return session.run( "MATCH (user:User {username: $username}), (credit:Credit) " +
+                        "WHERE credit.recipient_id = ID(user) RETURN count(*) AS count",
+                parameters("username", username)).single().get("count").asLong();
+    }
+}
@@ -0,0 +1,90 @@
+package me.tucu.likes;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.likes.LikesExceptions.ALREADY_LIKES;
+import static me.tucu.posts.PostExceptions.POST_NOT_FOUND;
+import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class CreateLikesBatchTests {
+
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Likes.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @Test
+    void shouldCreateLikesBatch()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.likes.createBatch($username, $post_ids, $batch_size);",
+                    parameters("username", "rich", "post_ids", List.of(9, 8, 200, 9), "batch_size", 2));
+
+            // Then I should get a row for each of them, in the order I asked
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> actual.add(e.get("value").asMap()));
+
+            assertThat(actual.size(), is(4));
+            assertThat(actual.get(0).get("post_id"), is(9L));
+            assertThat(actual.get(0).get("liked"), is(true));
+            assertThat(actual.get(0).get("gold"), is(true));
+            assertThat(actual.get(1).get("post_id"), is(8L));
+            assertThat(actual.get(1).get("liked"), is(true));
+            assertThat(actual.get(2).get("Error"), is(POST_NOT_FOUND.value.get("Error")));
+            assertThat(actual.get(2).get("post_id"), is(200L));
+            assertThat(actual.get(3).get("Error"), is(ALREADY_LIKES.value.get("Error")));
+
+            // And each post should only be paid for once
+            result = session.run( "MATCH (user:User {username: 'rich'}) RETURN user.gold AS gold");
+            assertThat(result.single().get("gold").asLong(), is(99997L));
+        }
+    }
+
+    @Test
+    void shouldNotCreateLikesBatchUserNotFound()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.likes.createBatch($username, $post_ids);",
+                    parameters("username", "not_there", "post_ids", List.of(9, 8, 200, 9)));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), equalTo(USER_NOT_FOUND.value));
+        }
+    }
+}
@@ -0,0 +1,117 @@
+package me.tucu.likes;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.tucu.Exceptions.INSUFFICIENT_FUNDS;
+import static me.tucu.likes.LikesExceptions.ALREADY_LIKES;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class CreateLikesCoalescedTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        // Likes are committed up to 10 at a time
+        System.setProperty(LikeQueue.BATCH_SETTING, "10");
+
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Likes.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @AfterAll
+    static void cleanup() {
+        System.clearProperty(LikeQueue.BATCH_SETTING);
+    }
+
+    @Test
+    void shouldCreateLikesTogether() throws Exception
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a crowd of users, one of them without any funds
+            session.run( "UNWIND range(1, 40) AS i " +
+                    "CREATE (:User {username: 'fan' + i, name: 'Fan', hash: 'hash', silver: CASE i WHEN 40 THEN 0 ELSE 1 END, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})").list();
+
+            // When they all like the same post at once
+            ExecutorService executor = Executors.newFixedThreadPool(8);
+            ArrayList<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 1; i <= 40; i++) {
+                String username = "fan" + i;
+                futures.add(executor.submit(() -> {
+                    try (Session fan = driver.session()) {
+                        return fan.run( "CALL me.tucu.likes.create($username, $post_id);",
+                                parameters("username", username, "post_id", 8)).single().get("value").asMap();
+                    }
+                }));
+            }
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            for (Future<Map<String, Object>> future : futures) {
+                actual.add(future.get());
+            }
+            executor.shutdown();
+
+            // Then each of them should get their own result
+            for (int i = 0; i < 39; i++) {
+                assertThat(actual.get(i).get("liked"), is(true));
+                assertThat(actual.get(i).get("silver"), is(true));
+            }
+            assertThat(actual.get(39), equalTo(INSUFFICIENT_FUNDS.value));
+
+            // And only those who could pay should like it
+            Result result = session.run( "MATCH (user:User)-[:LIKES]->(post) WHERE ID(post) = 8 " +
+                    "AND user.username STARTS WITH 'fan' RETURN count(*) AS count, sum(user.silver) AS silver");
+            Record record = result.single();
+            assertThat(record.get("count").asLong(), is(39L));
+            assertThat(record.get("silver").asLong(), is(0L));
+        }
+    }
+
+    @Test
+    void shouldNotCreateLikesTogetherTwice()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I like a post I already like
+            Result result = session.run( "CALL me.tucu.likes.create($username, $post_id);",
+                    parameters("username", "maxdemarzi", "post_id", 8));
+
+            // Then I should get what I expect
+            List<Record> records = result.list();
+            assertThat(records.size(), is(1));
+            assertThat(records.get(0).get("value").asMap(), equalTo(ALREADY_LIKES.value));
+        }
+    }
+}
@@ -14,6 +14,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+import static me.tucu.schema.Properties.CURSOR;
 import static me.tucu.schema.Properties.LIKED_TIME;
 import static me.tucu.schema.Properties.TIME;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -56,6 +57,7 @@ public class GetLikesTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 modifiable.remove(LIKED_TIME);
                 actual.add(modifiable);
             });
@@ -84,6 +86,7 @@ public class GetLikesTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 modifiable.remove(LIKED_TIME);
 
                 actual.add(modifiable);
@@ -113,6 +116,7 @@ public class GetLikesTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 modifiable.remove(LIKED_TIME);
                 actual.add(modifiable);
             });
@@ -144,6 +148,7 @@ public class GetLikesTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 modifiable.remove(LIKED_TIME);
                 actual.add(modifiable);
             });
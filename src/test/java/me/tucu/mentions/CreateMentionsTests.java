@@ -3,6 +3,7 @@ package me.tucu.mentions;
 import me.tucu.fixtures.Graph;
 import me.tucu.schema.Labels;
 import me.tucu.schema.Schema;
+import me.tucu.utils.Tokens;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.neo4j.graphdb.*;
@@ -10,7 +11,6 @@ import org.neo4j.harness.Neo4j;
 import org.neo4j.harness.Neo4jBuilders;
 
 import java.time.ZonedDateTime;
-import java.util.HashMap;
 
 import static me.tucu.schema.DatedRelationshipTypes.MENTIONED_ON;
 import static me.tucu.schema.Properties.*;
@@ -46,10 +46,9 @@ public class CreateMentionsTests {
             ResourceIterator<Node> iter = tx.findNodes(Labels.Post);
             while (iter.hasNext()) {
                 Node post = iter.next();
-                HashMap<String, Object> input = new HashMap<>();
-                input.put(STATUS, post.getProperty(STATUS));
+                Tokens tokens = Tokens.of((String) post.getProperty(STATUS));
                 // When I use the method
-                Mentions.createMentions(post, input, ZonedDateTime.now(), tx);
+                Mentions.createMentions(post, tokens, ZonedDateTime.now(), tx);
             }
 
             tx.commit();
@@ -15,6 +15,7 @@ import java.util.Map;
 import static me.tucu.fixtures.Nodes.POST4_0413;
 import static me.tucu.fixtures.Nodes.POST6_0401;
 import static me.tucu.fixtures.Relationships.LAEG_POSTED_POST_2;
+import static me.tucu.schema.Properties.CURSOR;
 import static me.tucu.schema.Properties.TIME;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -57,6 +58,7 @@ public class GetMentionsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -84,6 +86,7 @@ public class GetMentionsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -113,6 +116,7 @@ public class GetMentionsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -142,6 +146,7 @@ public class GetMentionsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -171,6 +176,7 @@ public class GetMentionsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
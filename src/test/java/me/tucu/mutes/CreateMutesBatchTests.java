@@ -0,0 +1,88 @@
+package me.tucu.mutes;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.mutes.MuteExceptions.ALREADY_MUTED;
+import static me.tucu.mutes.MuteExceptions.SELF_MUTE;
+import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class CreateMutesBatchTests {
+
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Mutes.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @Test
+    void shouldCreateMutesBatch()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.mutes.createBatch($username, $usernames, $batch_size);",
+                    parameters("username", "jexp", "usernames", List.of("jerk", "jexp", "not_there", "jerk"), "batch_size", 2));
+
+            // Then I should get a row for each of them, in the order I asked
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> actual.add(e.get("value").asMap()));
+
+            assertThat(actual.size(), is(4));
+            assertThat(actual.get(0).get("username"), is("jerk"));
+            assertThat(actual.get(0).containsKey("Error"), is(false));
+            assertThat(actual.get(1).get("Error"), is(SELF_MUTE.value.get("Error")));
+            assertThat(actual.get(2).get("Error"), is(USER_NOT_FOUND.value.get("Error")));
+            assertThat(actual.get(2).get("username"), is("not_there"));
+            assertThat(actual.get(3).get("Error"), is(ALREADY_MUTED.value.get("Error")));
+
+            // And they should only be muted once
+            result = session.run( "MATCH (:User {username: 'jexp'})-[:MUTES]->(user) RETURN count(*) AS count");
+            assertThat(result.single().get("count").asLong(), is(1L));
+        }
+    }
+
+    @Test
+    void shouldNotCreateMutesBatchUserNotFound()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.mutes.createBatch($username, $usernames);",
+                    parameters("username", "not_there", "usernames", List.of("jerk", "jexp", "not_there", "jerk")));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), equalTo(USER_NOT_FOUND.value));
+        }
+    }
+}
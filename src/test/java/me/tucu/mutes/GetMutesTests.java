@@ -12,6 +12,7 @@ import org.neo4j.harness.Neo4jBuilders;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static me.tucu.schema.Properties.TIME;
@@ -116,6 +117,35 @@ public class GetMutesTests {
         }
     }
 
+    @Test
+    void shouldGetNewestMutedFirst()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a user muting more users than fit on a page, not in the order they muted them
+            session.run( "CREATE (grumpy:User {username: 'grumpy', name: 'Grumpy', hash: 'hash', " +
+                    "silver: 0, gold: 0, time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "WITH grumpy UNWIND [3, 1, 5, 2, 6, 4] AS i " +
+                    "CREATE (grumpy)-[:MUTES {time: datetime('2020-05-0' + i + 'T10:00:00Z')}]->" +
+                    "(:User {username: 'noisy' + i, name: 'Noisy', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})").list();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.mutes.get($username, $limit);",
+                    parameters("username", "grumpy", "limit", 3));
+
+            // Then I should get the most recently muted users, newest first
+            ArrayList<Object> actual = new ArrayList<>();
+            result.forEachRemaining(e -> actual.add(e.get("value").asMap().get("username")));
+            assertThat(actual, is(List.of("noisy6", "noisy5", "noisy4")));
+        }
+    }
+
     @Test
     void shouldNotGetMutedNotFound()
     {
@@ -0,0 +1,86 @@
+package me.tucu.posts;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.Map;
+
+import static me.tucu.schema.Properties.STATUS;
+import static me.tucu.schema.Properties.USERNAME;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class BackfillAuthorsTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Posts.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @Test
+    void shouldBackfillAuthors()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.posts.backfill($batch_size);",
+                    parameters("batch_size", 3));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), is(Map.of("posts", 8L, "conversations", 0L)));
+
+            // And every post should know who wrote it
+            result = session.run( "MATCH (user:User)-[r]->(post:Post) WHERE type(r) STARTS WITH 'POSTED_ON_' " +
+                    "AND (post.author_id IS NULL OR post.author_id <> ID(user)) RETURN count(*) AS count");
+            assertThat(result.single().get("count").asLong(), is(0L));
+
+            // When I use the procedure again
+            result = session.run( "CALL me.tucu.posts.backfill();");
+
+            // Then there should be nothing left to do
+            assertThat(result.single().get("value").asMap(), is(Map.of("posts", 0L, "conversations", 0L)));
+        }
+    }
+
+    @Test
+    void shouldCreatePostWithAuthor()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I create a post
+            Map<String, Object> post = session.run( "CALL me.tucu.posts.create($parameters);",
+                    parameters("parameters", Map.of(USERNAME, "maxdemarzi", STATUS, "Who wrote this?")))
+                    .single().get("value").asMap();
+
+            // Then it should know who wrote it, without showing it
+            assertThat(post.get("status"), is("Who wrote this?"));
+            assertThat(post.containsKey("author_id"), is(false));
+            Result result = session.run( "MATCH (user:User {username: 'maxdemarzi'}), (post:Post {status: 'Who wrote this?'}) " +
+                    "WHERE post.author_id = ID(user) RETURN count(*) AS count");
+            assertThat(result.single().get("count").asLong(), is(1L));
+        }
+    }
+}
@@ -11,7 +11,10 @@ import org.neo4j.harness.Neo4j;
 import org.neo4j.harness.Neo4jBuilders;
 
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import static me.tucu.Exceptions.INVALID_INPUT;
 import static me.tucu.posts.PostExceptions.EMPTY_STATUS;
@@ -338,6 +341,38 @@ public class CreatePostTests {
         }
     }
 
+    @Test
+    void shouldCreatePostWithTagsAndMentions()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a post that created a tag
+            session.run( "CALL me.tucu.posts.create($parameters);",
+                    parameters("parameters", WITH_A_TAG_INPUT)).list();
+
+            // When I use the procedure
+            session.run( "CALL me.tucu.posts.create($parameters);",
+                    parameters("parameters", WITH_TAGS_AND_MENTIONS_INPUT)).list();
+
+            // Then each tag and mention should be created once, skipping the ones too short
+            Result result = session.run( "MATCH (post:Post {status: $status})-->(other) " +
+                    "RETURN collect(CASE WHEN other:Tag THEN other.name ELSE other.username END) AS others",
+                    parameters("status", WITH_TAGS_AND_MENTIONS_INPUT.get("status")));
+            List<Object> others = result.single().get("others").asList();
+            assertThat(others.size(), is(3));
+            assertThat(new HashSet<>(others), is(Set.of("something", "graphs", "jexp")));
+
+            // And the tag should not be created twice
+            result = session.run( "MATCH (tag:Tag {name: 'something'}) RETURN count(*) AS count");
+            assertThat(result.single().get("count").asLong(), is(1L));
+        }
+    }
+
     private static final HashMap<String, Object> INPUT = new HashMap<>() {{
         put("username", "maxdemarzi");
         put("status", "Just saying something");
@@ -348,6 +383,11 @@ public class CreatePostTests {
         put("status", "Just saying #something");
     }};
 
+    private static final HashMap<String, Object> WITH_TAGS_AND_MENTIONS_INPUT = new HashMap<>() {{
+        put("username", "maxdemarzi");
+        put("status", "#Something with @jexp and @JEXP about #something, #graphs and #ab");
+    }};
+
     private static final HashMap<String, Object> WITH_A_MENTION_INPUT = new HashMap<>() {{
         put("username", "maxdemarzi");
         put("status", "Just saying something to @jexp");
@@ -78,6 +78,56 @@ public class CreateRepostTests {
             modifiable.remove(TIME);
 
             assertThat(modifiable, is(EXPECTED));
+
+            // And the repost should know the advertisement and product it came from
+            result = session.run( "MATCH (:User {username: 'darthvader42'})-[r]->(repost:Post {post_id: 12}), " +
+                    "(product:Product {id: 'mystuff'}) " +
+                    "WHERE repost.root_id = 12 AND repost.product_id = ID(product) RETURN count(*) AS count");
+            assertThat(result.single().get("count").asLong(), is(1L));
+        }
+    }
+
+    @Test
+    void shouldKeepCountOfRepostsOfRegularPosts()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a post that was reposted and liked before we kept count
+            long post_id = session.run( "MATCH (post:Post {status:'Hello World!'}) RETURN ID(post) AS id")
+                    .single().get("id").asLong();
+
+            // When it is reposted again
+            Map<String, Object> repost = session.run( "CALL me.tucu.posts.repost($post_id, $username);",
+                    parameters("username", "rich", "post_id", post_id)).single().get("value").asMap();
+
+            // Then the post should count both reposts, and nothing else
+            assertThat(repost.get("reposts"), is(2L));
+            Result result = session.run( "MATCH (post:Post) WHERE ID(post) = $post_id RETURN post.reposts AS reposts",
+                    parameters("post_id", post_id));
+            assertThat(result.single().get("reposts").asLong(), is(2L));
+
+            // When it is reposted once more
+            repost = session.run( "CALL me.tucu.posts.repost($post_id, $username);",
+                    parameters("username", "darthvader42", "post_id", post_id)).single().get("value").asMap();
+
+            // Then the count should go up
+            assertThat(repost.get("reposts"), is(3L));
+            result = session.run( "MATCH (post:Post) WHERE ID(post) = $post_id RETURN post.reposts AS reposts",
+                    parameters("post_id", post_id));
+            assertThat(result.single().get("reposts").asLong(), is(3L));
+
+            // When a new post is created
+            session.run( "CALL me.tucu.posts.create($parameters);",
+                    parameters("parameters", Map.of("username", "maxdemarzi", "status", "Count me in"))).consume();
+
+            // Then it should start counting from nothing
+            result = session.run( "MATCH (post:Post {status:'Count me in'}) RETURN post.reposts AS reposts");
+            assertThat(result.single().get("reposts").asLong(), is(0L));
         }
     }
 
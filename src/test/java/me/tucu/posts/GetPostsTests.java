@@ -10,13 +10,19 @@ import org.neo4j.harness.Neo4jBuilders;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
+import static me.tucu.Exceptions.INVALID_CURSOR;
 import static me.tucu.fixtures.Nodes.POST4_0413;
 import static me.tucu.fixtures.Nodes.POST6_0401;
 import static me.tucu.fixtures.Relationships.LAEG_POSTED_POST_2;
 import static me.tucu.fixtures.Relationships.MAX_POSTED_POST_3;
+import static me.tucu.schema.Properties.CURSOR;
+import static me.tucu.schema.Properties.STATUS;
 import static me.tucu.schema.Properties.TIME;
+import static me.tucu.schema.Properties.USERNAME;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
@@ -58,6 +64,7 @@ public class GetPostsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -85,6 +92,7 @@ public class GetPostsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -114,6 +122,7 @@ public class GetPostsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -143,6 +152,7 @@ public class GetPostsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -172,6 +182,7 @@ public class GetPostsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -179,6 +190,169 @@ public class GetPostsTests {
         }
     }
 
+    @Test
+    void shouldGetPostsSecondUserReposted()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.posts.get($username, $limit, $since, $username2);",
+                    parameters("username", "maxdemarzi", "limit", 25, "since", -1, "username2", "laexample"));
+
+            // Then I should get what I expect
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> {
+                Map<String, Object> record = e.get("value").asMap();
+                HashMap<String, Object> modifiable = new HashMap<>(record);
+                modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
+                actual.add(modifiable);
+            });
+
+            assertThat(actual, is(EXPECTED3));
+        }
+    }
+
+    @Test
+    void shouldGetPostsWithCursor()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I get the first page
+            Result result = session.run( "CALL me.tucu.posts.get($username, $limit);",
+                    parameters("username", "maxdemarzi", "limit", 1));
+            String cursor = (String) result.single().get("value").asMap().get(CURSOR);
+
+            // And I use its cursor to get the next page
+            result = session.run( "CALL me.tucu.posts.get($username, $limit, $since, $username2, $cursor);",
+                    parameters("username", "maxdemarzi", "limit", 1, "since", -1, "username2", "", "cursor", cursor));
+
+            // Then I should get what I expect
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> {
+                Map<String, Object> record = e.get("value").asMap();
+                HashMap<String, Object> modifiable = new HashMap<>(record);
+                modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
+                actual.add(modifiable);
+            });
+
+            assertThat(actual, is(List.of(EXPECTED.get(1))));
+        }
+    }
+
+    @Test
+    void shouldGetPostsWithCursorOutsideUtc()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I page through posts written in a zone behind UTC one at a time
+            ArrayList<Object> actual = new ArrayList<>();
+            String cursor = "";
+            for (int page = 0; page < 3; page++) {
+                Result result = session.run( "CALL me.tucu.posts.get($username, $limit, $since, $username2, $cursor);",
+                        parameters("username", "markneedham", "limit", 1, "since", -1, "username2", "", "cursor", cursor));
+                List<Record> records = result.list();
+                if (records.isEmpty()) {
+                    break;
+                }
+                Map<String, Object> record = records.get(0).get("value").asMap();
+                actual.add(record.get(STATUS));
+                cursor = (String) record.get(CURSOR);
+            }
+
+            // Then each page should move on to the next post
+            assertThat(actual, is(List.of("Howdy from Chicago", "Still in Chicago")));
+        }
+    }
+
+    @Test
+    void shouldNotGetPostsInvalidCursor()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.posts.get($username, $limit, $since, $username2, $cursor);",
+                    parameters("username", "maxdemarzi", "limit", 1, "since", -1, "username2", "", "cursor", "not a cursor"));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), equalTo(INVALID_CURSOR.value));
+        }
+    }
+
+    @Test
+    void shouldGetOlderPostsAfterPosting()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When laexample posts for the first time since the days they posted on were kept
+            session.run( "CALL me.tucu.posts.create($parameters);",
+                    parameters("parameters", Map.of(USERNAME, "laexample", STATUS, "Newer post")));
+
+            Result result = session.run( "CALL me.tucu.posts.get($username);",
+                    parameters("username", "laexample"));
+
+            // Then I should still get their older posts
+            ArrayList<Object> actual = new ArrayList<>();
+            result.forEachRemaining(e -> actual.add(e.get("value").asMap().get(STATUS)));
+
+            assertThat(actual, is(List.of("Newer post", "Hi @jexp")));
+        }
+    }
+
+    @Test
+    void shouldGetPostsWithFields()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure asking for a few fields, and one we never hand out
+            Result result = session.run( "CALL me.tucu.posts.get($username, $limit, $since, $username2, $cursor, $fields);",
+                    parameters("username", "maxdemarzi", "limit", 25, "since", -1, "username2", "laexample",
+                            "cursor", "", "fields", List.of("status", "liked", "author_id")));
+
+            // Then I should only get those, and the cursor to page with
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> actual.add(e.get("value").asMap()));
+
+            assertThat(actual.size(), is(EXPECTED3.size()));
+            for (int i = 0; i < actual.size(); i++) {
+                assertThat(actual.get(i).keySet(), is(Set.of("status", "liked", "cursor")));
+                assertThat(actual.get(i).get("status"), is(EXPECTED3.get(i).get("status")));
+                assertThat(actual.get(i).get("liked"), is(EXPECTED3.get(i).get("liked")));
+            }
+        }
+    }
+
     @Test
     void shouldNotGetPostsUserNotFound()
     {
@@ -239,7 +413,13 @@ public class GetPostsTests {
                     "CREATE (max)-[:LIKES {time: datetime('2020-04-12T11:55:00.000+0100') }]->(post2)" +
                     "CREATE (jexp)-[:MUTES {time: datetime('2020-03-01T12:44:08.556+0100') }]->(jerk)" +
                     "CREATE (jexp)-[:FOLLOWS {time: datetime('2020-03-01T12:44:08.556+0100') }]->(max)" +
-                    "CREATE (max)-[:MUTES {time: datetime('2020-03-01T12:44:08.556+0100') }]->(jerk)" ;
+                    "CREATE (max)-[:MUTES {time: datetime('2020-03-01T12:44:08.556+0100') }]->(jerk)" +
+                    "CREATE (chicago1:Post {status:'Still in Chicago', " +
+                    "time: datetime('2020-04-13T10:00:00.000[America/Chicago]')})" +
+                    "CREATE (chicago2:Post {status:'Howdy from Chicago', " +
+                    "time: datetime('2020-04-14T10:00:00.000[America/Chicago]')})" +
+                    "CREATE (mark)-[:POSTED_ON_2020_04_13 {time: datetime('2020-04-13T10:00:00.000[America/Chicago]') }]->(chicago1)" +
+                    "CREATE (mark)-[:POSTED_ON_2020_04_14 {time: datetime('2020-04-14T10:00:00.000[America/Chicago]') }]->(chicago2)" ;
 
     private static final ArrayList<HashMap<String, Object>> EXPECTED = new ArrayList<>() {{
         add(new HashMap<>() {{
@@ -272,4 +452,27 @@ public class GetPostsTests {
             put("reposted", false);
         }});
     }};
+
+    private static final ArrayList<HashMap<String, Object>> EXPECTED3 = new ArrayList<>() {{
+        add(new HashMap<>() {{
+            put("username", "maxdemarzi");
+            put("name", "Max De Marzi");
+            put("hash", "0bd90aeb51d5982062f4f303a62df935");
+            put("status", "Stalking @jexp");
+            put("likes", 0L);
+            put("reposts", 0L);
+            put("liked", false);
+            put("reposted", false);
+        }});
+        add(new HashMap<>() {{
+            put("username", "maxdemarzi");
+            put("name", "Max De Marzi");
+            put("hash", "0bd90aeb51d5982062f4f303a62df935");
+            put("status", "Hello @jexp");
+            put("likes", 0L);
+            put("reposts", 1L);
+            put("liked", false);
+            put("reposted", true);
+        }});
+    }};
 }
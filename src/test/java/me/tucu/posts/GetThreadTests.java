@@ -0,0 +1,303 @@
+package me.tucu.posts;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.Exceptions.INVALID_CURSOR;
+import static me.tucu.posts.PostExceptions.POST_NOT_FOUND;
+import static me.tucu.schema.Properties.STATUS;
+import static me.tucu.schema.Properties.USERNAME;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class GetThreadTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Posts.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @Test
+    void shouldGetThread()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a reply, a reply to the reply, and another reply
+            long first = reply(session, 8, "First reply");
+            long second = reply(session, first, "Reply to the first reply");
+            reply(session, 8, "Second reply");
+
+            // When I use the procedure on the reply to the reply
+            List<Map<String, Object>> actual = getThread(session, second, 25, "");
+
+            // Then I should get the whole conversation
+            assertThat(getStatuses(actual), is(List.of("First reply", "Reply to the first reply", "Second reply")));
+            assertThat(actual.get(0).get("in_reply_to"), is(8L));
+            assertThat(actual.get(1).get("in_reply_to"), is(first));
+            assertThat(actual.get(1).get("username"), is("maxdemarzi"));
+            assertThat(actual.get(1).containsKey("conversation_id"), is(false));
+
+            // When I page through it
+            List<Map<String, Object>> page = getThread(session, 8, 2, "");
+            String cursor = (String) page.get(1).get("cursor");
+            List<Map<String, Object>> next = getThread(session, 8, 2, cursor);
+
+            // Then I should get what I expect
+            assertThat(getStatuses(page), is(List.of("First reply", "Reply to the first reply")));
+            assertThat(getStatuses(next), is(List.of("Second reply")));
+        }
+    }
+
+    @Test
+    void shouldGetThreadStartedBeforeConversations()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given replies from before replies knew their conversation
+            Result result = session.run( "MATCH (jexp:User {username: 'jexp'}), (post:Post) WHERE ID(post) = 9 " +
+                    "CREATE (jexp)-[:POSTED_ON_2020_05_01 {time: datetime('2020-05-01T10:00:00Z')}]->" +
+                    "(old:Post {status: 'Old reply', time: datetime('2020-05-01T10:00:00Z')})" +
+                    "-[:REPLIED_TO {time: datetime('2020-05-01T10:00:00Z')}]->(post) " +
+                    "CREATE (jexp)-[:POSTED_ON_2020_05_02 {time: datetime('2020-05-02T10:00:00Z')}]->" +
+                    "(older:Post {status: 'Old reply to the old reply', time: datetime('2020-05-02T10:00:00Z')})" +
+                    "-[:REPLIED_TO {time: datetime('2020-05-02T10:00:00Z')}]->(old) " +
+                    "RETURN ID(older) AS id");
+            long older = result.single().get("id").asLong();
+
+            // When I use the procedure
+            List<Map<String, Object>> actual = getThread(session, older, 25, "");
+
+            // Then I should get what I expect
+            assertThat(getStatuses(actual), is(List.of("Old reply", "Old reply to the old reply")));
+
+            // When somebody replies to it now
+            reply(session, older, "New reply");
+            actual = getThread(session, 9, 25, "");
+
+            // Then the old replies should still be part of the conversation
+            assertThat(getStatuses(actual), is(List.of("Old reply", "Old reply to the old reply", "New reply")));
+        }
+    }
+
+    @Test
+    void shouldKeepOldConversationsByDayOnceBackfilled()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a post with replies from before replies were kept on their conversation
+            Result result = session.run( "MATCH (jexp:User {username: 'jexp'}) " +
+                    "CREATE (jexp)-[:POSTED_ON_2020_06_01 {time: datetime('2020-06-01T10:00:00Z')}]->" +
+                    "(post:Post {status: 'Old conversation', time: datetime('2020-06-01T10:00:00Z')}) " +
+                    "CREATE (jexp)-[:POSTED_ON_2020_06_02 {time: datetime('2020-06-02T10:00:00Z')}]->" +
+                    "(old:Post {status: 'Old answer', time: datetime('2020-06-02T10:00:00Z')})" +
+                    "-[:REPLIED_TO {time: datetime('2020-06-02T10:00:00Z')}]->(post) " +
+                    "CREATE (jexp)-[:POSTED_ON_2020_06_03 {time: datetime('2020-06-03T10:00:00Z')}]->" +
+                    "(older:Post {status: 'Old answer to the old answer', time: datetime('2020-06-03T10:00:00Z')})" +
+                    "-[:REPLIED_TO {time: datetime('2020-06-03T10:00:00Z')}]->(old) " +
+                    "RETURN ID(post) AS id, ID(older) AS older");
+            Record record = result.single();
+            long post = record.get("id").asLong();
+            long older = record.get("older").asLong();
+
+            // When somebody replies to it
+            reply(session, older, "New answer");
+
+            // Then the reply should not keep every old reply on the conversation while it replies
+            assertThat(getRepliedOn(session, post), is(0L));
+            assertThat(getStatuses(getThread(session, post, 25, "")),
+                    is(List.of("Old answer", "Old answer to the old answer", "New answer")));
+
+            // When the backfill runs
+            session.run( "CALL me.tucu.posts.backfill($batch_size);", parameters("batch_size", 1)).consume();
+
+            // Then every reply should be kept on the conversation by day, and the thread should stay the same
+            assertThat(getRepliedOn(session, post), is(3L));
+            assertThat(getStatuses(getThread(session, post, 25, "")),
+                    is(List.of("Old answer", "Old answer to the old answer", "New answer")));
+
+            // When somebody replies to it again
+            reply(session, post, "Newest answer");
+
+            // Then the reply should be kept on the conversation right away
+            assertThat(getRepliedOn(session, post), is(4L));
+            assertThat(getStatuses(getThread(session, post, 25, "")),
+                    is(List.of("Old answer", "Old answer to the old answer", "New answer", "Newest answer")));
+        }
+    }
+
+    @Test
+    void shouldGetThreadDownToMaxDepth()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a post with a chain of replies, each to the one before
+            Result result = session.run( "CREATE (chatty:User {username: 'chatty', name: 'Chatty', hash: 'hash', " +
+                    "silver: 100, gold: 0, time: datetime('2020-05-01T10:00:00Z')})" +
+                    "-[:POSTED_ON_2020_05_01 {time: datetime('2020-05-01T10:00:00Z')}]->" +
+                    "(post:Post {status: 'Start of a chain', time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "RETURN ID(post) AS id");
+            long post = result.single().get("id").asLong();
+            long last = post;
+            for (int i = 1; i <= 18; i++) {
+                last = reply(session, "chatty", last, "Chain link " + i);
+            }
+
+            // When I use the procedure
+            List<Map<String, Object>> actual = getThread(session, post, 25, "");
+
+            // Then I should only get the replies down to the deepest level
+            assertThat(actual.size(), is(16));
+            assertThat(actual.get(15).get("status"), is("Chain link 16"));
+        }
+    }
+
+    @Test
+    void shouldKeepDeepRepliesInTheirConversation()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a chain of 17 replies from before replies knew their conversation
+            Result result = session.run( "CREATE (deep:User {username: 'deep', name: 'Deep', hash: 'hash', " +
+                    "silver: 100, gold: 0, time: datetime('2020-05-01T10:00:00Z')})" +
+                    "-[:POSTED_ON_2020_05_01 {time: datetime('2020-05-01T10:00:00Z')}]->" +
+                    "(post:Post {status: 'Start of a deep chain', time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "RETURN ID(post) AS id");
+            long post = result.single().get("id").asLong();
+            long last = post;
+            for (int i = 1; i <= 17; i++) {
+                last = session.run( "MATCH (deep:User {username: 'deep'}), (post:Post) WHERE ID(post) = $post_id " +
+                        "CREATE (deep)-[:POSTED_ON_2020_05_01 {time: datetime('2020-05-01T10:00:00Z') + duration({minutes: $i})}]->" +
+                        "(reply:Post {status: 'Old link ' + $i, time: datetime('2020-05-01T10:00:00Z') + duration({minutes: $i})})" +
+                        "-[:REPLIED_TO {time: datetime('2020-05-01T10:00:00Z') + duration({minutes: $i})}]->(post) " +
+                        "RETURN ID(reply) AS id", parameters("post_id", last, "i", i)).single().get("id").asLong();
+            }
+
+            // When somebody replies to the deepest one
+            long reply = reply(session, "deep", last, "Deepest link");
+
+            // Then it should be part of the conversation of the first post, and not of one in the middle
+            result = session.run( "MATCH (reply:Post) WHERE ID(reply) = $reply_id RETURN reply.conversation_id AS id",
+                    parameters("reply_id", reply));
+            assertThat(result.single().get("id").asLong(), is(post));
+
+            // And the thread should only have the replies down to the deepest level
+            List<Map<String, Object>> actual = getThread(session, reply, 25, "");
+            assertThat(actual.size(), is(16));
+            assertThat(actual.get(15).get("status"), is("Old link 16"));
+        }
+    }
+
+    @Test
+    void shouldNotGetThreadPostNotFound()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.posts.thread($post_id);",
+                    parameters("post_id", 200));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), equalTo(POST_NOT_FOUND.value));
+        }
+    }
+
+    @Test
+    void shouldNotGetThreadInvalidCursor()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.posts.thread($post_id, $limit, $cursor);",
+                    parameters("post_id", 8, "limit", 25, "cursor", "not a cursor"));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), equalTo(INVALID_CURSOR.value));
+        }
+    }
+
+    private static long reply(Session session, long post_id, String status) {
+        return reply(session, "maxdemarzi", post_id, status);
+    }
+
+    private static long reply(Session session, String username, long post_id, String status) {
+        session.run( "CALL me.tucu.posts.reply($post_id, $parameters);",
+                parameters("post_id", post_id, "parameters", Map.of(USERNAME, username, STATUS, status))).list();
+        return session.run( "MATCH (post:Post {status: $status}) RETURN ID(post) AS id",
+                parameters("status", status)).single().get("id").asLong();
+    }
+
+    private static long getRepliedOn(Session session, long post_id) {
+        return session.run( "MATCH (reply:Post)-[r]->(post:Post) WHERE ID(post) = $post_id " +
+                        "AND type(r) STARTS WITH 'REPLIED_ON_' RETURN count(r) AS count",
+                parameters("post_id", post_id)).single().get("count").asLong();
+    }
+
+    private static List<Map<String, Object>> getThread(Session session, long post_id, long limit, String cursor) {
+        Result result = session.run( "CALL me.tucu.posts.thread($post_id, $limit, $cursor);",
+                parameters("post_id", post_id, "limit", limit, "cursor", cursor));
+        ArrayList<Map<String, Object>> thread = new ArrayList<>();
+        result.forEachRemaining(e -> thread.add(e.get("value").asMap()));
+        return thread;
+    }
+
+    private static List<Object> getStatuses(List<Map<String, Object>> thread) {
+        ArrayList<Object> statuses = new ArrayList<>();
+        for (Map<String, Object> reply : thread) {
+            statuses.add(reply.get("status"));
+        }
+        return statuses;
+    }
+}
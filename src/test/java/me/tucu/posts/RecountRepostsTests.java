@@ -0,0 +1,117 @@
+package me.tucu.posts;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.posts.PostExceptions.POST_NOT_AN_ADVERTISEMENT;
+import static me.tucu.posts.PostExceptions.POST_NOT_FOUND;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class RecountRepostsTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Posts.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @Test
+    void shouldRecountReposts()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When the advertisement is reposted by two users
+            Map<String, Object> repost = session.run( "CALL me.tucu.posts.repost($post_id, $username);",
+                    parameters("username", "maxdemarzi", "post_id", 12)).single().get("value").asMap();
+            session.run( "CALL me.tucu.posts.repost($post_id, $username);",
+                    parameters("username", "darthvader42", "post_id", 12)).list();
+
+            // Then the advertisement should keep count of them
+            assertThat(repost.get("reposts"), is(1L));
+            Result result = session.run( "MATCH (post:Post) WHERE ID(post) = 12 RETURN post.reposts AS reposts");
+            assertThat(result.single().get("reposts").asLong(), is(2L));
+
+            // When the count is wrong and I use the procedure
+            session.run( "MATCH (post:Post) WHERE ID(post) = 12 SET post.reposts = 7").list();
+            result = session.run( "CALL me.tucu.posts.recount($post_id);",
+                    parameters("post_id", 12));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), is(EXPECTED));
+
+            // When the count is wrong and I recount every advertisement
+            session.run( "MATCH (post:Post) WHERE ID(post) = 12 SET post.reposts = 7").list();
+            List<Record> records = session.run( "CALL me.tucu.posts.recount();").list();
+
+            // Then I should get what I expect
+            assertThat(records.size(), is(1));
+            assertThat(records.get(0).get("value").asMap(), is(EXPECTED));
+        }
+    }
+
+    @Test
+    void shouldNotRecountRepostsPostNotFound()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.posts.recount($post_id);",
+                    parameters("post_id", 200));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), equalTo(POST_NOT_FOUND.value));
+        }
+    }
+
+    @Test
+    void shouldNotRecountRepostsPostNotAnAdvertisement()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.posts.recount($post_id);",
+                    parameters("post_id", 8));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), equalTo(POST_NOT_AN_ADVERTISEMENT.value));
+        }
+    }
+
+    private static final HashMap<String, Object> EXPECTED = new HashMap<>() {{
+        put("post_id", 12L);
+        put("reposts", 2L);
+    }};
+}
@@ -1,6 +1,7 @@
 package me.tucu.products;
 
 import me.tucu.fixtures.Nodes;
+import me.tucu.posts.Posts;
 import me.tucu.schema.Schema;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
@@ -32,6 +33,7 @@ public class PurchaseProductTests {
                 .withDisabledServer()
                 .withProcedure(Schema.class)
                 .withProcedure(Products.class)
+                .withProcedure(Posts.class)
                 .withFixture(FIXTURE)
                 .build();
     }
@@ -82,6 +84,123 @@ public class PurchaseProductTests {
         }
     }
 
+    @Test
+    void shouldPurchaseProductFromRepostOfMarketer()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given rich bought the product and reposted the repost of jexp
+            session.run( "CALL me.tucu.products.purchase($username, $post_id);",
+                    parameters("username", "rich", "post_id", 8)).list();
+            session.run( "CALL me.tucu.posts.repost($post_id, $username);",
+                    parameters("username", "rich", "post_id", 10)).list();
+
+            // Then the repost should know who gets a commission
+            Result result = session.run( "MATCH (rich:User {username: 'rich'})-[r]->(repost:Post {post_id: 10}), " +
+                    "(jexp:User {username: 'jexp'}), (laeg:User {username: 'laexample'}), (max:User {username: 'maxdemarzi'}) " +
+                    "WHERE repost.marketers = [ID(rich), ID(jexp), ID(laeg), ID(max)] RETURN ID(repost) AS id");
+            long repost = result.single().get("id").asLong();
+
+            // When rich buys the product again from their repost
+            Map<String, Long> before = getGold(session);
+            session.run( "CALL me.tucu.products.purchase($username, $post_id);",
+                    parameters("username", "rich", "post_id", repost)).list();
+            Map<String, Long> after = getGold(session);
+
+            // Then everyone in the chain should get their commission
+            assertThat(after.get("rich") - before.get("rich"), is(-1000L + 140L));
+            assertThat(after.get("jexp") - before.get("jexp"), is(29L));
+            assertThat(after.get("laexample") - before.get("laexample"), is(22L));
+            assertThat(after.get("maxdemarzi") - before.get("maxdemarzi"), is(700L + 9L));
+        }
+    }
+
+    @Test
+    void shouldPurchaseProductWithPendingCredits()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a user whose gold has not been settled yet
+            session.run( "CREATE (owed:User {username: 'owed', name: 'Owed', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "CREATE (:Credit {recipient_id: ID(owed), stripe: 0, gold: 600}) " +
+                    "CREATE (:Credit {recipient_id: ID(owed), stripe: 1, gold: 600})").consume();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.products.purchase($username, $post_id);",
+                    parameters("username", "owed", "post_id", 8));
+
+            // Then I should get what I expect
+            Map<String, Object> record = result.single().get("value").asMap();
+            HashMap<String, Object> modifiable = new HashMap<>(record);
+            modifiable.remove(TIME);
+            assertThat(modifiable, is(EXPECTED));
+
+            // And they should be left with the rest of what they were owed
+            result = session.run( "MATCH (owed:User {username: 'owed'}) OPTIONAL MATCH (credit:Credit) " +
+                    "WHERE credit.recipient_id = ID(owed) RETURN owed.gold AS gold, count(credit) AS credits");
+            Record owed = result.single();
+            assertThat(owed.get("gold").asLong(), is(200L));
+            assertThat(owed.get("credits").asLong(), is(0L));
+        }
+    }
+
+    @Test
+    void shouldPurchaseProductFromRepostOfDeletedMarketer()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a repost of the advertisement by a user that has since been deleted
+            Result result = session.run( "MATCH (max:User {username: 'maxdemarzi'}), (post5:Post {status: 'Please buy $mystuff'}) " +
+                    "CREATE (gone:User {username: 'gone', name: 'Gone', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "CREATE (gone)-[:REPOSTED_ON_2020_05_02 {time: datetime('2020-05-02T10:00:00Z')}]->" +
+                    "(repost:Post {post_id: ID(post5), username: 'gone', time: datetime('2020-05-02T10:00:00Z'), " +
+                    "root_id: ID(post5), marketers: [ID(gone), ID(max)]})-[:REPOSTED]->(post5) " +
+                    "RETURN ID(repost) AS id");
+            long repost = result.single().get("id").asLong();
+            session.run( "MATCH (gone:User {username: 'gone'}) DETACH DELETE gone").consume();
+
+            // When somebody buys the product from it
+            Map<String, Long> before = getGold(session);
+            result = session.run( "CALL me.tucu.products.purchase($username, $post_id);",
+                    parameters("username", "rich", "post_id", repost));
+
+            // Then the purchase should go through and the rest of the chain should still be paid
+            Map<String, Object> record = result.single().get("value").asMap();
+            HashMap<String, Object> modifiable = new HashMap<>(record);
+            modifiable.remove(TIME);
+            assertThat(modifiable, is(EXPECTED));
+
+            Map<String, Long> after = getGold(session);
+            assertThat(after.get("rich") - before.get("rich"), is(-1000L));
+            assertThat(after.get("maxdemarzi") - before.get("maxdemarzi"), is(700L + 60L));
+        }
+    }
+
+    private static Map<String, Long> getGold(Session session) {
+        HashMap<String, Long> gold = new HashMap<>();
+        for (Record record : session.run( "MATCH (user:User) RETURN user.username AS username, user.gold AS gold").list()) {
+            gold.put(record.get("username").asString(), record.get("gold").asLong());
+        }
+        return gold;
+    }
+
     @Test
     void shouldNotPurchaseProductUserNotFound()
     {
@@ -4,6 +4,7 @@ import me.tucu.fixtures.Nodes;
 import me.tucu.schema.Labels;
 import me.tucu.schema.RelationshipTypes;
 import me.tucu.schema.Schema;
+import me.tucu.utils.Tokens;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.neo4j.graphdb.Direction;
@@ -13,7 +14,6 @@ import org.neo4j.harness.Neo4j;
 import org.neo4j.harness.Neo4jBuilders;
 
 import java.time.ZonedDateTime;
-import java.util.HashMap;
 
 import static me.tucu.fixtures.Nodes.PRODUCT;
 import static me.tucu.schema.Properties.STATUS;
@@ -44,11 +44,10 @@ public class CreatePromotesTests {
             // Given I've started Neo4j with the procedure
             //       which my 'neo4j' rule above does.
             Node post = tx.findNode(Labels.Post, "test", 1);
-            HashMap<String, Object> input = new HashMap<>();
-            input.put(STATUS, post.getProperty(STATUS));
+            Tokens tokens = Tokens.of((String) post.getProperty(STATUS));
 
             // When I use the method
-            Promotes.createPromotes(post, input, ZonedDateTime.now(), tx);
+            Promotes.createPromotes(post, tokens, ZonedDateTime.now(), tx);
 
             tx.commit();
         }
@@ -69,11 +68,10 @@ public class CreatePromotesTests {
             // Given I've started Neo4j with the procedure
             //       which my 'neo4j' rule above does.
             Node post = tx.findNode(Labels.Post, "test", 2);
-            HashMap<String, Object> input = new HashMap<>();
-            input.put(STATUS, post.getProperty(STATUS));
+            Tokens tokens = Tokens.of((String) post.getProperty(STATUS));
 
             // When I use the method
-            Node product = Promotes.createPromotes(post, input, ZonedDateTime.now(), tx);
+            Node product = Promotes.createPromotes(post, tokens, ZonedDateTime.now(), tx);
 
             // Then I should get what I expect
             assertThat(product ,is(nullValue()));
@@ -96,11 +94,10 @@ public class CreatePromotesTests {
             // Given I've started Neo4j with the procedure
             //       which my 'neo4j' rule above does.
             Node post = tx.findNode(Labels.Post, "test", 3);
-            HashMap<String, Object> input = new HashMap<>();
-            input.put(STATUS, post.getProperty(STATUS));
+            Tokens tokens = Tokens.of((String) post.getProperty(STATUS));
 
             // When I use the method
-            Promotes.createPromotes(post, input, ZonedDateTime.now(), tx);
+            Promotes.createPromotes(post, tokens, ZonedDateTime.now(), tx);
 
             tx.commit();
         }
@@ -121,11 +118,10 @@ public class CreatePromotesTests {
             // Given I've started Neo4j with the procedure
             //       which my 'neo4j' rule above does.
             Node post = tx.findNode(Labels.Post, "test", 4);
-            HashMap<String, Object> input = new HashMap<>();
-            input.put(STATUS, post.getProperty(STATUS));
+            Tokens tokens = Tokens.of((String) post.getProperty(STATUS));
 
             // When I use the method
-            Promotes.createPromotes(post, input, ZonedDateTime.now(), tx);
+            Promotes.createPromotes(post, tokens, ZonedDateTime.now(), tx);
 
             tx.commit();
         }
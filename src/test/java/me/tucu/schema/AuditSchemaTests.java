@@ -0,0 +1,77 @@
+package me.tucu.schema;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+
+public class AuditSchemaTests {
+
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .build();
+    }
+
+    @Test
+    void shouldAuditSchema()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given an older schema without the email index
+            session.run( "CREATE CONSTRAINT ON (user:User) ASSERT user.username IS UNIQUE").list();
+            session.run( "CALL db.awaitIndexes()").list();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.schema.audit();");
+
+            // Then I should get what I expect
+            Map<String, Map<String, Object>> actual = getLookups(result.list());
+            assertThat(actual.size(), equalTo(Schema.LOOKUPS.size()));
+            assertThat(actual.get("(:User {username})"), is(Map.of("lookup", "(:User {username})",
+                    "type", "constraint", "since", 1L, "state", "ONLINE", "version", 0L)));
+            assertThat(actual.get("(:User {email})"), is(Map.of("lookup", "(:User {email})",
+                    "type", "index", "since", Schema.VERSION, "state", "MISSING", "version", 0L)));
+
+            // When I create the schema
+            session.run( "CALL me.tucu.schema.create();").list();
+            session.run( "CALL db.awaitIndexes()").list();
+
+            // Then every lookup should have an index
+            actual = getLookups(session.run( "CALL me.tucu.schema.audit();").list());
+            // And the schema should be at the latest version
+            for (Map<String, Object> lookup : actual.values()) {
+                assertThat(lookup.get("state"), is("ONLINE"));
+                assertThat(lookup.get("version"), is(Schema.VERSION));
+            }
+        }
+    }
+
+    private static Map<String, Map<String, Object>> getLookups(List<Record> records) {
+        HashMap<String, Map<String, Object>> lookups = new HashMap<>();
+        for (Record record : records) {
+            Map<String, Object> lookup = record.get("value").asMap();
+            lookups.put((String) lookup.get("lookup"), lookup);
+        }
+        return lookups;
+    }
+}
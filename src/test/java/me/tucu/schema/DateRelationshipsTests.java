@@ -0,0 +1,127 @@
+package me.tucu.schema;
+
+import me.tucu.fixtures.Graph;
+import me.tucu.follows.Follows;
+import me.tucu.likes.Likes;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class DateRelationshipsTests {
+
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Follows.class)
+                .withProcedure(Likes.class)
+                .withFixture(Graph.getGraph())
+                .build();
+    }
+
+    @AfterAll
+    static void cleanup() {
+        System.clearProperty(DatedConnections.SETTING);
+    }
+
+    @Test
+    void shouldDateRelationships()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given the pages as they are read from FOLLOWS and LIKES
+            System.setProperty(DatedConnections.SETTING, "write");
+            List<Map<String, Object>> followers = getPage(session, "me.tucu.follows.followers", "maxdemarzi");
+            List<Map<String, Object>> following = getPage(session, "me.tucu.follows.following", "maxdemarzi");
+            List<Map<String, Object>> likes = getPage(session, "me.tucu.likes.get", "maxdemarzi");
+            Record expected = session.run( "MATCH (user:User) " +
+                    "RETURN count(*) AS users, size((:User)-[:FOLLOWS]->()) AS follows, size((:User)-[:LIKES]->()) AS likes").single();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.schema.dateRelationships($batch_size);",
+                    parameters("batch_size", 2));
+
+            // Then I should get what I expect
+            assertThat(result.single().get("value").asMap(), is(Map.of("users", expected.get("users").asLong(),
+                    "follows", expected.get("follows").asLong(), "likes", expected.get("likes").asLong())));
+
+            // When I use the procedure again
+            result = session.run( "CALL me.tucu.schema.dateRelationships();");
+
+            // Then nothing should be dated twice
+            Map<String, Object> actual = result.single().get("value").asMap();
+            assertThat(actual.get("follows"), is(0L));
+            assertThat(actual.get("likes"), is(0L));
+
+            // And the pages read from the dated relationships should be the same
+            System.setProperty(DatedConnections.SETTING, "read");
+            assertThat(getPage(session, "me.tucu.follows.followers", "maxdemarzi"), equalTo(followers));
+            assertThat(getPage(session, "me.tucu.follows.following", "maxdemarzi"), equalTo(following));
+            assertThat(getPage(session, "me.tucu.likes.get", "maxdemarzi"), equalTo(likes));
+        }
+    }
+
+    @Test
+    void shouldFollowAndUnfollowDated()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+            System.setProperty(DatedConnections.SETTING, "read");
+
+            // When a user follows another
+            session.run( "CALL me.tucu.follows.create($username, $username2);",
+                    parameters("username", "rich", "username2", "jerk")).list();
+
+            // Then they should be the newest follower
+            List<Map<String, Object>> actual = getPage(session, "me.tucu.follows.followers", "jerk");
+            assertThat(actual.get(0).get("username"), is("rich"));
+            assertThat(getDated(session), is(1L));
+
+            // When they unfollow
+            session.run( "CALL me.tucu.follows.remove($username, $username2);",
+                    parameters("username", "rich", "username2", "jerk")).list();
+
+            // Then the dated relationship should be gone too
+            assertThat(getDated(session), is(0L));
+        }
+    }
+
+    private static List<Map<String, Object>> getPage(Session session, String procedure, String username) {
+        ArrayList<Map<String, Object>> page = new ArrayList<>();
+        for (Record record : session.run( "CALL " + procedure + "($username);",
+                parameters("username", username)).list()) {
+            page.add(record.get("value").asMap());
+        }
+        return page;
+    }
+
+    private static long getDated(Session session) {
+        return session.run( "MATCH (:User {username: 'rich'})-[r]->(:User {username: 'jerk'}) " +
+                "WHERE type(r) STARTS WITH 'FOLLOWED_ON_' RETURN count(*) AS count").single().get("count").asLong();
+    }
+}
@@ -5,9 +5,13 @@ import org.junit.jupiter.api.Test;
 
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZonedDateTime;
 
 import static me.tucu.schema.DatedRelationshipTypes.*;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
 
 public class DatedRelationshipTypesTests {
     @Test
@@ -25,4 +29,23 @@ public class DatedRelationshipTypesTests {
         assertEquals("REPOSTED_ON_", REPOSTED_ON);
         assertEquals("TAGGED_ON_", TAGGED_ON);
     }
+
+    @Test
+    public void shouldGetTypesByEpochDay() {
+        long day = LocalDate.of(2020, 4, 1).toEpochDay();
+        assertEquals("POSTED_ON_2020_04_01", getType(POSTED_ON, day).name());
+        assertEquals("PURCHASED_ON2020_04_01", getType(PURCHASED_ON, day).name());
+        assertSame(getType(TAGGED_ON, day), getType(TAGGED_ON, day));
+
+        long older = LocalDate.of(2019, 12, 31).toEpochDay();
+        assertEquals("MENTIONED_ON_2019_12_31", getType(MENTIONED_ON, older).name());
+    }
+
+    @Test
+    public void shouldGetEpochDayInUtc() {
+        ZonedDateTime dateTime = ZonedDateTime.parse("2020-04-13T00:20:12.000+01:00");
+        assertEquals(LocalDate.of(2020, 4, 12).toEpochDay(), getEpochDay(dateTime));
+        assertEquals("REPOSTED_ON_2020_04_12", getType(REPOSTED_ON, dateTime).name());
+        assertEquals(Instant.parse("2020-04-12T00:00:00Z"), getStartOfDay(getEpochDay(dateTime)).toInstant());
+    }
 }
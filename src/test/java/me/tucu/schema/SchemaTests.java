@@ -35,8 +35,14 @@ public class SchemaTests {
             // When I use the procedure
             Result result = session.run( "CALL me.tucu.schema.create();");
 
-            // Then I should get what I expect
-            assertThat(result.list().size(), equalTo(5));
+            // Then I should get every lookup and the version
+            assertThat(result.list().size(), equalTo(9));
+
+            // When I use the procedure again
+            result = session.run( "CALL me.tucu.schema.create();");
+
+            // Then nothing should be created twice
+            assertThat(result.list().size(), equalTo(0));
         }
     }
 }
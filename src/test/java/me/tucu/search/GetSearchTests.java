@@ -11,9 +11,10 @@ import org.neo4j.harness.Neo4jBuilders;
 
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
-import static me.tucu.schema.Properties.TIME;
+import static me.tucu.schema.Properties.*;
 import static org.hamcrest.CoreMatchers.equalTo;
 import static org.hamcrest.CoreMatchers.is;
 import static org.hamcrest.MatcherAssert.assertThat;
@@ -88,6 +89,28 @@ public class GetSearchTests {
         }
     }
 
+    @Test
+    void shouldNotGetBalancesOfUsersAskedForAsFields()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I ask for the balances of a user that has some
+            Result result = session.run( "CALL me.tucu.search.get($term, $type, 25, 0, '', $fields);",
+                    parameters("term", "max", "type", "user", "fields", List.of(USERNAME, SILVER, GOLD)));
+
+            // Then I should only get what anybody is allowed to see
+            Map<String, Object> actual = result.list().get(0).get("value").asMap();
+            assertThat(actual.get(USERNAME), is("maxdemarzi"));
+            assertThat(actual.containsKey(SILVER), is(false));
+            assertThat(actual.containsKey(GOLD), is(false));
+        }
+    }
+
     @Test
     void shouldGetFullTextSearchPostType()
     {
@@ -4,6 +4,7 @@ import me.tucu.fixtures.Graph;
 import me.tucu.schema.Labels;
 import me.tucu.schema.Properties;
 import me.tucu.schema.Schema;
+import me.tucu.utils.Tokens;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 import org.neo4j.graphdb.Node;
@@ -14,7 +15,6 @@ import org.neo4j.harness.Neo4jBuilders;
 
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
-import java.util.HashMap;
 
 import static me.tucu.schema.Properties.STATUS;
 import static org.hamcrest.CoreMatchers.hasItem;
@@ -47,10 +47,9 @@ public class CreateTagsTests {
             ResourceIterator<Node> iter = tx.findNodes(Labels.Post);
             while (iter.hasNext()) {
                 Node post = iter.next();
-                HashMap<String, Object> input = new HashMap<>();
-                input.put(STATUS, post.getProperty(STATUS));
+                Tokens tokens = Tokens.of((String) post.getProperty(STATUS));
                 // When I use the method
-                Tags.createTags(post, input, ZonedDateTime.now(), tx);
+                Tags.createTags(post, tokens, ZonedDateTime.now(), tx);
             }
 
             tx.commit();
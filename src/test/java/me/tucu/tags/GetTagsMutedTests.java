@@ -0,0 +1,108 @@
+package me.tucu.tags;
+
+import me.tucu.fixtures.Nodes;
+import me.tucu.mutes.Mutes;
+import me.tucu.posts.Posts;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.schema.Properties.STATUS;
+import static me.tucu.schema.Properties.USERNAME;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class GetTagsMutedTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Posts.class)
+                .withProcedure(Mutes.class)
+                .withProcedure(Tags.class)
+                .withFixture(FIXTURE)
+                .build();
+
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            Session session = driver.session();
+            for (Map<String, Object> post : POSTS) {
+                session.run( "CALL me.tucu.posts.create($parameters);", parameters("parameters", post));
+            }
+        }
+    }
+
+    @Test
+    void shouldHideUsersAfterMutingThem()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given jexp has looked at the tag once
+            assertThat(getUsernames(session, "first", "jexp"), is(List.of("laexample", "maxdemarzi")));
+
+            // When jexp mutes laexample
+            session.run( "CALL me.tucu.mutes.create($username, $username2);",
+                    parameters("username", "jexp", "username2", "laexample"));
+
+            // Then the posts of laexample should be hidden
+            assertThat(getUsernames(session, "first", "jexp"), is(List.of("maxdemarzi")));
+        }
+    }
+
+    @Test
+    void shouldHideUsersAfterSomeoneWeFollowMutesThem()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given markneedham has looked at the tag once
+            assertThat(getUsernames(session, "second", "markneedham"), is(List.of("darthvader42", "maxdemarzi")));
+
+            // When maxdemarzi, who markneedham follows, mutes darthvader42
+            session.run( "CALL me.tucu.mutes.create($username, $username2);",
+                    parameters("username", "maxdemarzi", "username2", "darthvader42"));
+
+            // Then the posts of darthvader42 should be hidden
+            assertThat(getUsernames(session, "second", "markneedham"), is(List.of("maxdemarzi")));
+        }
+    }
+
+    private static List<Object> getUsernames(Session session, String hashtag, String username) {
+        Result result = session.run( "CALL me.tucu.tags.get($hashtag, $limit, $since, $username);",
+                parameters("hashtag", hashtag, "limit", 25, "since", -1, "username", username));
+        ArrayList<Object> usernames = new ArrayList<>();
+        result.forEachRemaining(e -> usernames.add(e.get("value").asMap().get(USERNAME)));
+        return usernames;
+    }
+
+    private static final String FIXTURE =
+            Nodes.MAX + Nodes.JEXP + Nodes.LAEG + Nodes.MARK + Nodes.STEFAN +
+                    "CREATE (mark)-[:FOLLOWS {time: datetime() }]->(max)";
+
+    private static final List<Map<String, Object>> POSTS = List.of(
+            Map.of(USERNAME, "maxdemarzi", STATUS, "My #first post"),
+            Map.of(USERNAME, "laexample", STATUS, "Also my #first post"),
+            Map.of(USERNAME, "maxdemarzi", STATUS, "My #second post"),
+            Map.of(USERNAME, "darthvader42", STATUS, "Also my #second post"));
+}
@@ -13,6 +13,7 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+import static me.tucu.schema.Properties.CURSOR;
 import static me.tucu.schema.Properties.TIME;
 import static me.tucu.tags.TagExceptions.TAG_NOT_FOUND;
 import static me.tucu.users.UserExceptions.USER_NOT_FOUND;
@@ -56,6 +57,7 @@ public class GetTagsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -83,6 +85,7 @@ public class GetTagsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -111,6 +114,7 @@ public class GetTagsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -140,6 +144,7 @@ public class GetTagsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
@@ -170,6 +175,7 @@ public class GetTagsTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 actual.add(modifiable);
             });
 
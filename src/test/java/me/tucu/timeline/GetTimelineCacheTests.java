@@ -0,0 +1,117 @@
+package me.tucu.timeline;
+
+import me.tucu.fixtures.Nodes;
+import me.tucu.follows.Follows;
+import me.tucu.posts.Posts;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.fixtures.Relationships.MAX_FOLLOWED_BY_JEXP;
+import static me.tucu.schema.Properties.STATUS;
+import static me.tucu.schema.Properties.USERNAME;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class GetTimelineCacheTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        // The cache is off unless asked for
+        System.setProperty(TimelineCache.USERS_SETTING, "10000");
+
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Posts.class)
+                .withProcedure(Follows.class)
+                .withProcedure(Timeline.class)
+                .withFixture(FIXTURE)
+                .build();
+
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Closing the session waits for the last post to be written
+            try (Session session = driver.session()) {
+                session.run( "CALL me.tucu.posts.create($parameters);",
+                        parameters("parameters", Map.of(USERNAME, "maxdemarzi", STATUS, "First")));
+                session.run( "CALL me.tucu.posts.create($parameters);",
+                        parameters("parameters", Map.of(USERNAME, "darthvader42", STATUS, "Before the follow")));
+            }
+        }
+    }
+
+    @AfterAll
+    static void cleanup() {
+        System.clearProperty(TimelineCache.USERS_SETTING);
+    }
+
+    @Test
+    void shouldGetNewPostsFromTheBuffer()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given jexp has read their timeline once
+            assertThat(getStatuses(session, "jexp"), is(List.of("First")));
+            assertThat(TimelineCache.getCache(neo4j.defaultDatabaseService()), notNullValue());
+
+            // When maxdemarzi posts again
+            session.run( "CALL me.tucu.posts.create($parameters);",
+                    parameters("parameters", Map.of(USERNAME, "maxdemarzi", STATUS, "Second")));
+
+            // Then the new post should be at the top of the timeline
+            assertThat(getStatuses(session, "jexp"), is(List.of("Second", "First")));
+        }
+    }
+
+    @Test
+    void shouldGetPostsOfNewFollows()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given laexample has read their empty timeline once
+            assertThat(getStatuses(session, "laexample"), is(List.of()));
+
+            // When laexample follows darthvader42
+            session.run( "CALL me.tucu.follows.create($username, $username2);",
+                    parameters("username", "laexample", "username2", "darthvader42"));
+
+            // Then the older posts of darthvader42 should be on the timeline
+            assertThat(getStatuses(session, "laexample"), is(List.of("Before the follow")));
+        }
+    }
+
+    private static List<Object> getStatuses(Session session, String username) {
+        Result result = session.run( "CALL me.tucu.timeline.get($username);",
+                parameters("username", username));
+        ArrayList<Object> statuses = new ArrayList<>();
+        result.forEachRemaining(e -> statuses.add(e.get("value").asMap().get(STATUS)));
+        return statuses;
+    }
+
+    private static final String FIXTURE =
+            Nodes.MAX + Nodes.JEXP + Nodes.LAEG + Nodes.STEFAN +
+                    MAX_FOLLOWED_BY_JEXP;
+}
@@ -0,0 +1,445 @@
+package me.tucu.timeline;
+
+import me.tucu.Procedures;
+import me.tucu.fixtures.Nodes;
+import me.tucu.follows.Follows;
+import me.tucu.posts.Posts;
+import me.tucu.schema.Labels;
+import me.tucu.schema.Schema;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.graphdb.GraphDatabaseService;
+import org.neo4j.graphdb.Node;
+import org.neo4j.graphdb.Relationship;
+import org.neo4j.graphdb.Transaction;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static me.tucu.fixtures.Relationships.*;
+import static me.tucu.schema.DatedRelationshipTypes.POSTED_ON;
+import static me.tucu.schema.DatedRelationshipTypes.getType;
+import static me.tucu.schema.Properties.AUTHOR_ID;
+import static me.tucu.schema.Properties.PUSHED;
+import static me.tucu.schema.Properties.REPOSTS;
+import static me.tucu.schema.Properties.STATUS;
+import static me.tucu.schema.Properties.TIME;
+import static me.tucu.schema.Properties.UNPUSHED;
+import static me.tucu.schema.Properties.USERNAME;
+import static org.hamcrest.CoreMatchers.equalTo;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class GetTimelineInboxTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        // Users with less than 2 followers push their posts
+        System.setProperty(Inbox.THRESHOLD_SETTING, "2");
+
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Procedures.class)
+                .withProcedure(Schema.class)
+                .withProcedure(Posts.class)
+                .withProcedure(Follows.class)
+                .withProcedure(Timeline.class)
+                .withFixture(FIXTURE)
+                .build();
+
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Closing the session waits for the last post to be written
+            try (Session session = driver.session()) {
+                for (Map<String, Object> post : POSTS) {
+                    session.run( "CALL me.tucu.posts.create($parameters);", parameters("parameters", post));
+                }
+            }
+        }
+        flush();
+    }
+
+    @AfterAll
+    static void cleanup() {
+        System.clearProperty(Inbox.THRESHOLD_SETTING);
+    }
+
+    @Test
+    void shouldGetTimelineFromInboxAndFollows()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.timeline.get($username);",
+                    parameters("username", "jexp"));
+
+            // Then I should get what I expect
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> {
+                Map<String, Object> record = e.get("value").asMap();
+                HashMap<String, Object> modifiable = new HashMap<>();
+                modifiable.put(USERNAME, record.get(USERNAME));
+                modifiable.put(STATUS, record.get(STATUS));
+                actual.add(modifiable);
+            });
+
+            assertThat(actual, is(EXPECTED));
+        }
+    }
+
+    @Test
+    void shouldOnlyPushPostsOfUsersUnderTheThreshold()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I look at the inbox
+            Result result = session.run( "MATCH (inbox:Inbox)-[:INBOX]->(user:User {username: $username}) " +
+                            "RETURN {postings: " + POSTINGS + "} AS value",
+                    parameters("username", "jexp"));
+
+            // Then I should only find the posts of maxdemarzi and darthvader42
+            assertThat(result.single().get("value").asMap(), equalTo(Map.of("postings", 2L)));
+        }
+    }
+
+    @Test
+    void shouldPushConcurrentPostsToOneInbox() throws Exception
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a reader without an inbox following a few authors with a single follower each
+            session.run( "CREATE (reader:User {username: 'reader', name: 'Reader', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "WITH reader UNWIND range(1, 6) AS i " +
+                    "CREATE (reader)-[:FOLLOWS {time: datetime('2020-05-01T10:00:00Z')}]->" +
+                    "(:User {username: 'writer' + i, name: 'Writer', hash: 'hash', silver: 10, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})").consume();
+
+            // When they all post at once
+            ExecutorService executor = Executors.newFixedThreadPool(6);
+            ArrayList<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int i = 1; i <= 6; i++) {
+                for (int j = 1; j <= 4; j++) {
+                    Map<String, Object> post = Map.of(USERNAME, "writer" + i, STATUS, "Post " + j);
+                    futures.add(executor.submit(() -> {
+                        try (Session writer = driver.session()) {
+                            return writer.run( "CALL me.tucu.posts.create($parameters);",
+                                    parameters("parameters", post)).single().get("value").asMap();
+                        }
+                    }));
+                }
+            }
+            for (Future<Map<String, Object>> future : futures) {
+                assertThat(future.get().containsKey("Error"), is(false));
+            }
+            executor.shutdown();
+            flush();
+
+            // Then the reader should have a single inbox with every post in it
+            Result result = session.run( "MATCH (inbox:Inbox)-[:INBOX]->(user:User {username: $username}) " +
+                            "RETURN {postings: " + POSTINGS + "} AS value",
+                    parameters("username", "reader"));
+            assertThat(result.single().get("value").asMap(), equalTo(Map.of("postings", 24L)));
+
+            // And their timeline should still be read
+            result = session.run( "CALL me.tucu.timeline.get($username, $limit);",
+                    parameters("username", "reader", "limit", 30));
+            assertThat(result.list().size(), is(24));
+        }
+    }
+
+    @Test
+    void shouldPushConcurrentPostsOfUsersFollowingEachOther() throws Exception
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given two users following each other, who already have their inboxes
+            session.run( "CREATE (ping:User {username: 'ping', name: 'Ping', hash: 'hash', silver: 20, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})" +
+                    "-[:FOLLOWS {time: datetime('2020-05-01T10:00:00Z')}]->" +
+                    "(pong:User {username: 'pong', name: 'Pong', hash: 'hash', silver: 20, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "CREATE (pong)-[:FOLLOWS {time: datetime('2020-05-01T10:00:00Z')}]->(ping) " +
+                    "CREATE (ping)<-[:INBOX]-(:Inbox {time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "CREATE (pong)<-[:INBOX]-(:Inbox {time: datetime('2020-05-01T10:00:00Z')})");
+            Object retries = session.run( "CALL me.tucu.retries();").single().get("value").asMap().get("retries");
+
+            // When they both post at once
+            ExecutorService executor = Executors.newFixedThreadPool(2);
+            ArrayList<Future<Map<String, Object>>> futures = new ArrayList<>();
+            for (int j = 1; j <= 10; j++) {
+                for (String username : List.of("ping", "pong")) {
+                    Map<String, Object> post = Map.of(USERNAME, username, STATUS, "Post " + j);
+                    futures.add(executor.submit(() -> {
+                        try (Session writer = driver.session()) {
+                            return writer.run( "CALL me.tucu.posts.create($parameters);",
+                                    parameters("parameters", post)).single().get("value").asMap();
+                        }
+                    }));
+                }
+            }
+            for (Future<Map<String, Object>> future : futures) {
+                assertThat(future.get().containsKey("Error"), is(false));
+            }
+            executor.shutdown();
+            flush();
+
+            // Then both should have every post in their inbox
+            for (String username : List.of("ping", "pong")) {
+                Result result = session.run( "MATCH (inbox:Inbox)-[:INBOX]->(user:User {username: $username}) " +
+                                "RETURN {postings: " + POSTINGS + "} AS value",
+                        parameters("username", username));
+                assertThat(result.single().get("value").asMap(), equalTo(Map.of("postings", 20L)));
+            }
+
+            // And none of them should have had to be run again
+            Map<String, Object> actual = session.run( "CALL me.tucu.retries();").single().get("value").asMap();
+            assertThat(actual.get("retries"), is(retries));
+        }
+    }
+
+    @Test
+    void shouldKeepTimelinesWholeWhenAuthorsCrossTheThreshold()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given an author with as many followers as the threshold, who does not push
+            session.run( "CREATE (author:User {username: 'author', name: 'Author', hash: 'hash', silver: 20, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "WITH author UNWIND ['watcher', 'leaver', 'joiner'] AS username " +
+                    "CREATE (watcher:User {username: username, name: username, hash: 'hash', silver: 20, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')}) " +
+                    "WITH author, watcher WHERE watcher.username <> 'joiner' " +
+                    "CREATE (watcher)-[:FOLLOWS {time: datetime('2020-05-01T10:00:00Z')}]->(author)").consume();
+            post(session, "author", "First");
+            assertThat(isPushed(session, "author"), is(false));
+
+            // When one of them leaves, the author stays as they were until they post again
+            session.run( "CALL me.tucu.follows.remove($username, $username2);",
+                    parameters("username", "leaver", "username2", "author")).consume();
+            assertThat(getStatuses(session, "watcher"), is(List.of("First")));
+
+            // When they post again, they start pushing
+            post(session, "author", "Second");
+            flush();
+            assertThat(isPushed(session, "author"), is(true));
+            assertThat(getStatuses(session, "watcher"), is(List.of("Second", "First")));
+
+            // When somebody joins, the author keeps pushing until they post again
+            session.run( "CALL me.tucu.follows.create($username, $username2);",
+                    parameters("username", "joiner", "username2", "author")).consume();
+            assertThat(getStatuses(session, "watcher"), is(List.of("Second", "First")));
+            assertThat(getStatuses(session, "joiner"), is(List.of("Second", "First")));
+
+            // When they post again, they stop pushing
+            post(session, "author", "Third");
+            flush();
+            assertThat(isPushed(session, "author"), is(false));
+            assertThat(getStatuses(session, "watcher"), is(List.of("Third", "Second", "First")));
+            assertThat(getStatuses(session, "joiner"), is(List.of("Third", "Second", "First")));
+        }
+    }
+
+    @Test
+    void shouldDropTheOldestPostingsOfFullInboxes()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a reader following an author that pushes
+            session.run( "CREATE (prolific:User {username: 'prolific', name: 'Prolific', hash: 'hash', silver: 600, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})<-[:FOLLOWS {time: datetime('2020-05-01T10:00:00Z')}]-" +
+                    "(:User {username: 'devoted', name: 'Devoted', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})").consume();
+
+            // When the author posts more than the inbox keeps
+            for (int i = 1; i <= 520; i++) {
+                post(session, "prolific", "Post " + i);
+            }
+            flush();
+
+            // Then the inbox should only keep the most recent ones
+            Result result = session.run( "MATCH (inbox:Inbox)-[:INBOX]->(user:User {username: $username}) " +
+                            "RETURN {postings: " + POSTINGS + "} AS value",
+                    parameters("username", "devoted"));
+            assertThat(result.single().get("value").asMap(), equalTo(Map.of("postings", 470L)));
+
+            // And the timeline should still go back past them
+            result = session.run( "CALL me.tucu.timeline.get($username, $limit);",
+                    parameters("username", "devoted", "limit", 600));
+            List<Record> records = result.list();
+            assertThat(records.size(), is(520));
+            assertThat(records.get(519).get("value").asMap().get(STATUS), is("Post 1"));
+        }
+    }
+
+    @Test
+    void shouldReadPostingsThatWereNeverPushed()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given a reader following an author that pushes
+            session.run( "CREATE (lost:User {username: 'lost', name: 'Lost', hash: 'hash', silver: 20, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})<-[:FOLLOWS {time: datetime('2020-05-01T10:00:00Z')}]-" +
+                    "(:User {username: 'finder', name: 'Finder', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})").consume();
+            post(session, "lost", "Pushed");
+            flush();
+            assertThat(isPushed(session, "lost"), is(true));
+
+            // When a posting is committed but the push of it never happens, as after a crash
+            GraphDatabaseService db = neo4j.defaultDatabaseService();
+            ZonedDateTime time = ZonedDateTime.now();
+            long posting;
+            try (Transaction tx = db.beginTx()) {
+                Node lost = tx.findNode(Labels.User, USERNAME, "lost");
+                lost.removeProperty(PUSHED);
+                Node post = tx.createNode(Labels.Post);
+                post.setProperty(STATUS, "Lost");
+                post.setProperty(TIME, time);
+                post.setProperty(AUTHOR_ID, lost.getId());
+                post.setProperty(REPOSTS, 0L);
+                Relationship posted_on = lost.createRelationshipTo(post, getType(POSTED_ON, time));
+                posted_on.setProperty(TIME, time);
+                posting = posted_on.getId();
+                tx.commit();
+            }
+            try (Transaction tx = db.beginTx()) {
+                Node lost = tx.findNode(Labels.User, USERNAME, "lost");
+                lost.setProperty(PUSHED, true);
+                lost.setProperty(UNPUSHED, new long[]{posting});
+                tx.commit();
+            }
+
+            // Then the reader should still see it, read from the author
+            assertThat(getPostings(session, "finder"), is(1L));
+            assertThat(getStatuses(session, "finder"), is(List.of("Lost", "Pushed")));
+
+            // When the author posts again
+            post(session, "lost", "Next");
+            flush();
+
+            // Then it should be pushed along with the new one
+            assertThat(getPostings(session, "finder"), is(3L));
+            assertThat(getStatuses(session, "finder"), is(List.of("Next", "Lost", "Pushed")));
+        }
+    }
+
+    private static void post(Session session, String username, String status) {
+        Map<String, Object> result = session.run( "CALL me.tucu.posts.create($parameters);",
+                parameters("parameters", Map.of(USERNAME, username, STATUS, status))).single().get("value").asMap();
+        assertThat(result.containsKey("Error"), is(false));
+    }
+
+    private static boolean isPushed(Session session, String username) {
+        return session.run( "MATCH (user:User {username: $username}) RETURN coalesce(user.pushed, false) AS pushed",
+                parameters("username", username)).single().get("pushed").asBoolean();
+    }
+
+    private static long getPostings(Session session, String username) {
+        return session.run( "MATCH (inbox:Inbox)-[:INBOX]->(user:User {username: $username}) " +
+                        "RETURN " + POSTINGS + " AS postings",
+                parameters("username", username)).single().get("postings").asLong();
+    }
+
+    private static List<Object> getStatuses(Session session, String username) {
+        Result result = session.run( "CALL me.tucu.timeline.get($username);",
+                parameters("username", username));
+        ArrayList<Object> statuses = new ArrayList<>();
+        result.forEachRemaining(e -> statuses.add(e.get("value").asMap().get(STATUS)));
+        return statuses;
+    }
+
+    // Postings are pushed once they are committed, so wait until nobody has any left to push
+    private static void flush() {
+        GraphDatabaseService db = neo4j.defaultDatabaseService();
+        long deadline = System.currentTimeMillis() + 10000;
+        while (db.executeTransactionally("MATCH (user:User) WHERE user.unpushed IS NOT NULL RETURN user LIMIT 1",
+                Map.of(), org.neo4j.graphdb.Result::hasNext)) {
+            assertThat(System.currentTimeMillis() < deadline, is(true));
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException exception) {
+                throw new RuntimeException(exception);
+            }
+        }
+    }
+
+    // How many postings the inbox keeps over all of its chunks
+    private static final String POSTINGS = "reduce(count = 0, key IN [key IN keys(inbox) WHERE key STARTS WITH 'postings_'] " +
+            "| count + size(inbox[key]) / 2)";
+
+    private static final String FIXTURE =
+            Nodes.MAX + Nodes.JEXP + Nodes.LAEG + Nodes.STEFAN +
+                    MAX_FOLLOWED_BY_JEXP +
+                    MAX_FOLLOWS_LAEG +
+                    JEXP_FOLLOWS_STEFAN +
+                    "CREATE (jexp)-[:FOLLOWS {time: datetime() }]->(laeg)";
+
+    private static final List<Map<String, Object>> POSTS = List.of(
+            Map.of(USERNAME, "darthvader42", STATUS, "Pushed first"),
+            Map.of(USERNAME, "laexample", STATUS, "Pulled"),
+            Map.of(USERNAME, "maxdemarzi", STATUS, "Pushed second"));
+
+    private static final ArrayList<HashMap<String, Object>> EXPECTED = new ArrayList<>() {{
+        add(new HashMap<>() {{
+            put("username", "maxdemarzi");
+            put("status", "Pushed second");
+        }});
+        add(new HashMap<>() {{
+            put("username", "laexample");
+            put("status", "Pulled");
+        }});
+        add(new HashMap<>() {{
+            put("username", "darthvader42");
+            put("status", "Pushed first");
+        }});
+    }};
+}
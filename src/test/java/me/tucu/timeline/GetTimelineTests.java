@@ -12,10 +12,12 @@ import org.neo4j.harness.Neo4jBuilders;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static me.tucu.fixtures.Nodes.*;
 import static me.tucu.fixtures.Relationships.*;
+import static me.tucu.schema.Properties.CURSOR;
 import static me.tucu.schema.Properties.REPOSTED_TIME;
 import static me.tucu.schema.Properties.TIME;
 import static org.hamcrest.CoreMatchers.equalTo;
@@ -57,6 +59,7 @@ public class GetTimelineTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 modifiable.remove(REPOSTED_TIME);
                 actual.add(modifiable);
             });
@@ -65,6 +68,41 @@ public class GetTimelineTests {
         }
     }
 
+    @Test
+    void shouldGetTimelineWithCursor()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I get the first page
+            Result result = session.run( "CALL me.tucu.timeline.get($username, $limit);",
+                    parameters("username", "jexp", "limit", 2));
+            List<Record> page = result.list();
+            String cursor = (String) page.get(1).get("value").asMap().get(CURSOR);
+
+            // And I use the cursor of its last post to get the next page
+            result = session.run( "CALL me.tucu.timeline.get($username, $limit, $since, $cursor);",
+                    parameters("username", "jexp", "limit", 25, "since", -1, "cursor", cursor));
+
+            // Then I should get what I expect
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> {
+                Map<String, Object> record = e.get("value").asMap();
+                HashMap<String, Object> modifiable = new HashMap<>(record);
+                modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
+                modifiable.remove(REPOSTED_TIME);
+                actual.add(modifiable);
+            });
+
+            assertThat(actual.get(0), is(EXPECTED.get(2)));
+        }
+    }
+
     @Test
     void shouldGetTimelineWithLimit()
     {
@@ -85,6 +123,7 @@ public class GetTimelineTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 modifiable.remove(REPOSTED_TIME);
                 actual.add(modifiable);
             });
@@ -92,6 +131,35 @@ public class GetTimelineTests {
             assertThat(actual, is(EXPECTED.subList(0,2)));
         }
     }
+    @Test
+    void shouldGetTimelineWithLimitOne()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.timeline.get($username, $limit);",
+                    parameters("username", "jexp", "limit", 1));
+
+            // Then I should get what I expect
+            ArrayList<Map<String, Object>> actual = new ArrayList<>();
+            result.forEachRemaining(e -> {
+                Map<String, Object> record = e.get("value").asMap();
+                HashMap<String, Object> modifiable = new HashMap<>(record);
+                modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
+                modifiable.remove(REPOSTED_TIME);
+                actual.add(modifiable);
+            });
+
+            assertThat(actual, is(EXPECTED.subList(0,1)));
+        }
+    }
+
     @Test
     void shouldGetTimelineWithLimitSince()
     {
@@ -113,6 +181,7 @@ public class GetTimelineTests {
                 Map<String, Object> record = e.get("value").asMap();
                 HashMap<String, Object> modifiable = new HashMap<>(record);
                 modifiable.remove(TIME);
+                modifiable.remove(CURSOR);
                 modifiable.remove(REPOSTED_TIME);
                 actual.add(modifiable);
             });
@@ -11,6 +11,7 @@ import org.neo4j.harness.Neo4jBuilders;
 import java.time.ZonedDateTime;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 import static me.tucu.schema.Properties.TIME;
@@ -56,6 +57,51 @@ public class GetProfileTests {
         }
     }
 
+    @Test
+    void shouldGetProfileSampleOfMutualFollows()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given two users following 20 of the same users, out of 30 each
+            session.run( "UNWIND range(1, 40) AS i " +
+                    "CREATE (:User {username: 'celebrity' + i, name: 'Celebrity', hash: 'hash', silver: 0, gold: 0, " +
+                    "time: datetime('2020-05-01T10:00:00Z')})").list();
+            session.run( "CREATE (:User {username: 'fan_a', name: 'Fan', hash: 'hash', silver: 0, gold: 0, time: datetime()}), " +
+                    "(:User {username: 'fan_b', name: 'Fan', hash: 'hash', silver: 0, gold: 0, time: datetime()})").list();
+            session.run( "MATCH (a:User {username: 'fan_a'}), (b:User {username: 'fan_b'}) " +
+                    "UNWIND range(1, 40) AS i " +
+                    "MATCH (celebrity:User {username: 'celebrity' + i}) " +
+                    "FOREACH (ignored IN CASE WHEN i <= 30 THEN [1] ELSE [] END | " +
+                    "  CREATE (a)-[:FOLLOWS {time: datetime()}]->(celebrity)) " +
+                    "FOREACH (ignored IN CASE WHEN i > 10 THEN [1] ELSE [] END | " +
+                    "  CREATE (b)-[:FOLLOWS {time: datetime()}]->(celebrity))").list();
+
+            // When I use the procedure
+            Result result = session.run( "CALL me.tucu.users.profile($username, $username2);",
+                    parameters("username", "fan_a","username2", "fan_b"));
+
+            // Then I should get all of them counted, and the first ten of them
+            Map<String, Object> actual = result.single().get("value").asMap();
+            assertThat(actual.get("followers_you_know_count"), is(20L));
+            assertThat(actual.get("i_follow"), is(false));
+            assertThat(actual.get("follows_me"), is(false));
+            ArrayList<Object> usernames = new ArrayList<>();
+            for (Object follower : (List<?>) actual.get("followers_you_know")) {
+                usernames.add(((Map<?, ?>) follower).get("username"));
+            }
+            ArrayList<Object> expected = new ArrayList<>();
+            for (int i = 11; i <= 20; i++) {
+                expected.add("celebrity" + i);
+            }
+            assertThat(usernames, equalTo(expected));
+        }
+    }
+
     @Test
     void shouldGetProfileSecondUser()
     {
@@ -100,6 +146,26 @@ public class GetProfileTests {
         }
     }
 
+    @Test
+    void shouldGetProfileWithFields()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // When I use the procedure asking for a few fields, and some we never hand out
+            Result result = session.run( "CALL me.tucu.users.profile($username, $username2, $fields);",
+                    parameters("username", "maxdemarzi","username2", "jexp",
+                            "fields", List.of("followers", "i_follow", "email", "password")));
+
+            // Then I should only get those we hand out
+            assertThat(result.single().get("value").asMap(), is(Map.of("followers", 2L, "i_follow", true)));
+        }
+    }
+
     @Test
     void shouldNotProfileUserNotFound()
     {
@@ -0,0 +1,150 @@
+package me.tucu.users;
+
+import me.tucu.fixtures.Nodes;
+import me.tucu.follows.Follows;
+import me.tucu.mutes.Mutes;
+import me.tucu.posts.Posts;
+import me.tucu.schema.Schema;
+import me.tucu.timeline.Timeline;
+import org.eclipse.collections.impl.factory.primitive.LongSets;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.neo4j.driver.*;
+import org.neo4j.harness.Neo4j;
+import org.neo4j.harness.Neo4jBuilders;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static me.tucu.fixtures.Relationships.MAX_FOLLOWED_BY_JEXP;
+import static me.tucu.schema.Properties.STATUS;
+import static me.tucu.schema.Properties.USERNAME;
+import static org.hamcrest.CoreMatchers.is;
+import static org.hamcrest.CoreMatchers.notNullValue;
+import static org.hamcrest.CoreMatchers.nullValue;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.neo4j.driver.Values.parameters;
+
+public class MutedAndFollowsCacheTests {
+    private static Neo4j neo4j;
+
+    @BeforeAll
+    static void initialize() {
+        // The cache is off unless asked for
+        System.setProperty(MutedAndFollowsCache.USERS_SETTING, "10000");
+
+        neo4j = Neo4jBuilders.newInProcessBuilder()
+                // disabling http server to speed up start
+                .withDisabledServer()
+                .withProcedure(Schema.class)
+                .withProcedure(Posts.class)
+                .withProcedure(Follows.class)
+                .withProcedure(Mutes.class)
+                .withProcedure(Timeline.class)
+                .withFixture(FIXTURE)
+                .build();
+
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Closing the session waits for the last post to be written
+            try (Session session = driver.session()) {
+                session.run( "CALL me.tucu.posts.create($parameters);",
+                        parameters("parameters", Map.of(USERNAME, "maxdemarzi", STATUS, "Followed")));
+                session.run( "CALL me.tucu.posts.create($parameters);",
+                        parameters("parameters", Map.of(USERNAME, "laexample", STATUS, "Reposted"))).consume();
+                long post_id = session.run( "MATCH (post:Post {status:'Reposted'}) RETURN ID(post) AS id")
+                        .single().get("id").asLong();
+                session.run( "CALL me.tucu.posts.repost($post_id, $username);",
+                        parameters("username", "darthvader42", "post_id", post_id));
+            }
+        }
+    }
+
+    @AfterAll
+    static void cleanup() {
+        System.clearProperty(MutedAndFollowsCache.USERS_SETTING);
+    }
+
+    @Test
+    void shouldKeepCachedMutesAndFollowsCurrent()
+    {
+        // In a try-block, to make sure we close the driver after the test
+        try( Driver driver = GraphDatabase.driver( neo4j.boltURI() , Config.builder().withoutEncryption().build() ) )
+        {
+            // Given I've started Neo4j with the procedure
+            //       which my 'neo4j' rule above does.
+            Session session = driver.session();
+
+            // Given jexp has read their timeline once
+            assertThat(getStatuses(session, "jexp"), is(List.of("Followed")));
+            assertThat(MutedAndFollowsCache.getCache(neo4j.defaultDatabaseService()), notNullValue());
+
+            // When jexp follows darthvader42
+            session.run( "CALL me.tucu.follows.create($username, $username2);",
+                    parameters("username", "jexp", "username2", "darthvader42")).consume();
+
+            // Then what they reposted should be on the timeline
+            assertThat(getStatuses(session, "jexp"), is(List.of("Reposted", "Followed")));
+
+            // When jexp mutes laexample
+            session.run( "CALL me.tucu.mutes.create($username, $username2);",
+                    parameters("username", "jexp", "username2", "laexample")).consume();
+
+            // Then reposts of their posts should be hidden
+            assertThat(getStatuses(session, "jexp"), is(List.of("Followed")));
+
+            // When jexp unmutes laexample
+            session.run( "CALL me.tucu.mutes.remove($username, $username2);",
+                    parameters("username", "jexp", "username2", "laexample")).consume();
+
+            // Then reposts of their posts should be back
+            assertThat(getStatuses(session, "jexp"), is(List.of("Reposted", "Followed")));
+        }
+    }
+
+    @Test
+    void shouldOnlyDropSetsReadWhileTheirUsersChanged()
+    {
+        // Given the cache
+        MutedAndFollowsCache cache = MutedAndFollowsCache.getCache(neo4j.defaultDatabaseService());
+
+        // When someone unrelated follows somebody while a user reads their sets
+        long generation = cache.getGeneration();
+        cache.evict(1001L);
+        cache.put(1002L, new MutedAndFollows(LongSets.mutable.empty(), LongSets.mutable.of(1003L)), generation);
+
+        // Then the sets should be kept
+        assertThat(cache.get(1002L), notNullValue());
+
+        // When someone the user follows mutes somebody while the user reads their sets
+        generation = cache.getGeneration();
+        cache.muted(1003L);
+        cache.put(1004L, new MutedAndFollows(LongSets.mutable.empty(), LongSets.mutable.of(1003L)), generation);
+
+        // Then the sets should not be kept, and neither should those of their followers
+        assertThat(cache.get(1004L), nullValue());
+        assertThat(cache.get(1002L), nullValue());
+
+        // When the user themselves follows somebody while they read their sets
+        generation = cache.getGeneration();
+        cache.evict(1005L);
+        cache.put(1005L, new MutedAndFollows(LongSets.mutable.empty(), LongSets.mutable.empty()), generation);
+
+        // Then the sets should not be kept
+        assertThat(cache.get(1005L), nullValue());
+    }
+
+    private static List<Object> getStatuses(Session session, String username) {
+        Result result = session.run( "CALL me.tucu.timeline.get($username);",
+                parameters("username", username));
+        ArrayList<Object> statuses = new ArrayList<>();
+        result.forEachRemaining(e -> statuses.add(e.get("value").asMap().get(STATUS)));
+        return statuses;
+    }
+
+    private static final String FIXTURE =
+            Nodes.MAX + Nodes.JEXP + Nodes.LAEG + Nodes.STEFAN +
+                    MAX_FOLLOWED_BY_JEXP;
+}